@@ -11,6 +11,7 @@ plugins {
     `java-library`
     id("com.atlassian.performance.tools.gradle-release").version("0.7.3")
     id("info.solidsoft.pitest").version("1.6.0")
+    id("me.champeau.gradle.jmh").version("0.5.3")
 }
 
 configure<info.solidsoft.gradle.pitest.PitestPluginExtension> {
@@ -23,6 +24,10 @@ configure<info.solidsoft.gradle.pitest.PitestPluginExtension> {
     outputFormats.set(setOf("XML", "HTML"))
 }
 
+configure<me.champeau.gradle.JMHPluginExtension> {
+    jmhVersion = "1.37"
+}
+
 tasks.wrapper {
     gradleVersion = "6.7"
     distributionType = Wrapper.DistributionType.BIN
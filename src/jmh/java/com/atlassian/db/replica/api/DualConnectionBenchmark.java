@@ -0,0 +1,80 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.internal.StubConnections;
+import com.atlassian.db.replica.spi.ReplicaConsistency;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures how much {@link DualConnection} costs each query, in the thread-safe and the thread-confined modes.
+ * Each thread uses its own connection, like in applications.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DualConnectionBenchmark {
+    private Connection connection;
+    private PreparedStatement statement;
+
+    @Param({"false", "true"})
+    public boolean threadConfined;
+
+    @Setup(Level.Trial)
+    public void connect() throws SQLException {
+        final DualConnection.Builder builder = DualConnection.builder(new StubConnections(), new AlwaysConsistent());
+        connection = (threadConfined ? builder.threadConfined() : builder).build();
+        statement = connection.prepareStatement("SELECT id FROM users WHERE name = ?");
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws SQLException {
+        connection.close();
+    }
+
+    @Benchmark
+    public ResultSet executeQuery() throws SQLException {
+        statement.setString(1, "alice");
+        return statement.executeQuery();
+    }
+
+    @Benchmark
+    public ResultSet createAndExecuteQuery() throws SQLException {
+        try (PreparedStatement newStatement = connection.prepareStatement("SELECT id FROM users WHERE name = ?")) {
+            newStatement.setString(1, "alice");
+            return newStatement.executeQuery();
+        }
+    }
+
+    private static final class AlwaysConsistent implements ReplicaConsistency {
+
+        @Override
+        public void write(Connection main) {
+        }
+
+        @Override
+        public boolean isConsistent(Supplier<Connection> replica) {
+            return true;
+        }
+    }
+}
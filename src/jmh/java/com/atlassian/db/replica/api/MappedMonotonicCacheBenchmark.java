@@ -0,0 +1,72 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.spi.Cache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the last write shared by processes through {@link MappedMonotonicCache} with the one kept in memory
+ * of a single process. Consistency checks get the last write on every read, but put it only on writes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MappedMonotonicCacheBenchmark {
+    private Path path;
+    private Cache<Long> cache;
+    private long lsn = 0;
+
+    @Param({"memory", "mapped"})
+    public String kind;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        path = Files.createTempFile("last-write", ".lsn");
+        Files.delete(path);
+        cache = kind.equals("mapped") ? MappedMonotonicCache.ofLongs(path) : Cache.cacheMonotonicValuesInMemory();
+        cache.put(1L);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        if (cache instanceof AutoCloseable) {
+            ((AutoCloseable) cache).close();
+        }
+        Files.deleteIfExists(path);
+    }
+
+    @Benchmark
+    public Optional<Long> get() {
+        return cache.get();
+    }
+
+    @Benchmark
+    public void putOlder() {
+        cache.put(0L);
+    }
+
+    @Benchmark
+    public void putNewer() {
+        cache.put(++lsn);
+    }
+}
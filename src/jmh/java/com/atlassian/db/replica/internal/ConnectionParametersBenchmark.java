@@ -0,0 +1,121 @@
+package com.atlassian.db.replica.internal;
+
+import com.atlassian.db.replica.internal.logs.NoopLazyLogger;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static java.sql.Connection.TRANSACTION_READ_COMMITTED;
+
+/**
+ * Counts the round trips, which replaying {@link ConnectionParameters} costs on every switch between
+ * main and replica. Divide {@code roundTrips} by {@code switches} to get the round trips per switch.
+ * <ul>
+ *     <li>{@code fresh} - a new connection, which had nothing applied</li>
+ *     <li>{@code reused} - a parked connection with the same parameters applied</li>
+ *     <li>{@code changed} - a parked connection, which misses the last runtime parameter</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ConnectionParametersBenchmark {
+    private ConnectionParameters parameters;
+    private ConnectionSettings applied;
+
+    @Param({"fresh", "reused", "changed"})
+    private String connectionKind;
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class RoundTrips {
+        public long switches;
+        public long roundTrips;
+        private Connection connection;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            connection = countingConnection(this);
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        parameters = new ConnectionParameters(new NoopLazyLogger());
+        parameters.setTransactionIsolation(Optional::empty, TRANSACTION_READ_COMMITTED);
+        parameters.setReadOnly(Optional::empty, true);
+        parameters.setSchema(Optional::empty, "public");
+        parameters.addRuntimeParameterConfiguration("SET work_mem = '8MB'");
+        final ConnectionSettings beforeLastChange = parameters.getSettings();
+        parameters.addRuntimeParameterConfiguration("SET statement_timeout = 1000");
+        switch (connectionKind) {
+            case "fresh":
+                applied = null;
+                break;
+            case "reused":
+                applied = parameters.getSettings();
+                break;
+            case "changed":
+                applied = beforeLastChange;
+                break;
+            default:
+                throw new IllegalArgumentException(connectionKind);
+        }
+    }
+
+    @Benchmark
+    public void initialize(RoundTrips counters) throws SQLException {
+        parameters.initialize(counters.connection, applied);
+        counters.switches++;
+    }
+
+    /**
+     * Setters and executions reach the database. Getters of the modes, statement creation and batching don't.
+     */
+    private static Connection countingConnection(RoundTrips counters) {
+        final Statement statement = (Statement) Proxy.newProxyInstance(
+            ConnectionParametersBenchmark.class.getClassLoader(),
+            new Class<?>[]{Statement.class},
+            (proxy, method, args) -> {
+                if (method.getName().startsWith("execute")) {
+                    counters.roundTrips++;
+                }
+                return method.getName().equals("executeBatch") ? new int[0] : defaultValue(method.getReturnType());
+            }
+        );
+        return (Connection) Proxy.newProxyInstance(
+            ConnectionParametersBenchmark.class.getClassLoader(),
+            new Class<?>[]{Connection.class},
+            (proxy, method, args) -> {
+                if (method.getName().startsWith("set")) {
+                    counters.roundTrips++;
+                }
+                return method.getName().equals("createStatement") ? statement : defaultValue(method.getReturnType());
+            }
+        );
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        return type == boolean.class ? Boolean.FALSE : type == int.class ? (Object) 0 : null;
+    }
+}
@@ -0,0 +1,101 @@
+package com.atlassian.db.replica.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the classifiers of SQL routes:
+ * <ul>
+ *     <li>{@code legacy} - the previous heuristics, kept by {@code compatibleWithPreviousVersion}</li>
+ *     <li>{@code tokenizing} - the single-pass tokenizer</li>
+ *     <li>{@code cached} - the tokenizer behind a {@link CachingSqlClassifier}, which every statement hits</li>
+ * </ul>
+ * on short statements with and without locking clauses, and on a large statement, whose locking clause is at
+ * the end of it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SqlClassifierBenchmark {
+    private static final String[] SHORT_QUERIES = {
+        "SELECT 1",
+        "select O_S_PROPERTY_ENTRY.id from public.propertyentry O_S_PROPERTY_ENTRY where id = ? for update",
+        "select \"ISSUE\".\"id\" from \"public\".\"jiraissue\" \"ISSUE\" where id = ? for no key update",
+        "select \"ISSUE\".\"id\" from \"public\".\"jiraissue\" \"ISSUE\" where id = ? for share",
+        "select \"ISSUE\".\"id\" from \"public\".\"jiraissue\" \"ISSUE\" where id = ? for key share",
+        "select \"AO1\".\"ID\" from \"AO1\" \"AO1\" where \"AO1\".\"STATUS\" = ? limit 10 for update skip locked",
+        "update \"public\".\"jiraissue\" set summary = ? where id = ?"
+    };
+    private SqlClassifier classifier;
+    private String[] queries;
+
+    @Param({"legacy", "tokenizing", "cached"})
+    public String kind;
+
+    @Param({"short", "large"})
+    public String size;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final SqlFunction sqlFunction = new SqlFunction(Collections.emptySet());
+        switch (kind) {
+            case "legacy":
+                classifier = new LegacySqlClassifier(sqlFunction);
+                break;
+            case "tokenizing":
+                classifier = new TokenizingSqlClassifier(sqlFunction);
+                break;
+            case "cached":
+                classifier = new CachingSqlClassifier(new TokenizingSqlClassifier(sqlFunction), 1024);
+                break;
+            default:
+                throw new IllegalArgumentException(kind);
+        }
+        if (size.equals("short")) {
+            queries = SHORT_QUERIES;
+        } else {
+            final String large = largeQuery();
+            queries = new String[]{large, large + "\nfor update"};
+        }
+    }
+
+    @Benchmark
+    public void classify(Blackhole blackhole) {
+        for (String sql : queries) {
+            blackhole.consume(classifier.classify(sql));
+        }
+    }
+
+    /**
+     * Resembles the SQL generated for a search with many clauses: about 20 kB of nested subqueries, comments
+     * and string literals.
+     */
+    private static String largeQuery() {
+        final StringBuilder sql = new StringBuilder("select \"ISSUE\".\"id\"");
+        for (int i = 0; i < 100; i++) {
+            sql.append(", /* com.atlassian.jira.jql.dbquery.Clause").append(i).append(" */ case when exists (select 1")
+                .append(" from \"public\".\"customfieldvalue\" \"CFV").append(i).append("\"")
+                .append(" where \"CFV").append(i).append("\".\"issue\" = \"ISSUE\".\"id\"")
+                .append(" and \"CFV").append(i).append("\".\"stringvalue\" = 'value ").append(i).append("')")
+                .append(" then 1 else 0 end");
+        }
+        return sql.append("\nfrom \"public\".\"jiraissue\" \"ISSUE\" where \"ISSUE\".\"project\" = ?").toString();
+    }
+}
@@ -0,0 +1,56 @@
+package com.atlassian.db.replica.internal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Compares the lookup of read-only functions in place, over the SQL characters, with the previous lookup, which cut
+ * the name out of the SQL and looked it up in a set of lower and upper case names. Run it with
+ * {@code -prof gc} to see the allocations.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SqlFunctionBenchmark {
+    private static final String[] NAMES = {"count", "COUNT", "max", "lower", "Lower", "nextval", "do_something"};
+    private static final int NAME_START = "SELECT ".length();
+    private final SqlFunction sqlFunction = new SqlFunction(Collections.emptySet());
+    private final Set<String> substringLookup = Stream.of(NAMES)
+        .filter(name -> sqlFunction.isReadOnly(name, 0, name.length()))
+        .flatMap(name -> Stream.of(name.toLowerCase(), name.toUpperCase()))
+        .collect(Collectors.toSet());
+    private final String[] queries = Stream.of(NAMES)
+        .map(name -> "SELECT " + name + "(x) FROM foo")
+        .toArray(String[]::new);
+
+    @Benchmark
+    public void inPlace(Blackhole blackhole) {
+        for (String sql : queries) {
+            blackhole.consume(sqlFunction.isReadOnly(sql, NAME_START, sql.indexOf('(')));
+        }
+    }
+
+    @Benchmark
+    public void substring(Blackhole blackhole) {
+        for (String sql : queries) {
+            blackhole.consume(substringLookup.contains(sql.substring(NAME_START, sql.indexOf('('))));
+        }
+    }
+}
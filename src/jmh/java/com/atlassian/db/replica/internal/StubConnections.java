@@ -0,0 +1,67 @@
+package com.atlassian.db.replica.internal;
+
+import com.atlassian.db.replica.spi.ConnectionProvider;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+
+/**
+ * Connections, statements and result sets doing nothing, so benchmarks measure only the routing.
+ */
+public final class StubConnections implements ConnectionProvider {
+
+    @Override
+    public boolean isReplicaAvailable() {
+        return true;
+    }
+
+    @Override
+    public Connection getMainConnection() {
+        return create();
+    }
+
+    @Override
+    public Connection getReplicaConnection() {
+        return create();
+    }
+
+    public static Connection create() {
+        return stub(Connection.class);
+    }
+
+    /**
+     * Stubs JDBC types returned by the stub too, so statements can be created and executed.
+     */
+    private static <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(
+            StubConnections.class.getClassLoader(),
+            new Class<?>[]{type},
+            (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "equals":
+                        return proxy == args[0];
+                    case "hashCode":
+                        return System.identityHashCode(proxy);
+                    case "toString":
+                        return "Stub" + type.getSimpleName();
+                    default:
+                        return defaultValue(method.getReturnType());
+                }
+            }
+        ));
+    }
+
+    private static Object defaultValue(Class<?> type) {
+        if (type == boolean.class) {
+            return false;
+        } else if (type == int.class) {
+            return 0;
+        } else if (type == long.class) {
+            return 0L;
+        } else if (type.isInterface() && type.getName().startsWith("java.sql.")) {
+            return stub(type);
+        } else {
+            return null;
+        }
+    }
+}
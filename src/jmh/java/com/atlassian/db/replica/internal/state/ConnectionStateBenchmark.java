@@ -0,0 +1,99 @@
+package com.atlassian.db.replica.internal.state;
+
+import com.atlassian.db.replica.api.reason.Reason;
+import com.atlassian.db.replica.internal.ConnectionParameters;
+import com.atlassian.db.replica.internal.RouteDecisionBuilder;
+import com.atlassian.db.replica.internal.StubConnections;
+import com.atlassian.db.replica.internal.Warnings;
+import com.atlassian.db.replica.internal.logs.LazyLogger;
+import com.atlassian.db.replica.internal.logs.NoopLazyLogger;
+import com.atlassian.db.replica.spi.ReplicaConsistency;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures how much {@link ConnectionState} costs each query, once the connection is established.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@org.openjdk.jmh.annotations.State(Scope.Thread)
+public class ConnectionStateBenchmark {
+    private ConnectionState state;
+
+    @Param({"REPLICA", "MAIN"})
+    public String connectedTo;
+
+    @Setup(Level.Trial)
+    public void connect() throws SQLException {
+        final LazyLogger logger = new NoopLazyLogger();
+        state = new ConnectionState(
+            new StubConnections(),
+            new AlwaysConsistent(),
+            new ConnectionParameters(logger),
+            new Warnings(),
+            new NoOpStateListener(),
+            logger
+        );
+        if (connectedTo.equals("MAIN")) {
+            state.getWriteConnection(new RouteDecisionBuilder(Reason.RW_API_CALL));
+        } else {
+            state.getReadConnection(new RouteDecisionBuilder(Reason.READ_OPERATION));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws SQLException {
+        state.close();
+    }
+
+    @Benchmark
+    public State getState() {
+        return state.getState();
+    }
+
+    @Benchmark
+    public boolean hasWriteConnection() {
+        return state.hasWriteConnection();
+    }
+
+    @Benchmark
+    public Optional<Connection> getConnection() {
+        return state.getConnection();
+    }
+
+    @Benchmark
+    public Connection getReadConnection() throws SQLException {
+        return state.getReadConnection(new RouteDecisionBuilder(Reason.READ_OPERATION));
+    }
+
+    private static final class AlwaysConsistent implements ReplicaConsistency {
+
+        @Override
+        public void write(Connection main) {
+        }
+
+        @Override
+        public boolean isConsistent(Supplier<Connection> replica) {
+            return true;
+        }
+    }
+}
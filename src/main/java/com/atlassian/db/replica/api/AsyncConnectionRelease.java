@@ -0,0 +1,87 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.internal.state.ConnectionRelease;
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resets and closes the connections, which {@link DualConnection} is done with, on an executor.
+ * Without it, every switch between main and replica and every {@link DualConnection#close()} waits for
+ * the driver to reset and close the connection. Build it once per process and pass it to every
+ * {@link DualConnection.Builder#asyncConnectionRelease}.
+ * <p>
+ * The connection warnings are saved before the release, so {@link DualConnection#getWarnings()} sees them
+ * right away. Failures of asynchronous releases can't be thrown to the caller, so they're logged as warnings.
+ * <p>
+ * At most {@link Builder#queueCapacity} releases wait for the executor. Once the queue is full, or the executor
+ * rejects a release, the caller releases the connection itself, so it can't outpace the executor.
+ */
+@ThreadSafe
+public final class AsyncConnectionRelease {
+    private final LongAdder asynchronous = new LongAdder();
+    private final LongAdder backPressured = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final ConnectionRelease release;
+
+    private AsyncConnectionRelease(Executor executor, int queueCapacity) {
+        this.release = new ConnectionRelease(executor, queueCapacity, asynchronous, backPressured, failures);
+    }
+
+    /**
+     * @param executor resets and closes connections. It's not shut down by the release.
+     */
+    public static AsyncConnectionRelease.Builder builder(Executor executor) {
+        return new Builder(executor);
+    }
+
+    ConnectionRelease getRelease() {
+        return release;
+    }
+
+    /**
+     * @return how many connections were released on the executor
+     */
+    public long getAsynchronousCount() {
+        return asynchronous.sum();
+    }
+
+    /**
+     * @return how many connections were released on the caller thread, because the queue was full
+     */
+    public long getBackPressureCount() {
+        return backPressured.sum();
+    }
+
+    /**
+     * @return how many releases on the executor failed
+     */
+    public long getFailureCount() {
+        return failures.sum();
+    }
+
+    public static class Builder {
+        private final Executor executor;
+        private int queueCapacity = 64;
+
+        private Builder(Executor executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * @param queueCapacity the maximum number of releases waiting for the executor, 64 by default
+         */
+        public AsyncConnectionRelease.Builder queueCapacity(int queueCapacity) {
+            if (queueCapacity < 1) {
+                throw new IllegalArgumentException("The queue capacity must be positive, but was " + queueCapacity);
+            }
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        public AsyncConnectionRelease build() {
+            return new AsyncConnectionRelease(executor, queueCapacity);
+        }
+    }
+}
@@ -16,6 +16,8 @@ import com.atlassian.db.replica.spi.SuppliedCache;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.Collection;
+import java.util.Optional;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import static java.lang.String.format;
@@ -33,7 +35,8 @@ public final class AuroraMultiReplicaConsistency implements ReplicaConsistency {
         SuppliedCache<Collection<Database>> discoveredReplicasCache,
         String clusterUri,
         LazyLogger lazyLogger,
-        Supplier<Connection> discovererConnectionSupplier
+        Supplier<Connection> discovererConnectionSupplier,
+        ReplicaLagEstimate replicaLagEstimate
     ) {
         this.logger = logger;
         this.replicaConsistency = replicaConsistency;
@@ -44,6 +47,7 @@ public final class AuroraMultiReplicaConsistency implements ReplicaConsistency {
             .connectionSupplier(discovererConnectionSupplier)
             .clusterUri(clusterUri)
             .logger(lazyLogger)
+            .replicaLagEstimate(replicaLagEstimate)
             .build();
     }
 
@@ -58,6 +62,29 @@ public final class AuroraMultiReplicaConsistency implements ReplicaConsistency {
 
     @Override
     public boolean isConsistent(Supplier<Connection> replicaSupplier) {
+        return isConsistentOnEveryReplica(replicaSupplier, replicaConsistency::isConsistent);
+    }
+
+    /**
+     * Checks the {@code token} on every replica, like {@link #isConsistent(Supplier)} checks the last write.
+     */
+    @Override
+    public boolean isConsistent(Supplier<Connection> replicaSupplier, ConsistencyToken token) {
+        return isConsistentOnEveryReplica(
+            replicaSupplier,
+            replica -> replicaConsistency.isConsistent(replica, token)
+        );
+    }
+
+    @Override
+    public Optional<ConsistencyToken> exportToken() {
+        return replicaConsistency.exportToken();
+    }
+
+    private boolean isConsistentOnEveryReplica(
+        Supplier<Connection> replicaSupplier,
+        Predicate<Supplier<Connection>> replicaCheck
+    ) {
         final Collection<Database> replicas = cluster.getReplicas(replicaSupplier);
         logger.info("Checking consistency for " + replicas.size() + " replicas.");
         lazyLogger.debug(() -> format("Checking consistency for %d replicas.", replicas.size()));
@@ -66,7 +93,7 @@ public final class AuroraMultiReplicaConsistency implements ReplicaConsistency {
             .allMatch(replica -> {
                 logger.info("Checking consistency for replica:" + replica.getId());
                 try (LazyConnectionSupplier connectionSupplier = new LazyConnectionSupplier(replica.getConnectionSupplier())) {
-                    final boolean isConsistent = replicaConsistency.isConsistent(connectionSupplier);
+                    final boolean isConsistent = replicaCheck.test(connectionSupplier);
                     lazyLogger.debug(() -> format(
                         "AuroraMultiReplicaConsistency#isConsistent (isConsistent=%s, replica=%s)",
                         isConsistent,
@@ -131,6 +158,7 @@ public final class AuroraMultiReplicaConsistency implements ReplicaConsistency {
         private LazyLogger lazyLogger = new NoopLazyLogger();
         private String clusterUri;
         private Supplier<Connection> discovererConnectionSupplier;
+        private ReplicaLagEstimate replicaLagEstimate;
 
         public Builder replicaConsistency(ReplicaConsistency replicaConsistency) {
             this.replicaConsistency = replicaConsistency;
@@ -196,6 +224,17 @@ public final class AuroraMultiReplicaConsistency implements ReplicaConsistency {
             return this;
         }
 
+        /**
+         * Feeds the estimate with the lag of the most outdated replica from every discovery, so
+         * {@link PessimisticPropagationConsistency.Builder#adaptPropagation} can adapt to it.
+         *
+         * @param replicaLagEstimate usually a single estimate for the whole process
+         */
+        public Builder replicaLagEstimate(ReplicaLagEstimate replicaLagEstimate) {
+            this.replicaLagEstimate = replicaLagEstimate;
+            return this;
+        }
+
         /**
          * @deprecated see {@link AuroraConnectionDetails}.
          */
@@ -220,7 +259,8 @@ public final class AuroraMultiReplicaConsistency implements ReplicaConsistency {
                 discoveredReplicasCache,
                 clusterUri,
                 lazyLogger,
-                discovererConnectionSupplier
+                discovererConnectionSupplier,
+                replicaLagEstimate
             );
         }
     }
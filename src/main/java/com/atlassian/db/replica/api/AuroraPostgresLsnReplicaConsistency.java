@@ -25,10 +25,12 @@ public final class AuroraPostgresLsnReplicaConsistency implements ReplicaConsist
 
     private final Cache<Long> lastWrite;
     private final SuppliedCache<Long> replicaLsnCache;
+    private final AuroraReplicaLsnPoller replicaLsnPoller;
 
     public static final class Builder {
         private Cache<Long> lastWrite = new MonotonicMemoryCache<>();
         private SuppliedCache<Long> replicaLsnCache = new NoCacheSuppliedCache<>();
+        private AuroraReplicaLsnPoller replicaLsnPoller = null;
 
         /**
          * @param lastWrite remembers last write
@@ -46,20 +48,33 @@ public final class AuroraPostgresLsnReplicaConsistency implements ReplicaConsist
             return this;
         }
 
+        /**
+         * Compares the last write with the replica LSN polled in the background, so consistency checks don't query
+         * the replica. They fall back to {@link #replicaLsnCache}, only if the poller falls behind.
+         *
+         * @param poller usually a single instance for the whole process
+         */
+        public Builder replicaLsnPoller(AuroraReplicaLsnPoller poller) {
+            this.replicaLsnPoller = poller;
+            return this;
+        }
+
         /**
          * @return consistency assuming that LSN (log sequence number) is greater or equal to LSN for last write (if known)
          */
         public AuroraPostgresLsnReplicaConsistency build() {
-            return new AuroraPostgresLsnReplicaConsistency(lastWrite, replicaLsnCache);
+            return new AuroraPostgresLsnReplicaConsistency(lastWrite, replicaLsnCache, replicaLsnPoller);
         }
     }
 
     private AuroraPostgresLsnReplicaConsistency(
         Cache<Long> lastWrite,
-        SuppliedCache<Long> replicaLsnCache
+        SuppliedCache<Long> replicaLsnCache,
+        AuroraReplicaLsnPoller replicaLsnPoller
     ) {
         this.lastWrite = lastWrite;
         this.replicaLsnCache = replicaLsnCache;
+        this.replicaLsnPoller = replicaLsnPoller;
     }
 
     @Override
@@ -82,7 +97,40 @@ public final class AuroraPostgresLsnReplicaConsistency implements ReplicaConsist
         }
     }
 
+    /**
+     * Judges by the LSN in the {@code token}, if it has one. Otherwise, judges by the last write.
+     */
+    @Override
+    public boolean isConsistent(Supplier<Connection> replica, ConsistencyToken token) {
+        if (!token.getLsn().isPresent()) {
+            return isConsistent(replica);
+        }
+        try {
+            return isConsistentBasedOnLsn(replica, token.getLsn().get()).orElse(false);
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the LSN of the last write
+     */
+    @Override
+    public Optional<ConsistencyToken> exportToken() {
+        return lastWrite.get().map(ConsistencyToken::ofLsn);
+    }
+
     private Optional<Boolean> isConsistentBasedOnLsn(Supplier<Connection> replica, Long lastWriteLsn) {
+        if (replicaLsnPoller != null) {
+            final Optional<Long> polledLsn = replicaLsnPoller.getReplicaLsn();
+            if (polledLsn.isPresent() && polledLsn.get() >= lastWriteLsn) {
+                return Optional.of(true);
+            }
+            if (polledLsn.isPresent() && replicaLsnPoller.isUpToDate()) {
+                return Optional.of(false);
+            }
+            replicaLsnPoller.recordFallback();
+        }
         return replicaLsnCache
             .get(() -> queryReplicaDbLsn(replica.get()))
             .map(lsn -> lsn >= lastWriteLsn);
@@ -98,11 +146,11 @@ public final class AuroraPostgresLsnReplicaConsistency implements ReplicaConsist
     /**
      * @return LSN (log sequence number) for the most outdated replica database (the lowest LSN)
      */
-    private long queryReplicaDbLsn(Connection connection) {
+    static long queryReplicaDbLsn(Connection connection) {
         return queryLsn(connection, "SELECT MIN(durable_lsn) AS lsn FROM aurora_global_db_instance_status();");
     }
 
-    private long queryLsn(Connection connection, String rawSqlQuery) {
+    private static long queryLsn(Connection connection, String rawSqlQuery) {
         try (
             PreparedStatement query = connection.prepareStatement(rawSqlQuery);
             ResultSet results = query.executeQuery()
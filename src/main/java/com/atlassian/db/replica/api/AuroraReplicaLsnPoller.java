@@ -0,0 +1,229 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.internal.NotLoggingLogger;
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+import com.atlassian.db.replica.spi.Logger;
+import com.atlassian.db.replica.spi.ReplicaConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Polls the LSN (log sequence number) of the most outdated Aurora replica in the background, so
+ * {@link AuroraPostgresLsnReplicaConsistency} can judge consistency without querying the replica on request threads.
+ * Build it once per process and pass it to {@link AuroraPostgresLsnReplicaConsistency.Builder#replicaLsnPoller}.
+ * <p>
+ * A polled LSN can only be older than the actual one, so it can make a replica look behind, but never ahead.
+ * The consistency falls back to querying the replica itself only when the polled LSN is behind the last write and
+ * older than {@link Builder#maxStaleness}, i.e. when the poller falls behind.
+ *
+ * @see AuroraPostgresLsnReplicaConsistency
+ */
+@ThreadSafe
+public final class AuroraReplicaLsnPoller implements AutoCloseable {
+    private final ReplicaConnectionProvider connectionProvider;
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Logger logger;
+    private final Clock clock;
+    private final Duration maxStaleness;
+    private volatile ScheduledFuture<?> polls;
+    private final LongAdder pollCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder fallbackCount = new LongAdder();
+    private volatile PolledLsn polledLsn = null;
+
+    private AuroraReplicaLsnPoller(
+        ReplicaConnectionProvider connectionProvider,
+        ScheduledExecutorService executor,
+        boolean ownsExecutor,
+        Logger logger,
+        Clock clock,
+        Duration maxStaleness
+    ) {
+        this.connectionProvider = connectionProvider;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.logger = logger;
+        this.clock = clock;
+        this.maxStaleness = maxStaleness;
+    }
+
+    /**
+     * Schedules the polls once the poller is constructed, so they never see it partially constructed.
+     */
+    private AuroraReplicaLsnPoller start(Duration pollInterval) {
+        polls = executor.scheduleWithFixedDelay(this::poll, 0, pollInterval.toMillis(), MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * @param connectionProvider provides replica connections for the polls, it closes them afterwards
+     */
+    public static Builder builder(ReplicaConnectionProvider connectionProvider) {
+        return new Builder(connectionProvider);
+    }
+
+    /**
+     * @return the last polled LSN of the most outdated replica, or empty before the first successful poll
+     */
+    public Optional<Long> getReplicaLsn() {
+        final PolledLsn lsn = polledLsn;
+        return lsn != null ? Optional.of(lsn.lsn) : Optional.empty();
+    }
+
+    /**
+     * The replicas are at least as fresh as the last polled LSN was this long ago.
+     *
+     * @return time since the start of the last successful poll, or empty before the first one
+     */
+    public Optional<Duration> getStaleness() {
+        final PolledLsn lsn = polledLsn;
+        return lsn != null ? Optional.of(Duration.between(lsn.polledAt, clock.instant())) : Optional.empty();
+    }
+
+    /**
+     * @return true if the last polled LSN is known and younger than {@link Builder#maxStaleness}
+     */
+    public boolean isUpToDate() {
+        return getStaleness().map(staleness -> staleness.compareTo(maxStaleness) <= 0).orElse(false);
+    }
+
+    /**
+     * @return how many polls succeeded
+     */
+    public long getPollCount() {
+        return pollCount.sum();
+    }
+
+    /**
+     * @return how many polls failed. A failed poll keeps the last polled LSN.
+     */
+    public long getFailureCount() {
+        return failureCount.sum();
+    }
+
+    /**
+     * @return how many consistency checks queried the replica themselves, because the poller fell behind
+     */
+    public long getFallbackCount() {
+        return fallbackCount.sum();
+    }
+
+    void recordFallback() {
+        fallbackCount.increment();
+    }
+
+    void poll() {
+        final Instant start = clock.instant();
+        try (Connection connection = connectionProvider.getReplicaConnection()) {
+            final long lsn = AuroraPostgresLsnReplicaConsistency.queryReplicaDbLsn(connection);
+            polledLsn = new PolledLsn(lsn, start);
+            pollCount.increment();
+        } catch (SQLException | RuntimeException exception) {
+            failureCount.increment();
+            logger.warn("Failed to poll the replica LSN, keeping the last polled one", exception);
+        }
+    }
+
+    /**
+     * Stops the polls. Shuts the executor down only if the poller created it.
+     */
+    @Override
+    public void close() {
+        polls.cancel(false);
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+
+    private static final class PolledLsn {
+        private final long lsn;
+        private final Instant polledAt;
+
+        private PolledLsn(long lsn, Instant polledAt) {
+            this.lsn = lsn;
+            this.polledAt = polledAt;
+        }
+    }
+
+    public static final class Builder {
+        private final ReplicaConnectionProvider connectionProvider;
+        private Duration pollInterval = Duration.ofMillis(100);
+        private Duration maxStaleness = Duration.ofSeconds(1);
+        private ScheduledExecutorService executor;
+        private Logger logger = new NotLoggingLogger();
+        private Clock clock = Clock.systemUTC();
+
+        private Builder(ReplicaConnectionProvider connectionProvider) {
+            this.connectionProvider = connectionProvider;
+        }
+
+        /**
+         * @param pollInterval time between the end of a poll and the start of the next one, 100 milliseconds
+         *                     by default
+         */
+        public Builder pollInterval(Duration pollInterval) {
+            this.pollInterval = pollInterval;
+            return this;
+        }
+
+        /**
+         * @param maxStaleness how old the polled LSN can get, before consistency checks stop trusting that
+         *                     the replica is behind, 1 second by default
+         */
+        public Builder maxStaleness(Duration maxStaleness) {
+            this.maxStaleness = maxStaleness;
+            return this;
+        }
+
+        /**
+         * @param executor runs the polls. By default, the polls run on their own daemon thread.
+         */
+        public Builder executor(ScheduledExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Builder logger(Logger logger) {
+            this.logger = logger;
+            return this;
+        }
+
+        /**
+         * @param clock measures the staleness of the polled LSN
+         */
+        public Builder measureTime(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        /**
+         * Schedules the first poll right away.
+         */
+        public AuroraReplicaLsnPoller build() {
+            return new AuroraReplicaLsnPoller(
+                connectionProvider,
+                executor != null ? executor : Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "db-replica-aurora-lsn-poller");
+                    thread.setDaemon(true);
+                    return thread;
+                }),
+                executor == null,
+                logger,
+                clock,
+                maxStaleness
+            ).start(pollInterval);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.internal.DriverDefaults;
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+
+/**
+ * Remembers the parameters new connections and statements start with, e.g. the transaction isolation or the max
+ * rows. {@link DualConnection} learns each of them once, from a connection borrowed just for it, when a getter asks
+ * for a parameter, which wasn't set. Build it once per database and pass it to every
+ * {@link DualConnection.Builder#connectionDefaults}, so the connections share what they learned.
+ * <p>
+ * Without it, the defaults are remembered per {@link com.atlassian.db.replica.spi.ConnectionProvider} instance.
+ * A provider created for every {@link DualConnection} then borrows an extra connection for every such getter.
+ */
+@ThreadSafe
+public final class ConnectionDefaults {
+    private final DriverDefaults driverDefaults = new DriverDefaults();
+
+    DriverDefaults getDriverDefaults() {
+        return driverDefaults;
+    }
+}
@@ -0,0 +1,130 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.spi.ReplicaConsistency;
+
+import java.time.Instant;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The position of a write, which reads on other nodes should see. Get it with {@link ReplicaConsistency#exportToken}
+ * on the node, which wrote, pass it along with the user, e.g. in an HTTP header or a cookie, and set it with
+ * {@link DualConnection.Builder#consistencyToken} on the node, which reads.
+ * <p>
+ * The token holds the LSN (log sequence number) of the write, its time or both. The encoded token is a short string
+ * of lowercase letters, digits and dots, safe for headers and cookies. Timestamps compare clocks of different nodes,
+ * so the max propagation should cover the clock skew between them.
+ */
+public final class ConsistencyToken {
+    private static final char LSN = 'l';
+    private static final char TIMESTAMP = 't';
+    private static final int RADIX = 36;
+    private final Long lsn;
+    private final Long timestampMillis;
+
+    private ConsistencyToken(Long lsn, Long timestampMillis) {
+        this.lsn = lsn;
+        this.timestampMillis = timestampMillis;
+    }
+
+    public static ConsistencyToken ofLsn(long lsn) {
+        return new ConsistencyToken(lsn, null);
+    }
+
+    /**
+     * Rounds the timestamp up to milliseconds, so the token is never older than the write.
+     */
+    public static ConsistencyToken ofTimestamp(Instant timestamp) {
+        final long millis = timestamp.toEpochMilli();
+        return new ConsistencyToken(null, timestamp.getNano() % 1_000_000 == 0 ? millis : millis + 1);
+    }
+
+    /**
+     * @param encoded the result of {@link #encode()}
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static ConsistencyToken decode(String encoded) {
+        Long lsn = null;
+        Long timestampMillis = null;
+        try {
+            for (String part : encoded.split("\\.")) {
+                final long value = Long.parseLong(part.substring(1), RADIX);
+                if (part.charAt(0) == LSN && lsn == null) {
+                    lsn = value;
+                } else if (part.charAt(0) == TIMESTAMP && timestampMillis == null) {
+                    timestampMillis = value;
+                } else {
+                    throw new IllegalArgumentException("Unknown part " + part);
+                }
+            }
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Malformed consistency token: " + encoded, e);
+        }
+        return new ConsistencyToken(lsn, timestampMillis);
+    }
+
+    /**
+     * @return the LSN of the write, if known
+     */
+    public Optional<Long> getLsn() {
+        return Optional.ofNullable(lsn);
+    }
+
+    /**
+     * @return the time of the write, if known
+     */
+    public Optional<Instant> getTimestamp() {
+        return Optional.ofNullable(timestampMillis).map(Instant::ofEpochMilli);
+    }
+
+    /**
+     * Combines the tokens of two writes, e.g. when the user wrote through two nodes.
+     *
+     * @return the later LSN and the later time of both tokens
+     */
+    public ConsistencyToken merge(ConsistencyToken other) {
+        return new ConsistencyToken(max(lsn, other.lsn), max(timestampMillis, other.timestampMillis));
+    }
+
+    private static Long max(Long first, Long second) {
+        if (first == null) {
+            return second;
+        }
+        return second == null ? first : Long.valueOf(Math.max(first, second));
+    }
+
+    /**
+     * @return e.g. {@code l2ocbz3e.tkq8zx0a0}
+     */
+    public String encode() {
+        final StringBuilder encoded = new StringBuilder();
+        if (lsn != null) {
+            encoded.append(LSN).append(Long.toString(lsn, RADIX));
+        }
+        if (timestampMillis != null) {
+            if (encoded.length() > 0) {
+                encoded.append('.');
+            }
+            encoded.append(TIMESTAMP).append(Long.toString(timestampMillis, RADIX));
+        }
+        return encoded.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ConsistencyToken that = (ConsistencyToken) o;
+        return Objects.equals(lsn, that.lsn) && Objects.equals(timestampMillis, that.timestampMillis);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lsn, timestampMillis);
+    }
+
+    @Override
+    public String toString() {
+        return "ConsistencyToken{" + encode() + '}';
+    }
+}
@@ -3,6 +3,7 @@ package com.atlassian.db.replica.api;
 import com.atlassian.db.replica.api.reason.Reason;
 import com.atlassian.db.replica.internal.ClientInfo;
 import com.atlassian.db.replica.internal.ForwardCall;
+import com.atlassian.db.replica.internal.FunctionNames;
 import com.atlassian.db.replica.internal.logs.ConnectionProviderLogger;
 import com.atlassian.db.replica.internal.logs.DelegatingLazyLogger;
 import com.atlassian.db.replica.internal.NoOpDirtyConnectionCloseHook;
@@ -11,6 +12,8 @@ import com.atlassian.db.replica.internal.ReplicaConnectionProvider;
 import com.atlassian.db.replica.internal.ReplicaPreparedStatement;
 import com.atlassian.db.replica.internal.ReplicaStatement;
 import com.atlassian.db.replica.internal.RouteDecisionBuilder;
+import com.atlassian.db.replica.internal.SqlClassifier;
+import com.atlassian.db.replica.internal.TokenAwareConsistency;
 import com.atlassian.db.replica.internal.logs.ReplicaConsistencyLogger;
 import com.atlassian.db.replica.internal.logs.TaggedLogger;
 import com.atlassian.db.replica.internal.logs.LazyLogger;
@@ -62,27 +65,24 @@ public final class DualConnection implements Connection {
     private final ReplicaConnectionProvider connectionProvider;
     private final ReplicaConsistency consistency;
     private final DatabaseCall databaseCall;
-    private final Set<String> readOnlyFunctions;
+    private final SqlClassifier sqlClassifier;
     private final DirtyConnectionCloseHook dirtyConnectionCloseHook;
-    private final boolean compatibleWithPreviousVersion;
     private final LazyLogger logger;
 
     private DualConnection(
         ReplicaConnectionProvider connectionProvider,
         ReplicaConsistency consistency,
         DatabaseCall databaseCall,
-        Set<String> readOnlyFunctions,
+        SqlClassifier sqlClassifier,
         DirtyConnectionCloseHook dirtyConnectionCloseHook,
-        boolean compatibleWithPreviousVersion,
         LazyLogger logger
     ) {
         this.connectionProvider = connectionProvider;
         this.dirtyConnectionCloseHook = dirtyConnectionCloseHook;
-        this.compatibleWithPreviousVersion = compatibleWithPreviousVersion;
         this.logger = logger;
         this.consistency = consistency;
         this.databaseCall = databaseCall;
-        this.readOnlyFunctions = readOnlyFunctions;
+        this.sqlClassifier = sqlClassifier;
     }
 
     @Override
@@ -92,9 +92,8 @@ public final class DualConnection implements Connection {
             connectionProvider,
             consistency,
             databaseCall,
-            readOnlyFunctions,
+            sqlClassifier,
             this,
-            compatibleWithPreviousVersion,
             logger
         ).build();
     }
@@ -107,9 +106,8 @@ public final class DualConnection implements Connection {
             consistency,
             databaseCall,
             sql,
-            readOnlyFunctions,
+            sqlClassifier,
             this,
-            compatibleWithPreviousVersion,
             logger
         ).build();
     }
@@ -122,9 +120,8 @@ public final class DualConnection implements Connection {
             consistency,
             databaseCall,
             sql,
-            readOnlyFunctions,
+            sqlClassifier,
             this,
-            compatibleWithPreviousVersion,
             logger
         ).build();
     }
@@ -242,9 +239,8 @@ public final class DualConnection implements Connection {
                 connectionProvider,
                 consistency,
                 databaseCall,
-                readOnlyFunctions,
+                sqlClassifier,
                 this,
-                compatibleWithPreviousVersion,
                 logger
             )
             .resultSetType(resultSetType)
@@ -264,9 +260,8 @@ public final class DualConnection implements Connection {
             consistency,
             databaseCall,
             sql,
-            readOnlyFunctions,
+            sqlClassifier,
             this,
-            compatibleWithPreviousVersion,
             logger
         ).resultSetType(resultSetType)
             .resultSetConcurrency(resultSetConcurrency)
@@ -282,9 +277,8 @@ public final class DualConnection implements Connection {
             consistency,
             databaseCall,
             sql,
-            readOnlyFunctions,
+            sqlClassifier,
             this,
-            compatibleWithPreviousVersion,
             logger
         )
             .resultSetType(resultSetType)
@@ -351,9 +345,8 @@ public final class DualConnection implements Connection {
                 connectionProvider,
                 consistency,
                 databaseCall,
-                readOnlyFunctions,
+                sqlClassifier,
                 this,
-                compatibleWithPreviousVersion,
                 logger
             ).resultSetType(resultSetType)
             .resultSetConcurrency(resultSetConcurrency)
@@ -374,9 +367,8 @@ public final class DualConnection implements Connection {
             consistency,
             databaseCall,
             sql,
-            readOnlyFunctions,
+            sqlClassifier,
             this,
-            compatibleWithPreviousVersion,
             logger
         ).resultSetType(resultSetType)
             .resultSetConcurrency(resultSetConcurrency)
@@ -398,9 +390,8 @@ public final class DualConnection implements Connection {
             consistency,
             databaseCall,
             sql,
-            readOnlyFunctions,
+            sqlClassifier,
             this,
-            compatibleWithPreviousVersion,
             logger
         )
             .resultSetType(resultSetType)
@@ -417,9 +408,8 @@ public final class DualConnection implements Connection {
             consistency,
             databaseCall,
             sql,
-            readOnlyFunctions,
+            sqlClassifier,
             this,
-            compatibleWithPreviousVersion,
             logger
         ).autoGeneratedKeys(autoGeneratedKeys)
             .build();
@@ -433,9 +423,8 @@ public final class DualConnection implements Connection {
             consistency,
             databaseCall,
             sql,
-            readOnlyFunctions,
+            sqlClassifier,
             this,
-            compatibleWithPreviousVersion,
             logger
         ).columnIndexes(columnIndexes)
             .build();
@@ -449,9 +438,8 @@ public final class DualConnection implements Connection {
             consistency,
             databaseCall,
             sql,
-            readOnlyFunctions,
+            sqlClassifier,
             this,
-            compatibleWithPreviousVersion,
             logger
         ).columnNames(columnNames)
             .build();
@@ -596,9 +584,7 @@ public final class DualConnection implements Connection {
     @Override
     public int getNetworkTimeout() throws SQLException {
         checkClosed();
-        return connectionProvider
-            .getWriteConnection(new RouteDecisionBuilder(Reason.RW_API_CALL))
-            .getNetworkTimeout();
+        return connectionProvider.getNetworkTimeout();
     }
 
     @Override
@@ -632,6 +618,16 @@ public final class DualConnection implements Connection {
         private Set<String> readOnlyFunctions = new HashSet<>();
         private DirtyConnectionCloseHook dirtyConnectionCloseHook = new NoOpDirtyConnectionCloseHook();
         private boolean compatibleWithPreviousVersion = false;
+        private SqlClassificationCache sqlClassificationCache = null;
+        private PostgresReadOnlyFunctionDiscovery readOnlyFunctionDiscovery = null;
+        private LearnedWrites learnedWrites = null;
+        private boolean leaveMainAfterCommit = false;
+        private WarmConnections warmConnections = null;
+        private MainConnectionHedging mainConnectionHedging = null;
+        private AsyncConnectionRelease asyncConnectionRelease = null;
+        private boolean threadConfined = false;
+        private ConnectionDefaults connectionDefaults = null;
+        private ConsistencyToken consistencyToken = null;
         private Logger logger = null;
         private ReplicaConnectionProvider replicaConnectionProvider;
 
@@ -653,6 +649,19 @@ public final class DualConnection implements Connection {
             return this;
         }
 
+        /**
+         * Treats functions discovered as STABLE or IMMUTABLE as read-only, in addition to
+         * {@link #readOnlyFunctions(Collection)}.
+         *
+         * @param readOnlyFunctionDiscovery usually a single discovery for the whole process
+         */
+        public DualConnection.Builder readOnlyFunctionDiscovery(
+            PostgresReadOnlyFunctionDiscovery readOnlyFunctionDiscovery
+        ) {
+            this.readOnlyFunctionDiscovery = readOnlyFunctionDiscovery;
+            return this;
+        }
+
         public DualConnection.Builder databaseCall(DatabaseCall databaseCall) {
             this.databaseCall = databaseCall;
             return this;
@@ -675,6 +684,107 @@ public final class DualConnection implements Connection {
             return this;
         }
 
+        /**
+         * Shares classification of SQL with other connections using the same cache.
+         * Without the cache, each connection classifies every statement it creates.
+         *
+         * @param sqlClassificationCache usually a single cache for the whole process
+         */
+        public DualConnection.Builder sqlClassificationCache(SqlClassificationCache sqlClassificationCache) {
+            this.sqlClassificationCache = sqlClassificationCache;
+            return this;
+        }
+
+        /**
+         * Retries reads rejected by replicas as writes on the main database, and routes them to the main database
+         * next time.
+         *
+         * @param learnedWrites usually a single table for the whole process
+         */
+        public DualConnection.Builder learnedWrites(LearnedWrites learnedWrites) {
+            this.learnedWrites = learnedWrites;
+            return this;
+        }
+
+        /**
+         * Lets reads return to replicas after writes. Without it, the connection keeps using the main database
+         * after the first write, until it's closed.
+         * <p>
+         * Once a write is committed, and the connection is in the auto-commit mode, reads use the main database
+         * only until a replica is consistent. Session state outside of the JDBC API, e.g. session-level advisory
+         * locks or temporary tables, doesn't follow the reads to replicas.
+         */
+        public DualConnection.Builder leaveMainAfterCommit() {
+            this.leaveMainAfterCommit = true;
+            return this;
+        }
+
+        /**
+         * Keeps the connection to main or replica open, when switching to the other one, so switching back doesn't
+         * acquire a new connection.
+         *
+         * @param warmConnections usually a single instance for the whole process
+         */
+        public DualConnection.Builder warmConnections(WarmConnections warmConnections) {
+            this.warmConnections = warmConnections;
+            return this;
+        }
+
+        /**
+         * Acquires the main connection in parallel to slow consistency checks, so reads on inconsistent replicas
+         * don't wait for both connections one after another.
+         *
+         * @param mainConnectionHedging usually a single instance for the whole process
+         */
+        public DualConnection.Builder mainConnectionHedging(MainConnectionHedging mainConnectionHedging) {
+            this.mainConnectionHedging = mainConnectionHedging;
+            return this;
+        }
+
+        /**
+         * Resets and closes connections off the caller thread, on switches between main and replica and on close.
+         *
+         * @param asyncConnectionRelease usually a single instance for the whole process
+         */
+        public DualConnection.Builder asyncConnectionRelease(AsyncConnectionRelease asyncConnectionRelease) {
+            this.asyncConnectionRelease = asyncConnectionRelease;
+            return this;
+        }
+
+        /**
+         * Shares the learned defaults of connection and statement parameters with other connections to the same
+         * database. Without it, they're learned once per {@link ConnectionProvider} instance.
+         *
+         * @param connectionDefaults usually a single instance per database
+         */
+        public DualConnection.Builder connectionDefaults(ConnectionDefaults connectionDefaults) {
+            this.connectionDefaults = connectionDefaults;
+            return this;
+        }
+
+        /**
+         * Declares the connection and its statements are used by one thread at a time, so they can skip the locks
+         * on every query. Pools may build the connection on one thread and lend it to others, as long as the lending
+         * happens-before the use. With assertions enabled, concurrent use fails with an {@link AssertionError}.
+         * Without them, it's undefined. Only {@link DualConnection#abort} can still come from other threads.
+         */
+        public DualConnection.Builder threadConfined() {
+            this.threadConfined = true;
+            return this;
+        }
+
+        /**
+         * Routes reads by the position of a write from another node, instead of the writes known to this node,
+         * until the connection writes itself.
+         *
+         * @param consistencyToken usually exported by the node, which handled the last write of the user
+         * @see ReplicaConsistency#exportToken()
+         */
+        public DualConnection.Builder consistencyToken(ConsistencyToken consistencyToken) {
+            this.consistencyToken = consistencyToken;
+            return this;
+        }
+
         public DualConnection.Builder logger(Logger logger) {
             this.logger = logger;
             return this;
@@ -692,10 +802,13 @@ public final class DualConnection implements Connection {
                     new StateAwareLogger(this::getState, new DelegatingLazyLogger(logger))
                 ) :
                 new NoopLazyLogger();
-            final ReplicaConsistency replicaConsistency = logger != null ? new ReplicaConsistencyLogger(
+            final ReplicaConsistency loggingConsistency = logger != null ? new ReplicaConsistencyLogger(
                 consistency,
                 lazyLogger
             ) : consistency;
+            final ReplicaConsistency replicaConsistency = consistencyToken != null ?
+                new TokenAwareConsistency(loggingConsistency, consistencyToken) :
+                loggingConsistency;
             final ConnectionProvider connectionProviderLogger = logger != null ? new ConnectionProviderLogger(
                 connectionProvider,
                 lazyLogger
@@ -704,19 +817,43 @@ public final class DualConnection implements Connection {
                 connectionProviderLogger,
                 replicaConsistency,
                 stateListener,
-                lazyLogger
+                lazyLogger,
+                leaveMainAfterCommit,
+                warmConnections != null ? warmConnections.createIdleConnections() : null,
+                mainConnectionHedging != null ? mainConnectionHedging.getHedging() : null,
+                asyncConnectionRelease != null ? asyncConnectionRelease.getRelease() : null,
+                threadConfined,
+                connectionDefaults != null ? connectionDefaults.getDriverDefaults() : null
             );
             return new DualConnection(
                 replicaConnectionProvider,
                 replicaConsistency,
                 databaseCall,
-                readOnlyFunctions,
+                createSqlClassifier(),
                 dirtyConnectionCloseHook,
-                compatibleWithPreviousVersion,
                 lazyLogger
             );
         }
 
+        private SqlClassifier createSqlClassifier() {
+            final boolean tryUnknownFunctionsOnReplica = learnedWrites != null &&
+                learnedWrites.triesUnknownFunctionsOnReplica();
+            final SqlClassifier sqlClassifier = sqlClassificationCache != null ?
+                sqlClassificationCache.getClassifier(
+                    readOnlyFunctions,
+                    readOnlyFunctionDiscovery,
+                    compatibleWithPreviousVersion,
+                    tryUnknownFunctionsOnReplica
+                ) :
+                SqlClassifier.create(
+                    readOnlyFunctions,
+                    readOnlyFunctionDiscovery != null ? readOnlyFunctionDiscovery.getFunctionNames() : FunctionNames.EMPTY,
+                    compatibleWithPreviousVersion,
+                    tryUnknownFunctionsOnReplica
+                );
+            return learnedWrites != null ? learnedWrites.learningClassifier(sqlClassifier) : sqlClassifier;
+        }
+
         private State getState() {
             return replicaConnectionProvider.getState();
         }
@@ -0,0 +1,108 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.internal.LearnedWriteTable;
+import com.atlassian.db.replica.internal.LearningSqlClassifier;
+import com.atlassian.db.replica.internal.NoOpLearnedWritesStore;
+import com.atlassian.db.replica.internal.SqlClassifier;
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+import com.atlassian.db.replica.spi.LearnedWritesStore;
+
+/**
+ * Learns which SQL is a write from the replicas rejecting it. When a replica fails a read with
+ * SQLState 25006 (read-only SQL transaction), the connection runs the read on the main database instead and
+ * remembers the SQL. Next time, the SQL goes to the main database right away.
+ * <p>
+ * SQL is learned by its shape, so statements differing only in literals share one entry. Only the fingerprints of
+ * the shapes are kept and stored, never the SQL. By default, the classifier
+ * still sends calls to unknown functions to the main database, so only the SQL it misroutes otherwise gets learned.
+ * Enable {@link Builder#tryUnknownFunctionsOnReplica} to send them to replicas first and learn the writes among
+ * them. Build it once per process and pass it to every {@link DualConnection.Builder#learnedWrites}.
+ */
+@ThreadSafe
+public final class LearnedWrites {
+    private final LearnedWriteTable table;
+    private final LearnedWritesStore store;
+    private final boolean tryUnknownFunctionsOnReplica;
+
+    private LearnedWrites(LearnedWriteTable table, LearnedWritesStore store, boolean tryUnknownFunctionsOnReplica) {
+        this.table = table;
+        this.store = store;
+        this.tryUnknownFunctionsOnReplica = tryUnknownFunctionsOnReplica;
+    }
+
+    public static LearnedWrites.Builder builder() {
+        return new Builder();
+    }
+
+    SqlClassifier learningClassifier(SqlClassifier classifier) {
+        return new LearningSqlClassifier(classifier, table, store::save);
+    }
+
+    boolean triesUnknownFunctionsOnReplica() {
+        return tryUnknownFunctionsOnReplica;
+    }
+
+    /**
+     * @return how many times the learned SQL was routed to the main database
+     */
+    public long getHitCount() {
+        return table.getHitCount();
+    }
+
+    /**
+     * @return how many SQL shapes were learned, including the loaded and the evicted ones
+     */
+    public long getLearnCount() {
+        return table.getLearnCount();
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    public static class Builder {
+        private int capacity = 1024;
+        private LearnedWritesStore store = new NoOpLearnedWritesStore();
+        private boolean tryUnknownFunctionsOnReplica = false;
+
+        private Builder() {
+        }
+
+        /**
+         * @param capacity the maximum number of learned SQL shapes, 1024 by default. Learning more evicts
+         *                 the oldest ones.
+         */
+        public LearnedWrites.Builder capacity(int capacity) {
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * @param store loads the fingerprints learned before and saves the newly learned ones
+         */
+        public LearnedWrites.Builder store(LearnedWritesStore store) {
+            this.store = store;
+            return this;
+        }
+
+        /**
+         * Sends calls to functions, which aren't known to be read-only, to replicas first, instead of the main
+         * database. The first call of a writing function fails on a replica and runs again on the main database,
+         * the next calls go to the main database right away. Functions depending on the main session, like
+         * {@code nextval} or advisory locks, always go to the main database.
+         */
+        public LearnedWrites.Builder tryUnknownFunctionsOnReplica() {
+            this.tryUnknownFunctionsOnReplica = true;
+            return this;
+        }
+
+        /**
+         * Loads the fingerprints learned before. It doesn't save them again.
+         */
+        public LearnedWrites build() {
+            final LearnedWriteTable table = new LearnedWriteTable(capacity);
+            store.load().forEach(table::learn);
+            return new LearnedWrites(table, store, tryUnknownFunctionsOnReplica);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.internal.state.ConnectionHedging;
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Acquires a main connection in parallel to a slow consistency check. Without it, a read on an inconsistent
+ * replica acquires the replica connection, checks it and only then acquires the main connection.
+ * Build it once per process and pass it to every {@link DualConnection.Builder#mainConnectionHedging}.
+ * <p>
+ * The main connection is acquired on the executor once the check takes longer than {@link Builder#threshold}
+ * after asking for the replica connection. Checks, which don't touch the replica, aren't hedged.
+ * If the latest check was negative, the next one is likely to fail too, so the acquisition starts right away.
+ * When the replica turns out to be consistent, the main connection is closed on the executor,
+ * without blocking the query.
+ * <p>
+ * Use the hedge counts to tune the threshold: wasted hedges cost connections, used ones save latency.
+ */
+@ThreadSafe
+public final class MainConnectionHedging {
+    private final LongAdder started = new LongAdder();
+    private final LongAdder used = new LongAdder();
+    private final LongAdder wasted = new LongAdder();
+    private final ConnectionHedging hedging;
+
+    private MainConnectionHedging(ScheduledExecutorService executor, Duration threshold) {
+        this.hedging = new ConnectionHedging(executor, threshold, started, used, wasted);
+    }
+
+    /**
+     * Hedges start when a consistency check asks for the replica connection. Checks finishing below the threshold
+     * cancel their hedges, so configure a {@link java.util.concurrent.ScheduledThreadPoolExecutor} with
+     * {@link java.util.concurrent.ScheduledThreadPoolExecutor#setRemoveOnCancelPolicy(boolean) removeOnCancelPolicy},
+     * otherwise cancelled hedges stay in its queue until the threshold passes.
+     *
+     * @param executor acquires and releases the hedged main connections. It's not shut down by the hedging.
+     */
+    public static MainConnectionHedging.Builder builder(ScheduledExecutorService executor) {
+        return new Builder(executor);
+    }
+
+    ConnectionHedging getHedging() {
+        return hedging;
+    }
+
+    /**
+     * @return how many main connections were acquired in parallel to consistency checks
+     */
+    public long getStartedCount() {
+        return started.sum();
+    }
+
+    /**
+     * @return how many hedged main connections served queries
+     */
+    public long getUsedCount() {
+        return used.sum();
+    }
+
+    /**
+     * @return how many hedged main connections were closed unused, because the replica was consistent
+     */
+    public long getWastedCount() {
+        return wasted.sum();
+    }
+
+    public static class Builder {
+        private final ScheduledExecutorService executor;
+        private Duration threshold = Duration.ofMillis(20);
+
+        private Builder(ScheduledExecutorService executor) {
+            this.executor = executor;
+        }
+
+        /**
+         * @param threshold how long a consistency check runs before acquiring main in parallel, 20 ms by default
+         */
+        public MainConnectionHedging.Builder threshold(Duration threshold) {
+            if (threshold.isNegative()) {
+                throw new IllegalArgumentException("The threshold can't be negative, but was " + threshold);
+            }
+            this.threshold = threshold;
+            return this;
+        }
+
+        public MainConnectionHedging build() {
+            return new MainConnectionHedging(executor, threshold);
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+import com.atlassian.db.replica.spi.Cache;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongFunction;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ToLongFunction;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Holds values that grow over time, unless reset, in a small memory-mapped file, so all processes on a host mapping
+ * the same file share them. Pass it to {@link PessimisticPropagationConsistency.Builder#cacheLastWrite} or
+ * {@link AuroraPostgresLsnReplicaConsistency.Builder#cacheLastWrite}, so a write in one process holds back the reads
+ * in the others.
+ * <p>
+ * Reads are a single load from the mapped memory, without locks or system calls. Puts of values, which aren't
+ * greater than the cached one, don't lock either. Greater values lock the file, so concurrent puts in all processes
+ * keep the maximum. Interrupts don't break the cache: {@link FileChannel} closes itself when a thread waiting for
+ * the file lock is interrupted, so the lock is taken with the interrupt flag cleared and a closed channel is reopened.
+ * <p>
+ * The file is 16 bytes long: a magic number, a format version and the value, in the native byte order of the host.
+ * Close the cache to release the file. The mapping itself stays valid until it's garbage collected.
+ *
+ * @param <T> the position of a write, e.g. its time or LSN
+ */
+@ThreadSafe
+public final class MappedMonotonicCache<T extends Comparable<T>> implements Cache<T>, AutoCloseable {
+    private static final int MAGIC = 0x44424C57;
+    private static final int VERSION = 1;
+    private static final int VALUE_OFFSET = 8;
+    private static final int SIZE = 16;
+    private static final long EMPTY = Long.MIN_VALUE;
+    /**
+     * File locks are held by the whole process and fail on overlaps within it, so the threads take turns first.
+     */
+    private static final ReentrantLock FILE_LOCK = new ReentrantLock();
+    /**
+     * Written after every update and read before every load, so the threads of this process see the updates
+     * in order. The mapped memory itself isn't covered by the Java memory model.
+     */
+    private static volatile long updates = 0;
+    private final Path path;
+    /**
+     * Guarded by {@link #FILE_LOCK}.
+     */
+    private FileChannel channel;
+    private volatile boolean closed = false;
+    private final MappedByteBuffer buffer;
+    private final ToLongFunction<T> encoder;
+    private final LongFunction<T> decoder;
+
+    private MappedMonotonicCache(
+        Path path,
+        FileChannel channel,
+        MappedByteBuffer buffer,
+        ToLongFunction<T> encoder,
+        LongFunction<T> decoder
+    ) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.encoder = encoder;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Caches numbers, e.g. the LSN (log sequence number) of the last write. {@link Long#MIN_VALUE} can't be cached.
+     *
+     * @param path the shared file, it doesn't have to exist
+     * @throws IOException if the file can't be mapped or isn't a cache of this kind
+     */
+    public static MappedMonotonicCache<Long> ofLongs(Path path) throws IOException {
+        return open(path, Long::longValue, Long::valueOf);
+    }
+
+    /**
+     * Caches time with nanosecond precision, e.g. the time of the last write. It fits the years 1677 to 2262.
+     *
+     * @param path the shared file, it doesn't have to exist
+     * @throws IOException if the file can't be mapped or isn't a cache of this kind
+     */
+    public static MappedMonotonicCache<Instant> ofInstants(Path path) throws IOException {
+        return open(
+            path,
+            instant -> Math.addExact(Math.multiplyExact(instant.getEpochSecond(), 1_000_000_000L), instant.getNano()),
+            nanos -> Instant.ofEpochSecond(0, nanos)
+        );
+    }
+
+    private static <T extends Comparable<T>> MappedMonotonicCache<T> open(
+        Path path,
+        ToLongFunction<T> encoder,
+        LongFunction<T> decoder
+    ) throws IOException {
+        final FileChannel channel = FileChannel.open(path, CREATE, READ, WRITE);
+        try {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+            buffer.order(ByteOrder.nativeOrder());
+            FILE_LOCK.lock();
+            final boolean interrupted = Thread.interrupted();
+            try (FileLock ignored = channel.lock()) {
+                initialise(path, channel, buffer);
+            } finally {
+                FILE_LOCK.unlock();
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return new MappedMonotonicCache<>(path, channel, buffer, encoder, decoder);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Mapping extends the file with zeros, so a file without the magic number is new. Other processes open
+     * the file under the same lock, so they never see it uninitialised.
+     */
+    private static void initialise(Path path, FileChannel channel, MappedByteBuffer buffer) throws IOException {
+        final int magic = buffer.getInt(0);
+        if (magic == 0 && buffer.getInt(4) == 0 && buffer.getLong(VALUE_OFFSET) == 0) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putLong(VALUE_OFFSET, EMPTY);
+            buffer.force();
+        } else if (magic != MAGIC) {
+            throw new IOException(path + " is not a monotonic cache");
+        } else if (buffer.getInt(4) != VERSION) {
+            throw new IOException(path + " has an unsupported monotonic cache version " + buffer.getInt(4));
+        } else if (channel.size() != SIZE) {
+            throw new IOException(path + " is corrupted");
+        }
+    }
+
+    /**
+     * Lock-free.
+     */
+    @Override
+    public Optional<T> get() {
+        final long value = load();
+        return value == EMPTY ? Optional.empty() : Optional.of(decoder.apply(value));
+    }
+
+    @Override
+    public void put(T value) {
+        final long encoded = encoder.applyAsLong(value);
+        if (load() >= encoded) {
+            return;
+        }
+        update(current -> Math.max(current, encoded));
+    }
+
+    /**
+     * Forgets the value in all processes.
+     */
+    @Override
+    public void reset() {
+        update(current -> EMPTY);
+    }
+
+    private long load() {
+        @SuppressWarnings("unused")
+        final long ordered = updates;
+        return buffer.getLong(VALUE_OFFSET);
+    }
+
+    private void update(LongUnaryOperator operator) {
+        FILE_LOCK.lock();
+        final boolean interrupted = Thread.interrupted();
+        try (FileLock ignored = lockFile()) {
+            buffer.putLong(VALUE_OFFSET, operator.applyAsLong(buffer.getLong(VALUE_OFFSET)));
+            updates++;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to update " + path, e);
+        } finally {
+            FILE_LOCK.unlock();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * An interrupt can still arrive while the lock is awaited, which closes the channel. The mapping survives it,
+     * so only the channel is reopened.
+     */
+    private FileLock lockFile() throws IOException {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+        if (!channel.isOpen()) {
+            channel = FileChannel.open(path, READ, WRITE);
+        }
+        return channel.lock();
+    }
+
+    @Override
+    public void close() throws IOException {
+        FILE_LOCK.lock();
+        try {
+            closed = true;
+            channel.close();
+        } finally {
+            FILE_LOCK.unlock();
+        }
+    }
+}
@@ -8,20 +8,26 @@ import java.sql.Connection;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Optional;
 import java.util.function.Supplier;
 
 /**
  * Assumes that writes propagate from main to replicas in at most a given amount of time.
+ * The time is fixed, or adapts to the recent replica lag, see {@link Builder#adaptPropagation}.
  * If it cannot remember the time of last write, pessimistically assumes it's going to be inconsistent.
  */
 public final class PessimisticPropagationConsistency implements ReplicaConsistency {
 
     private final Clock clock;
-    private final Duration maxPropagation;
+    private final Supplier<Duration> maxPropagation;
     private final Cache<Instant> lastWrite;
+    /**
+     * Remembers the writes, which {@link #lastWrite} failed to cache, so this process still waits for them.
+     */
+    private final Cache<Instant> uncachedWrite = new MonotonicMemoryCache<>();
 
     public static class Builder {
-        private Duration maxPropagation = Duration.ofMillis(100);
+        private Supplier<Duration> maxPropagation = () -> Duration.ofMillis(100);
         private Cache<Instant> lastWrite = new MonotonicMemoryCache<>();
         private Clock clock = Clock.systemUTC();
 
@@ -29,7 +35,17 @@ public final class PessimisticPropagationConsistency implements ReplicaConsisten
          * @param maxPropagation how long do writes propagate from main to replica
          */
         public Builder assumeMaxPropagation(Duration maxPropagation) {
-            this.maxPropagation = maxPropagation;
+            this.maxPropagation = () -> maxPropagation;
+            return this;
+        }
+
+        /**
+         * Assumes the propagation window of the {@code replicaLagEstimate} instead of a fixed max propagation.
+         *
+         * @param replicaLagEstimate usually a single estimate for the whole process
+         */
+        public Builder adaptPropagation(ReplicaLagEstimate replicaLagEstimate) {
+            this.maxPropagation = replicaLagEstimate::getPropagationWindow;
             return this;
         }
 
@@ -57,7 +73,11 @@ public final class PessimisticPropagationConsistency implements ReplicaConsisten
         }
     }
 
-    private PessimisticPropagationConsistency(Clock clock, Duration maxPropagation, Cache<Instant> lastWrite) {
+    private PessimisticPropagationConsistency(
+        Clock clock,
+        Supplier<Duration> maxPropagation,
+        Cache<Instant> lastWrite
+    ) {
         this.clock = clock;
         this.maxPropagation = maxPropagation;
         this.lastWrite = lastWrite;
@@ -65,12 +85,49 @@ public final class PessimisticPropagationConsistency implements ReplicaConsisten
 
     @Override
     public void write(Connection main) {
-        lastWrite.put(clock.instant());
+        cacheWrite(clock.instant());
     }
 
     @Override
     public boolean isConsistent(Supplier<Connection> replica) {
-        Instant assumedRefresh = assumeLastRefresh();
+        return isPropagated(maxPropagation.get());
+    }
+
+    /**
+     * The replica lags behind main by at most the max propagation.
+     */
+    @Override
+    public boolean isConsistent(Supplier<Connection> replica, Duration maxStaleness) {
+        final Duration propagation = maxPropagation.get();
+        return maxStaleness.compareTo(propagation) >= 0 || isPropagated(propagation);
+    }
+
+    /**
+     * Judges by the time in the {@code token}, if it has one. Otherwise, judges by the last write.
+     */
+    @Override
+    public boolean isConsistent(Supplier<Connection> replica, ConsistencyToken token) {
+        final Duration propagation = maxPropagation.get();
+        return token.getTimestamp()
+            .map(write -> assumeLastRefresh(propagation).isAfter(write))
+            .orElseGet(() -> isPropagated(propagation));
+    }
+
+    /**
+     * @return the time of the last write
+     */
+    @Override
+    public Optional<ConsistencyToken> exportToken() {
+        return knownLastWrite().map(ConsistencyToken::ofTimestamp);
+    }
+
+    /**
+     * Reads the max propagation once per check, so an adaptive one is measured once too.
+     *
+     * @param propagation the max propagation for this check
+     */
+    private boolean isPropagated(Duration propagation) {
+        Instant assumedRefresh = assumeLastRefresh(propagation);
         Instant assumedWrite = assumeLastWrite();
         return assumedRefresh.isAfter(assumedWrite);
     }
@@ -78,8 +135,8 @@ public final class PessimisticPropagationConsistency implements ReplicaConsisten
     /**
      * @return assumed time of last replica refresh
      */
-    private Instant assumeLastRefresh() {
-        return clock.instant().minus(maxPropagation);
+    private Instant assumeLastRefresh(Duration propagation) {
+        return clock.instant().minus(propagation);
     }
 
     /**
@@ -91,14 +148,32 @@ public final class PessimisticPropagationConsistency implements ReplicaConsisten
      * @return known or assumed time of last write
      */
     private Instant assumeLastWrite() {
-        return lastWrite
-            .get()
-            .orElseGet(this::assumeWriteJustHappened);
+        return knownLastWrite().orElseGet(this::assumeWriteJustHappened);
     }
 
     private Instant assumeWriteJustHappened() {
         final Instant now = clock.instant();
-        lastWrite.put(now);
+        cacheWrite(now);
         return now;
     }
+
+    private Optional<Instant> knownLastWrite() {
+        final Optional<Instant> uncached = uncachedWrite.get();
+        final Optional<Instant> cached = lastWrite.get();
+        if (!uncached.isPresent()) {
+            return cached;
+        }
+        return cached.filter(uncached.get()::isBefore).isPresent() ? cached : uncached;
+    }
+
+    /**
+     * The SQL already ran, so a failing cache mustn't fail the write. It's remembered in this process instead.
+     */
+    private void cacheWrite(Instant write) {
+        try {
+            lastWrite.put(write);
+        } catch (RuntimeException e) {
+            uncachedWrite.put(write);
+        }
+    }
 }
@@ -0,0 +1,186 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.internal.FunctionNames;
+import com.atlassian.db.replica.internal.NotLoggingLogger;
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+import com.atlassian.db.replica.spi.Logger;
+import com.atlassian.db.replica.spi.ReplicaConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+
+import static java.time.Duration.ofMinutes;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Discovers read-only functions from their declared volatility. Postgres doesn't allow STABLE and IMMUTABLE
+ * functions to modify the database, so their calls can run on a replica.
+ * <p>
+ * Loads the functions in the background over a replica connection, right after it's built, and then refreshes
+ * them periodically. Until the first load succeeds, calls to unknown functions keep going to the main database,
+ * unless a {@link Builder#snapshot(RoutingSnapshot)} remembers the functions discovered before.
+ * A failed refresh keeps the last discovered functions.
+ * <p>
+ * Functions with any VOLATILE overload, in any schema and in any letter case, are not discovered, because
+ * the classifier can't tell which of them a call resolves to.
+ *
+ * @see DualConnection.Builder#readOnlyFunctionDiscovery(PostgresReadOnlyFunctionDiscovery)
+ */
+@ThreadSafe
+public final class PostgresReadOnlyFunctionDiscovery implements AutoCloseable {
+    private static final String QUERY = "SELECT lower(proname) AS name FROM pg_proc " +
+        "GROUP BY lower(proname) HAVING bool_and(provolatile <> 'v')";
+    private final ReplicaConnectionProvider connectionProvider;
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Logger logger;
+    private final RoutingSnapshot snapshot;
+    private volatile ScheduledFuture<?> refreshes;
+    private volatile FunctionNames functionNames;
+
+    private PostgresReadOnlyFunctionDiscovery(
+        ReplicaConnectionProvider connectionProvider,
+        ScheduledExecutorService executor,
+        boolean ownsExecutor,
+        Logger logger,
+        RoutingSnapshot snapshot
+    ) {
+        this.connectionProvider = connectionProvider;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.logger = logger;
+        this.snapshot = snapshot;
+        this.functionNames = snapshot != null ? new FunctionNames(snapshot.getReadOnlyFunctions()) : FunctionNames.EMPTY;
+    }
+
+    /**
+     * Schedules the refreshes once the discovery is constructed, so they never see it partially constructed.
+     */
+    private PostgresReadOnlyFunctionDiscovery start(Duration refreshInterval) {
+        refreshes = executor.scheduleWithFixedDelay(this::refresh, 0, refreshInterval.toMillis(), MILLISECONDS);
+        return this;
+    }
+
+    /**
+     * @param connectionProvider provides replica connections for the discovery, it closes them afterwards
+     */
+    public static Builder builder(ReplicaConnectionProvider connectionProvider) {
+        return new Builder(connectionProvider);
+    }
+
+    /**
+     * @return names of the read-only functions discovered so far
+     */
+    public Set<String> getReadOnlyFunctions() {
+        return functionNames.getFunctions();
+    }
+
+    FunctionNames getFunctionNames() {
+        return functionNames;
+    }
+
+    /**
+     * Replaces the discovered functions, but only if they changed. Connections sharing
+     * a {@link SqlClassificationCache} keep their cached routes until then.
+     */
+    void refresh() {
+        try (
+            Connection connection = connectionProvider.getReplicaConnection();
+            Statement statement = connection.createStatement();
+            ResultSet results = statement.executeQuery(QUERY)
+        ) {
+            final Set<String> functions = new HashSet<>();
+            while (results.next()) {
+                functions.add(results.getString("name"));
+            }
+            if (!functions.equals(functionNames.getFunctions())) {
+                functionNames = new FunctionNames(functions);
+                logger.info("Discovered " + functions.size() + " read-only functions");
+                if (snapshot != null) {
+                    snapshot.saveReadOnlyFunctions(functions);
+                }
+            }
+        } catch (SQLException | RuntimeException exception) {
+            logger.warn("Failed to discover read-only functions, keeping the last discovered ones", exception);
+        }
+    }
+
+    /**
+     * Stops the refreshes. Shuts the executor down only if the discovery created it.
+     */
+    @Override
+    public void close() {
+        refreshes.cancel(false);
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+
+    public static final class Builder {
+        private final ReplicaConnectionProvider connectionProvider;
+        private Duration refreshInterval = ofMinutes(5);
+        private ScheduledExecutorService executor;
+        private Logger logger = new NotLoggingLogger();
+        private RoutingSnapshot snapshot;
+
+        private Builder(ReplicaConnectionProvider connectionProvider) {
+            this.connectionProvider = connectionProvider;
+        }
+
+        /**
+         * @param refreshInterval time between the end of a discovery and the start of the next one, 5 minutes
+         *                        by default
+         */
+        public Builder refreshInterval(Duration refreshInterval) {
+            this.refreshInterval = refreshInterval;
+            return this;
+        }
+
+        /**
+         * @param executor runs the discovery. By default, the discovery runs on its own daemon thread.
+         */
+        public Builder executor(ScheduledExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Builder logger(Logger logger) {
+            this.logger = logger;
+            return this;
+        }
+
+        /**
+         * Starts with the functions discovered by a previous process, until the first discovery replaces them.
+         * Saves the discovered functions for the next process.
+         */
+        public Builder snapshot(RoutingSnapshot snapshot) {
+            this.snapshot = snapshot;
+            return this;
+        }
+
+        /**
+         * Schedules the first discovery right away.
+         */
+        public PostgresReadOnlyFunctionDiscovery build() {
+            return new PostgresReadOnlyFunctionDiscovery(
+                connectionProvider,
+                executor != null ? executor : Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "db-replica-read-only-function-discovery");
+                    thread.setDaemon(true);
+                    return thread;
+                }),
+                executor == null,
+                logger,
+                snapshot
+            ).start(refreshInterval);
+        }
+    }
+}
@@ -0,0 +1,297 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Estimates how long writes take to propagate to replicas from the recently observed replica lag, so
+ * {@link PessimisticPropagationConsistency} can wait only as long as replicas lag now, instead of the worst case.
+ * Build it once per process and pass it to {@link PessimisticPropagationConsistency.Builder#adaptPropagation}.
+ * <p>
+ * Feed it with {@link #recordLag}, or let {@link AuroraMultiReplicaConsistency.Builder#replicaLagEstimate} feed it
+ * with the lag of the most outdated replica from every discovery. The propagation window is a percentile of
+ * the last {@link Builder#sampleSize} samples plus a safety margin. It falls back to the ceiling, when there are
+ * too few samples or the last one is too old, e.g. when the feed stops.
+ * <p>
+ * The samples are counted in a fixed-bucket histogram, so recording one costs the same, whatever the sample size.
+ * The buckets are exact up to {@value #SUB_BUCKETS} microseconds and about 3% wide beyond, and the percentile
+ * rounds up to the end of its bucket. Lags beyond the ceiling share the last bucket.
+ */
+@ThreadSafe
+public final class ReplicaLagEstimate {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private final double percentile;
+    private final Duration safetyMargin;
+    private final Duration ceiling;
+    private final int minSamples;
+    private final Duration maxSampleAge;
+    private final Clock clock;
+    private final long ceilingMicros;
+    /**
+     * The bucket of every recent sample, in the recording order, so the oldest one can leave its bucket.
+     */
+    private final int[] samples;
+    private final int[] bucketCounts;
+    private final ReentrantLock recordLock = new ReentrantLock();
+    private final LongAdder sampleCount = new LongAdder();
+    private final LongAdder ceilingCount = new LongAdder();
+    private int nextSample = 0;
+    private int filledSamples = 0;
+    private volatile Estimate estimate = null;
+
+    private ReplicaLagEstimate(
+        double percentile,
+        Duration safetyMargin,
+        Duration ceiling,
+        int sampleSize,
+        int minSamples,
+        Duration maxSampleAge,
+        Clock clock
+    ) {
+        this.percentile = percentile;
+        this.safetyMargin = safetyMargin;
+        this.ceiling = ceiling;
+        this.minSamples = minSamples;
+        this.maxSampleAge = maxSampleAge;
+        this.clock = clock;
+        this.ceilingMicros = toMicros(ceiling);
+        this.samples = new int[sampleSize];
+        this.bucketCounts = new int[bucket(ceilingMicros) + 1];
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Takes constant time, so it's cheap enough to record on every consistency check.
+     *
+     * @param lag how far a replica lagged behind main recently. Negative lag is ignored.
+     */
+    public void recordLag(Duration lag) {
+        if (lag.isNegative()) {
+            return;
+        }
+        final int bucket = bucket(Math.min(toMicros(lag), ceilingMicros));
+        final Instant now = clock.instant();
+        recordLock.lock();
+        try {
+            if (filledSamples == samples.length) {
+                bucketCounts[samples[nextSample]]--;
+            } else {
+                filledSamples++;
+            }
+            samples[nextSample] = bucket;
+            bucketCounts[bucket]++;
+            nextSample = (nextSample + 1) % samples.length;
+            final Duration lagPercentile = Duration.of(highestMicros(percentileBucket()), ChronoUnit.MICROS);
+            estimate = new Estimate(lagPercentile, filledSamples, now);
+        } finally {
+            recordLock.unlock();
+        }
+        sampleCount.increment();
+    }
+
+    /**
+     * Walks the histogram from the top, because high percentiles are close to it.
+     */
+    private int percentileBucket() {
+        final int rank = Math.max((int) Math.ceil(percentile * filledSamples), 1);
+        final int samplesAbove = filledSamples - rank;
+        int counted = 0;
+        for (int bucket = bucketCounts.length - 1; bucket > 0; bucket--) {
+            counted += bucketCounts[bucket];
+            if (counted > samplesAbove) {
+                return bucket;
+            }
+        }
+        return 0;
+    }
+
+    private static long toMicros(Duration duration) {
+        return duration.getSeconds() >= Long.MAX_VALUE / 1_000_000 ?
+            Long.MAX_VALUE :
+            duration.getSeconds() * 1_000_000 + duration.getNano() / 1000;
+    }
+
+    /**
+     * Values below {@link #SUB_BUCKETS} get a bucket each. Every further power of two is split into
+     * {@link #SUB_BUCKETS} buckets.
+     */
+    private static int bucket(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        final int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) (micros >>> shift) - SUB_BUCKETS;
+    }
+
+    private static long highestMicros(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        final int shift = bucket / SUB_BUCKETS - 1;
+        final long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * @return the percentile of the recent lag plus the safety margin, but at most the ceiling. The ceiling,
+     * if there are too few or too old samples.
+     */
+    public Duration getPropagationWindow() {
+        final Optional<Duration> lag = getEstimatedLag();
+        if (!lag.isPresent()) {
+            ceilingCount.increment();
+            return ceiling;
+        }
+        final Duration window = lag.get().plus(safetyMargin);
+        if (window.compareTo(ceiling) >= 0) {
+            ceilingCount.increment();
+            return ceiling;
+        }
+        return window;
+    }
+
+    /**
+     * @return the percentile of the recent lag, rounded up to its histogram bucket, or empty if there are too few
+     * or too old samples
+     */
+    public Optional<Duration> getEstimatedLag() {
+        final Estimate estimate = this.estimate;
+        if (estimate == null || estimate.samples < minSamples) {
+            return Optional.empty();
+        }
+        if (Duration.between(estimate.recordedAt, clock.instant()).compareTo(maxSampleAge) > 0) {
+            return Optional.empty();
+        }
+        return Optional.of(estimate.lag);
+    }
+
+    /**
+     * @return how many samples were recorded
+     */
+    public long getSampleCount() {
+        return sampleCount.sum();
+    }
+
+    /**
+     * @return how many times the propagation window fell back to, or was capped by, the ceiling
+     */
+    public long getCeilingCount() {
+        return ceilingCount.sum();
+    }
+
+    private static final class Estimate {
+        private final Duration lag;
+        private final int samples;
+        private final Instant recordedAt;
+
+        private Estimate(Duration lag, int samples, Instant recordedAt) {
+            this.lag = lag;
+            this.samples = samples;
+            this.recordedAt = recordedAt;
+        }
+    }
+
+    public static final class Builder {
+        private double percentile = 0.99;
+        private Duration safetyMargin = Duration.ofMillis(20);
+        private Duration ceiling = Duration.ofSeconds(1);
+        private int sampleSize = 1000;
+        private int minSamples = 20;
+        private Duration maxSampleAge = Duration.ofSeconds(30);
+        private Clock clock = Clock.systemUTC();
+
+        private Builder() {
+        }
+
+        /**
+         * @param percentile the share of the recent lag samples the window covers, 0.99 by default
+         */
+        public Builder percentile(double percentile) {
+            if (percentile <= 0 || percentile > 1) {
+                throw new IllegalArgumentException("The percentile must be in (0, 1], but was " + percentile);
+            }
+            this.percentile = percentile;
+            return this;
+        }
+
+        /**
+         * @param safetyMargin added to the lag percentile, 20 milliseconds by default
+         */
+        public Builder safetyMargin(Duration safetyMargin) {
+            this.safetyMargin = safetyMargin;
+            return this;
+        }
+
+        /**
+         * @param ceiling the longest window, used when the lag is unknown, 1 second by default
+         */
+        public Builder ceiling(Duration ceiling) {
+            this.ceiling = ceiling;
+            return this;
+        }
+
+        /**
+         * @param sampleSize how many recent samples the percentile covers, 1000 by default
+         */
+        public Builder sampleSize(int sampleSize) {
+            if (sampleSize < 1) {
+                throw new IllegalArgumentException("The sample size must be positive, but was " + sampleSize);
+            }
+            this.sampleSize = sampleSize;
+            return this;
+        }
+
+        /**
+         * @param minSamples how many samples are needed to trust the percentile, 20 by default
+         */
+        public Builder minSamples(int minSamples) {
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * @param maxSampleAge how old the last sample can get, before the window falls back to the ceiling,
+         *                     30 seconds by default
+         */
+        public Builder maxSampleAge(Duration maxSampleAge) {
+            this.maxSampleAge = maxSampleAge;
+            return this;
+        }
+
+        /**
+         * @param clock measures the age of samples
+         */
+        public Builder measureTime(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public ReplicaLagEstimate build() {
+            if (minSamples > sampleSize) {
+                throw new IllegalArgumentException(
+                    "The min samples " + minSamples + " can't exceed the sample size " + sampleSize
+                );
+            }
+            return new ReplicaLagEstimate(
+                percentile,
+                safetyMargin,
+                ceiling,
+                sampleSize,
+                minSamples,
+                maxSampleAge,
+                clock
+            );
+        }
+    }
+}
@@ -0,0 +1,227 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.internal.NotLoggingLogger;
+import com.atlassian.db.replica.internal.RoutingSnapshotFile;
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+import com.atlassian.db.replica.spi.LearnedWritesStore;
+import com.atlassian.db.replica.spi.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.time.Duration.ofMinutes;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Keeps the routing data learned by this process in a local file, so the next process can route optimally from
+ * the first query instead of learning it all again:
+ * <ul>
+ *     <li>fingerprints of SQL learned as writes by {@link LearnedWrites}, see {@link #learnedWritesStore()}</li>
+ *     <li>functions discovered as read-only by {@link PostgresReadOnlyFunctionDiscovery}, see
+ *     {@link PostgresReadOnlyFunctionDiscovery.Builder#snapshot(RoutingSnapshot)}</li>
+ * </ul>
+ * The file is memory-mapped and read when the snapshot is built. It's written periodically, if anything changed,
+ * and on {@link #close()}, so close the snapshot when the process shuts down.
+ */
+@ThreadSafe
+public final class RoutingSnapshot implements AutoCloseable {
+    private final RoutingSnapshotFile file;
+    private final int learnedWritesCapacity;
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Logger logger;
+    private final Set<Long> learnedWrites;
+    private volatile ScheduledFuture<?> writes;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile Collection<String> readOnlyFunctions;
+    private volatile boolean changed = false;
+
+    private RoutingSnapshot(
+        RoutingSnapshotFile file,
+        RoutingSnapshotFile.Snapshot snapshot,
+        int learnedWritesCapacity,
+        ScheduledExecutorService executor,
+        boolean ownsExecutor,
+        Logger logger
+    ) {
+        this.file = file;
+        this.learnedWritesCapacity = learnedWritesCapacity;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.logger = logger;
+        this.learnedWrites = new LinkedHashSet<>(snapshot.getLearnedWrites());
+        this.readOnlyFunctions = snapshot.getReadOnlyFunctions();
+    }
+
+    /**
+     * Schedules the writes once the snapshot is constructed, so they never see it partially constructed.
+     */
+    private RoutingSnapshot start(Duration writeInterval) {
+        writes = executor.scheduleWithFixedDelay(
+            this::write,
+            writeInterval.toMillis(),
+            writeInterval.toMillis(),
+            MILLISECONDS
+        );
+        return this;
+    }
+
+    /**
+     * @param path the snapshot file, it doesn't have to exist
+     */
+    public static Builder builder(Path path) {
+        return new Builder(path);
+    }
+
+    /**
+     * @return a store, which loads the fingerprints learned by previous processes and keeps the ones learned by this
+     * one
+     */
+    public LearnedWritesStore learnedWritesStore() {
+        return new LearnedWritesStore() {
+            @Override
+            public Collection<Long> load() {
+                synchronized (learnedWrites) {
+                    return new ArrayList<>(learnedWrites);
+                }
+            }
+
+            @Override
+            public void save(long fingerprint) {
+                synchronized (learnedWrites) {
+                    if (learnedWrites.add(fingerprint) && learnedWrites.size() > learnedWritesCapacity) {
+                        final Iterator<Long> oldest = learnedWrites.iterator();
+                        oldest.next();
+                        oldest.remove();
+                    }
+                }
+                changed = true;
+            }
+        };
+    }
+
+    Collection<String> getReadOnlyFunctions() {
+        return readOnlyFunctions;
+    }
+
+    void saveReadOnlyFunctions(Collection<String> functions) {
+        readOnlyFunctions = Collections.unmodifiableList(new ArrayList<>(functions));
+        changed = true;
+    }
+
+    /**
+     * Writes the snapshot file, if anything changed since the last write.
+     */
+    void write() {
+        writeLock.lock();
+        try {
+            if (!changed) {
+                return;
+            }
+            changed = false;
+            final Collection<Long> learnedWritesCopy;
+            synchronized (learnedWrites) {
+                learnedWritesCopy = new ArrayList<>(learnedWrites);
+            }
+            try {
+                file.write(new RoutingSnapshotFile.Snapshot(learnedWritesCopy, readOnlyFunctions));
+            } catch (IOException | RuntimeException exception) {
+                changed = true;
+                logger.warn("Failed to write the routing snapshot", exception);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Stops the periodic writes and writes the snapshot for the last time.
+     */
+    @Override
+    public void close() {
+        writes.cancel(false);
+        if (ownsExecutor) {
+            executor.shutdownNow();
+        }
+        write();
+    }
+
+    public static final class Builder {
+        private final Path path;
+        private Duration writeInterval = ofMinutes(1);
+        private int learnedWritesCapacity = 1024;
+        private ScheduledExecutorService executor;
+        private Logger logger = new NotLoggingLogger();
+
+        private Builder(Path path) {
+            this.path = path;
+        }
+
+        /**
+         * @param writeInterval time between writes of the changed snapshot, 1 minute by default
+         */
+        public Builder writeInterval(Duration writeInterval) {
+            this.writeInterval = writeInterval;
+            return this;
+        }
+
+        /**
+         * @param learnedWritesCapacity the maximum number of kept learned SQL shapes, 1024 by default. Match it
+         *                              with {@link LearnedWrites.Builder#capacity(int)}.
+         */
+        public Builder learnedWritesCapacity(int learnedWritesCapacity) {
+            this.learnedWritesCapacity = learnedWritesCapacity;
+            return this;
+        }
+
+        /**
+         * @param executor writes the snapshot. By default, the snapshot is written on its own daemon thread.
+         */
+        public Builder executor(ScheduledExecutorService executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Builder logger(Logger logger) {
+            this.logger = logger;
+            return this;
+        }
+
+        /**
+         * Reads the snapshot file. Starts from scratch if the file is missing or can't be read.
+         */
+        public RoutingSnapshot build() {
+            final RoutingSnapshotFile file = new RoutingSnapshotFile(path);
+            RoutingSnapshotFile.Snapshot snapshot;
+            try {
+                snapshot = file.read();
+            } catch (IOException exception) {
+                logger.warn("Failed to read the routing snapshot, starting from scratch", exception);
+                snapshot = new RoutingSnapshotFile.Snapshot(Collections.emptyList(), Collections.emptyList());
+            }
+            return new RoutingSnapshot(
+                file,
+                snapshot,
+                learnedWritesCapacity,
+                executor != null ? executor : Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "db-replica-routing-snapshot");
+                    thread.setDaemon(true);
+                    return thread;
+                }),
+                executor == null,
+                logger
+            ).start(writeInterval);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+import com.atlassian.db.replica.spi.Cache;
+
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import static com.atlassian.db.replica.internal.util.Comparables.max;
+
+/**
+ * Remembers the last write of each session, e.g. a user or a request, so only the reads of the writing session wait
+ * for the replica to catch up. Pass it to {@link PessimisticPropagationConsistency.Builder#cacheLastWrite}
+ * or {@link AuroraPostgresLsnReplicaConsistency.Builder#cacheLastWrite} instead of the global cache.
+ * <p>
+ * Sessions, which didn't write, see the floor: the first write remembered by the cache, because it can't tell
+ * which session wrote before, and the last writes of the evicted sessions. The floor only makes reads wait longer,
+ * it never lets a session miss its own write. Threads without a session see the last write of all sessions.
+ * <p>
+ * The cache holds up to {@link Builder#capacity} sessions. It evicts the ones that didn't write recently,
+ * so the floor rarely moves. Use the eviction count to size it.
+ *
+ * @param <T> the position of a write, e.g. its time or LSN
+ */
+@ThreadSafe
+public final class SessionScopedCache<T extends Comparable<T>> implements Cache<T> {
+    private final Supplier<?> session;
+    private final int capacity;
+    private final ConcurrentHashMap<Object, Entry<T>> sessions;
+    private final Queue<Object> evictionOrder = new ArrayDeque<>();
+    private final Lock writeLock = new ReentrantLock();
+    private final AtomicReference<T> floor = new AtomicReference<>(null);
+    private final AtomicReference<T> latest = new AtomicReference<>(null);
+    private final LongAdder evictions = new LongAdder();
+
+    private SessionScopedCache(Supplier<?> session, int capacity) {
+        this.session = session;
+        this.capacity = capacity;
+        this.sessions = new ConcurrentHashMap<>(capacity);
+    }
+
+    /**
+     * @param session returns the session of the current thread, or null if it has none. Sessions are compared
+     *                with {@link Object#equals}.
+     * @param <T>     the position of a write, e.g. its time or LSN
+     */
+    public static <T extends Comparable<T>> Builder<T> builder(Supplier<?> session) {
+        return new Builder<>(session);
+    }
+
+    /**
+     * Lock-free.
+     *
+     * @return the last write of the current session, but not older than the floor
+     */
+    @Override
+    public Optional<T> get() {
+        final Object key = session.get();
+        if (key == null) {
+            return Optional.ofNullable(latest.get());
+        }
+        final Entry<T> entry = sessions.get(key);
+        final T floor = this.floor.get();
+        return Optional.ofNullable(entry != null ? max(entry.lastWrite, floor) : floor);
+    }
+
+    @Override
+    public void put(T value) {
+        latest.updateAndGet(previous -> max(previous, value));
+        floor.compareAndSet(null, value);
+        final Object key = session.get();
+        if (key == null) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            final Entry<T> entry = sessions.get(key);
+            if (entry != null) {
+                entry.lastWrite = max(entry.lastWrite, value);
+                entry.recentlyWritten = true;
+                return;
+            }
+            if (sessions.size() >= capacity) {
+                evict();
+            }
+            sessions.put(key, new Entry<>(value));
+            evictionOrder.add(key);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Gives the sessions, which wrote since the last eviction, a second chance and evicts the first one, which
+     * didn't. Raises the floor before removing the session, so its reads never miss its last write.
+     */
+    private void evict() {
+        while (true) {
+            final Object key = evictionOrder.remove();
+            final Entry<T> entry = sessions.get(key);
+            if (entry.recentlyWritten) {
+                entry.recentlyWritten = false;
+                evictionOrder.add(key);
+            } else {
+                floor.updateAndGet(previous -> max(previous, entry.lastWrite));
+                sessions.remove(key);
+                evictions.increment();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Forgets the writes of all sessions and the floor.
+     */
+    @Override
+    public void reset() {
+        writeLock.lock();
+        try {
+            sessions.clear();
+            evictionOrder.clear();
+            floor.set(null);
+            latest.set(null);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of remembered sessions
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    private static final class Entry<T> {
+        private volatile T lastWrite;
+        private volatile boolean recentlyWritten = false;
+
+        private Entry(T lastWrite) {
+            this.lastWrite = lastWrite;
+        }
+    }
+
+    public static final class Builder<T extends Comparable<T>> {
+        private final Supplier<?> session;
+        private int capacity = 10_000;
+
+        private Builder(Supplier<?> session) {
+            this.session = session;
+        }
+
+        /**
+         * @param capacity the maximum number of remembered sessions, 10000 by default
+         */
+        public Builder<T> capacity(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("The capacity must be positive, but was " + capacity);
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        public SessionScopedCache<T> build() {
+            return new SessionScopedCache<>(session, capacity);
+        }
+    }
+}
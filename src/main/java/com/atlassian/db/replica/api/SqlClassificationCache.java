@@ -0,0 +1,212 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.internal.CachingSqlClassifier;
+import com.atlassian.db.replica.internal.FunctionNames;
+import com.atlassian.db.replica.internal.SqlClassifier;
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers where the recently seen SQL can run, so connections sharing the cache don't classify the same SQL
+ * again. Build it once per process and pass it to every {@link DualConnection.Builder#sqlClassificationCache}.
+ * <p>
+ * The route of SQL depends on the read-only functions, configured or discovered, the compatibility mode and
+ * whether {@link LearnedWrites} try unknown functions on replicas, so connections configured differently get separate
+ * partitions of the cache. Each partition holds up to {@link Builder#capacity} SQL statements and evicts the ones
+ * that weren't used recently. There are up to {@link Builder#maxPartitions} partitions. Connections configured in
+ * yet another way classify SQL without the cache.
+ * <p>
+ * Use the hit and miss counts to size the cache.
+ */
+@ThreadSafe
+public final class SqlClassificationCache {
+    private final int capacity;
+    private final int maxPartitions;
+    private final ConcurrentMap<Configuration, CachingSqlClassifier> partitions = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private SqlClassificationCache(int capacity, int maxPartitions) {
+        this.capacity = capacity;
+        this.maxPartitions = maxPartitions;
+    }
+
+    public static SqlClassificationCache.Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * A refresh of the discovered functions can change routes, so it replaces the partition fed by
+     * the previous discovery results.
+     */
+    SqlClassifier getClassifier(
+        Set<String> readOnlyFunctions,
+        PostgresReadOnlyFunctionDiscovery discovery,
+        boolean compatibleWithPreviousVersion,
+        boolean tryUnknownFunctionsOnReplica
+    ) {
+        final FunctionNames discoveredFunctionNames = discovery != null ?
+            discovery.getFunctionNames() :
+            FunctionNames.EMPTY;
+        final Configuration configuration = new Configuration(
+            readOnlyFunctions,
+            discovery,
+            discoveredFunctionNames,
+            compatibleWithPreviousVersion,
+            tryUnknownFunctionsOnReplica
+        );
+        final CachingSqlClassifier partition = partitions.get(configuration);
+        if (partition != null) {
+            return partition;
+        }
+        final SqlClassifier classifier = SqlClassifier.create(
+            readOnlyFunctions,
+            discoveredFunctionNames,
+            compatibleWithPreviousVersion,
+            tryUnknownFunctionsOnReplica
+        );
+        partitions.keySet().removeIf(configuration::differsOnlyInDiscoveredFunctions);
+        if (partitions.size() >= maxPartitions) {
+            return classifier;
+        }
+        return partitions.computeIfAbsent(
+            configuration,
+            key -> new CachingSqlClassifier(classifier, capacity, hits, misses, evictions)
+        );
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return hits to all lookups ratio, or 0 if there were no lookups yet
+     */
+    public double getHitRate() {
+        final long hits = getHitCount();
+        final long lookups = hits + getMissCount();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    /**
+     * @return the number of cached SQL statements across all partitions
+     */
+    public int size() {
+        return partitions.values().stream().mapToInt(CachingSqlClassifier::size).sum();
+    }
+
+    /**
+     * @return the number of partitions, i.e. distinct configurations sharing the cache
+     */
+    public int getPartitionCount() {
+        return partitions.size();
+    }
+
+    public static class Builder {
+        private int capacity = 1024;
+        private int maxPartitions = 16;
+
+        private Builder() {
+        }
+
+        /**
+         * The cache keeps the whole SQL text, so mind the size of your queries.
+         *
+         * @param capacity the maximum number of SQL statements per partition, 1024 by default
+         */
+        public SqlClassificationCache.Builder capacity(int capacity) {
+            if (capacity < 1) {
+                throw new IllegalArgumentException("The capacity must be positive, but was " + capacity);
+            }
+            this.capacity = capacity;
+            return this;
+        }
+
+        /**
+         * Connections are usually configured in a few ways, so only a misconfiguration, e.g. read-only functions
+         * built per connection, reaches the limit.
+         *
+         * @param maxPartitions the maximum number of partitions, 16 by default
+         */
+        public SqlClassificationCache.Builder maxPartitions(int maxPartitions) {
+            if (maxPartitions < 1) {
+                throw new IllegalArgumentException("The max partitions must be positive, but was " + maxPartitions);
+            }
+            this.maxPartitions = maxPartitions;
+            return this;
+        }
+
+        public SqlClassificationCache build() {
+            return new SqlClassificationCache(capacity, maxPartitions);
+        }
+    }
+
+    private static final class Configuration {
+        private final Set<String> readOnlyFunctions;
+        private final PostgresReadOnlyFunctionDiscovery discovery;
+        private final FunctionNames discoveredFunctionNames;
+        private final boolean compatibleWithPreviousVersion;
+        private final boolean tryUnknownFunctionsOnReplica;
+
+        private Configuration(
+            Set<String> readOnlyFunctions,
+            PostgresReadOnlyFunctionDiscovery discovery,
+            FunctionNames discoveredFunctionNames,
+            boolean compatibleWithPreviousVersion,
+            boolean tryUnknownFunctionsOnReplica
+        ) {
+            this.readOnlyFunctions = readOnlyFunctions;
+            this.discovery = discovery;
+            this.discoveredFunctionNames = discoveredFunctionNames;
+            this.compatibleWithPreviousVersion = compatibleWithPreviousVersion;
+            this.tryUnknownFunctionsOnReplica = tryUnknownFunctionsOnReplica;
+        }
+
+        /**
+         * @return true if the other configuration is the same one, but with other discovery results
+         */
+        private boolean differsOnlyInDiscoveredFunctions(Configuration other) {
+            return discovery != null && discovery == other.discovery &&
+                discoveredFunctionNames != other.discoveredFunctionNames &&
+                compatibleWithPreviousVersion == other.compatibleWithPreviousVersion &&
+                tryUnknownFunctionsOnReplica == other.tryUnknownFunctionsOnReplica &&
+                readOnlyFunctions.equals(other.readOnlyFunctions);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Configuration that = (Configuration) o;
+            return compatibleWithPreviousVersion == that.compatibleWithPreviousVersion &&
+                tryUnknownFunctionsOnReplica == that.tryUnknownFunctionsOnReplica &&
+                discovery == that.discovery &&
+                discoveredFunctionNames == that.discoveredFunctionNames &&
+                readOnlyFunctions.equals(that.readOnlyFunctions);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(
+                readOnlyFunctions,
+                System.identityHashCode(discovery),
+                compatibleWithPreviousVersion,
+                tryUnknownFunctionsOnReplica
+            );
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.internal.state.IdleConnections;
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps both connections of a {@link DualConnection} open while it switches between main and replica.
+ * Without it, a switch closes the connection we switch away from, so mixed workloads keep acquiring
+ * and initializing connections. Build it once per process and pass it to every
+ * {@link DualConnection.Builder#warmConnections}.
+ * <p>
+ * An idle connection is closed once it's unused for longer than {@link Builder#idleTimeout}. The timeout
+ * is checked whenever the {@link DualConnection} routes a query and the idle connections are closed together
+ * with the {@link DualConnection}. A connection outside of the auto-commit mode is never kept idle, because
+ * it could hold an open transaction.
+ * <p>
+ * Use the reuse count to see how much connection churn it avoids.
+ */
+@ThreadSafe
+public final class WarmConnections {
+    private final Clock clock;
+    private final Duration idleTimeout;
+    private final LongAdder parks = new LongAdder();
+    private final LongAdder reuses = new LongAdder();
+    private final LongAdder replays = new LongAdder();
+    private final LongAdder idleCloses = new LongAdder();
+
+    private WarmConnections(Clock clock, Duration idleTimeout) {
+        this.clock = clock;
+        this.idleTimeout = idleTimeout;
+    }
+
+    public static WarmConnections.Builder builder() {
+        return new Builder();
+    }
+
+    IdleConnections createIdleConnections() {
+        return new IdleConnections(clock, idleTimeout, parks, reuses, replays, idleCloses);
+    }
+
+    /**
+     * @return how many connections were kept open instead of being closed on a switch
+     */
+    public long getParkCount() {
+        return parks.sum();
+    }
+
+    /**
+     * Each reuse saves acquiring, initializing and closing a connection.
+     *
+     * @return how many switches reused an idle connection
+     */
+    public long getReuseCount() {
+        return reuses.sum();
+    }
+
+    /**
+     * @return how many reuses had to replay connection parameters, which changed while the connection was idle
+     */
+    public long getReplayCount() {
+        return replays.sum();
+    }
+
+    /**
+     * @return how many idle connections were closed after the idle timeout
+     */
+    public long getIdleCloseCount() {
+        return idleCloses.sum();
+    }
+
+    public static class Builder {
+        private Clock clock = Clock.systemUTC();
+        private Duration idleTimeout = Duration.ofSeconds(30);
+
+        private Builder() {
+        }
+
+        /**
+         * @param idleTimeout how long an unused connection is kept open, 30 seconds by default
+         */
+        public WarmConnections.Builder idleTimeout(Duration idleTimeout) {
+            if (idleTimeout.isNegative()) {
+                throw new IllegalArgumentException("The idle timeout can't be negative, but was " + idleTimeout);
+            }
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        public WarmConnections.Builder measureTime(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public WarmConnections build() {
+            return new WarmConnections(clock, idleTimeout);
+        }
+    }
+}
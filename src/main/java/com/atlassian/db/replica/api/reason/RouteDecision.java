@@ -1,7 +1,11 @@
 package com.atlassian.db.replica.api.reason;
 
+import com.atlassian.db.replica.internal.SqlFingerprint;
+
 import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.function.LongSupplier;
 
 /**
  * Reveals details related to why, and which database will be used.
@@ -10,11 +14,21 @@ public final class RouteDecision {
     private final Reason reason;
     private final String sql;
     private final RouteDecision cause;
+    private final LongSupplier fingerprint;
 
     public RouteDecision(String sql, Reason reason, RouteDecision cause) {
+        this(sql, reason, cause, null);
+    }
+
+    /**
+     * @param fingerprint provides the {@link #getFingerprint()} of the {@code sql}, e.g. remembered by a prepared
+     *                    statement. If null, the fingerprint is computed on every call.
+     */
+    public RouteDecision(String sql, Reason reason, RouteDecision cause, LongSupplier fingerprint) {
         this.sql = sql;
         this.reason = reason;
         this.cause = cause;
+        this.fingerprint = fingerprint;
     }
 
     /**
@@ -31,6 +45,18 @@ public final class RouteDecision {
         return Optional.ofNullable(sql);
     }
 
+    /**
+     * @return A 64-bit fingerprint of the SQL shape, if there's any SQL. SQL differing only in literals, parameters,
+     * lengths of IN lists, whitespace, comments or letter case of unquoted words gets the same fingerprint,
+     * so it's a low-cardinality key for aggregating metrics per query.
+     */
+    public OptionalLong getFingerprint() {
+        if (sql == null) {
+            return OptionalLong.empty();
+        }
+        return OptionalLong.of(fingerprint != null ? fingerprint.getAsLong() : SqlFingerprint.of(sql));
+    }
+
     /**
      * @return The initial decision to change the state, if any.
      */
@@ -0,0 +1,140 @@
+package com.atlassian.db.replica.internal;
+
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Remembers routes of the recently classified SQL and evicts them with the CLOCK algorithm.
+ * <p>
+ * Hits are lock-free. A miss classifies the SQL without any lock and then tries to insert the route. Only one
+ * thread inserts at a time; the others don't wait and just return their route, which costs them another miss later.
+ */
+@ThreadSafe
+public final class CachingSqlClassifier implements SqlClassifier {
+    private final SqlClassifier delegate;
+    private final ConcurrentHashMap<String, Entry> entries;
+    private final Lock insertLock = new ReentrantLock();
+    private final String[] clock;
+    private int hand = 0;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+
+    /**
+     * @param delegate classifies the SQL on misses
+     * @param capacity the maximum number of remembered SQL statements
+     */
+    public CachingSqlClassifier(SqlClassifier delegate, int capacity) {
+        this(delegate, capacity, new LongAdder(), new LongAdder(), new LongAdder());
+    }
+
+    /**
+     * Counts into the given counters, so they can outlive the classifier.
+     */
+    public CachingSqlClassifier(
+        SqlClassifier delegate,
+        int capacity,
+        LongAdder hits,
+        LongAdder misses,
+        LongAdder evictions
+    ) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive, but was " + capacity);
+        }
+        this.delegate = delegate;
+        this.entries = new ConcurrentHashMap<>(capacity);
+        this.clock = new String[capacity];
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    @Override
+    public SqlRoute classify(String sql) {
+        final Entry entry = entries.get(sql);
+        if (entry != null) {
+            hits.increment();
+            if (!entry.referenced) {
+                entry.referenced = true;
+            }
+            return entry.route;
+        }
+        misses.increment();
+        final SqlRoute route = delegate.classify(sql);
+        if (insertLock.tryLock()) {
+            try {
+                insert(sql, route);
+            } finally {
+                insertLock.unlock();
+            }
+        }
+        return route;
+    }
+
+    /**
+     * Moves the hand past the referenced entries, giving each of them a second chance, and replaces the first
+     * entry that wasn't hit since the hand passed it last time.
+     */
+    private void insert(String sql, SqlRoute route) {
+        if (entries.containsKey(sql)) {
+            return;
+        }
+        while (clock[hand] != null) {
+            final Entry candidate = entries.get(clock[hand]);
+            if (!candidate.referenced) {
+                entries.remove(clock[hand]);
+                evictions.increment();
+                break;
+            }
+            candidate.referenced = false;
+            hand = (hand + 1) % clock.length;
+        }
+        clock[hand] = sql;
+        entries.put(sql, new Entry(route));
+        hand = (hand + 1) % clock.length;
+    }
+
+    /**
+     * Forgets all the routes, e.g. when they went stale.
+     */
+    public void clear() {
+        insertLock.lock();
+        try {
+            entries.clear();
+            Arrays.fill(clock, null);
+            hand = 0;
+        } finally {
+            insertLock.unlock();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static final class Entry {
+        private final SqlRoute route;
+        private volatile boolean referenced = false;
+
+        private Entry(SqlRoute route) {
+            this.route = route;
+        }
+    }
+}
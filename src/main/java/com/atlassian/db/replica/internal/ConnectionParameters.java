@@ -9,87 +9,151 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
 import java.util.function.Supplier;
 
 import static java.lang.String.format;
 
+/**
+ * Remembers the parameters set on {@link com.atlassian.db.replica.api.DualConnection}, so they can be replayed
+ * on the physical connections it opens. The current physical connection always has the current
+ * {@link ConnectionSettings} applied.
+ */
 public final class ConnectionParameters {
-    private Boolean isAutoCommit;
-    private Boolean readOnly;
-    private Integer transactionIsolation;
-    private String catalog;
-    private Map<String, Class<?>> typeMap;
-    private Integer holdability;
-    private String schema;
-    private ClientInfo clientInfo;
-    private NetworkTimeout networkTimeout;
-    private final List<String> runtimeParameterChanges = new CopyOnWriteArrayList<>();
+    private volatile ConnectionSettings settings = ConnectionSettings.EMPTY;
     private final LazyLogger logger;
 
     public ConnectionParameters(LazyLogger logger) {
         this.logger = logger;
     }
 
+    /**
+     * Replays the parameters on a new connection. Only auto-commit and read-only modes are compared with
+     * the connection, because drivers and pools keep them locally. The other parameters are sent, if they were set.
+     */
     public void initialize(Connection connection) throws SQLException {
+        initialize(connection, null);
+    }
+
+    /**
+     * Replays only the parameters, which differ from the ones already applied to the connection.
+     * Runtime parameters are sent in a single batch.
+     *
+     * @param applied the settings already applied to the connection, or null if they're unknown
+     */
+    public void initialize(Connection connection, ConnectionSettings applied) throws SQLException {
+        final ConnectionSettings settings = this.settings;
+        if (settings.equals(applied)) {
+            logger.debug(() -> format("Connection %s is already initialized", connection));
+            return;
+        }
         logger.debug(() -> format("Initializing connection %s", connection));
-        if (isAutoCommit != null) {
+        final Boolean isAutoCommit = settings.getAutoCommit();
+        if (isAutoCommit != null && !isAutoCommit.equals(
+            applied != null ? applied.getAutoCommit() : connection.getAutoCommit()
+        )) {
             logger.debug(() -> format("Initializing connection setAutoCommit(%s)", isAutoCommit));
             connection.setAutoCommit(isAutoCommit);
         }
-        if (transactionIsolation != null) {
+        final Integer transactionIsolation = settings.getTransactionIsolation();
+        if (differs(transactionIsolation, applied, ConnectionSettings::getTransactionIsolation)) {
             logger.debug(() -> format("Initializing connection setTransactionIsolation(%s)", transactionIsolation));
             connection.setTransactionIsolation(transactionIsolation);
         }
-        if (catalog != null) {
+        final String catalog = settings.getCatalog();
+        if (differs(catalog, applied, ConnectionSettings::getCatalog)) {
             logger.debug(() -> format("Initializing connection setCatalog(%s)", catalog));
             connection.setCatalog(catalog);
         }
-        if (typeMap != null) {
+        final Map<String, Class<?>> typeMap = settings.getTypeMap();
+        if (differs(typeMap, applied, ConnectionSettings::getTypeMap)) {
             logger.debug(() -> format("Initializing connection setTypeMap(%s)", typeMap));
             connection.setTypeMap(typeMap);
         }
-        if (holdability != null) {
+        final Integer holdability = settings.getHoldability();
+        if (differs(holdability, applied, ConnectionSettings::getHoldability)) {
             logger.debug(() -> format("Initializing connection setHoldability(%s)", holdability));
             connection.setHoldability(holdability);
         }
-        if (readOnly != null) {
+        final Boolean readOnly = settings.getReadOnly();
+        if (readOnly != null && !readOnly.equals(applied != null ? applied.getReadOnly() : connection.isReadOnly())) {
             logger.debug(() -> format("Initializing connection setReadOnly(%s)", readOnly));
             connection.setReadOnly(readOnly);
         }
-        if (schema != null) {
+        final String schema = settings.getSchema();
+        if (differs(schema, applied, ConnectionSettings::getSchema)) {
             logger.debug(() -> format("Initializing connection setSchema(%s)", schema));
             connection.setSchema(schema);
         }
-        if (clientInfo != null) {
+        final ClientInfo clientInfo = settings.getClientInfo();
+        if (differs(clientInfo, applied, ConnectionSettings::getClientInfo)) {
             logger.debug(() -> format("Initializing connection configure clientInfo(%s)", clientInfo));
             clientInfo.configure(connection);
         }
-        if (networkTimeout != null) {
+        final NetworkTimeout networkTimeout = settings.getNetworkTimeout();
+        if (differs(networkTimeout, applied, ConnectionSettings::getNetworkTimeout)) {
             logger.debug(() -> format("Initializing connection configure networkTimeout(%s)", networkTimeout));
             networkTimeout.configure(connection);
         }
-        initializeRuntimeParameters(connection);
+        initializeRuntimeParameters(
+            connection,
+            settings.getRuntimeParameters(),
+            applied != null ? applied.getRuntimeParameters() : Collections.emptyList()
+        );
+    }
+
+    private static <T> boolean differs(
+        T value,
+        ConnectionSettings applied,
+        Function<ConnectionSettings, T> parameter
+    ) {
+        return value != null && (applied == null || !Objects.equals(value, parameter.apply(applied)));
     }
 
-    private void initializeRuntimeParameters(Connection connection) throws SQLException {
+    /**
+     * Runtime parameters are only appended, so the connection misses the ones after the applied ones.
+     */
+    private void initializeRuntimeParameters(
+        Connection connection,
+        List<String> runtimeParameters,
+        List<String> appliedRuntimeParameters
+    ) throws SQLException {
         logger.debug(() -> format("Initializing runtimeParameters %s", connection));
-        if (runtimeParameterChanges.isEmpty()) {
+        final boolean appliedPrefix = appliedRuntimeParameters.size() <= runtimeParameters.size()
+            && runtimeParameters.subList(0, appliedRuntimeParameters.size()).equals(appliedRuntimeParameters);
+        final List<String> missing = appliedPrefix ?
+            runtimeParameters.subList(appliedRuntimeParameters.size(), runtimeParameters.size()) :
+            runtimeParameters;
+        if (missing.isEmpty()) {
             return;
         }
         try (Statement statement = connection.createStatement()) {
-            for (String parameterChange : runtimeParameterChanges) {
-                logger.debug(() -> format("Initializing runtimeParameter %s", parameterChange));
-                statement.execute(parameterChange);
+            if (missing.size() == 1) {
+                logger.debug(() -> format("Initializing runtimeParameter %s", missing.get(0)));
+                statement.execute(missing.get(0));
+            } else {
+                for (String parameterChange : missing) {
+                    logger.debug(() -> format("Initializing runtimeParameter %s", parameterChange));
+                    statement.addBatch(parameterChange);
+                }
+                statement.executeBatch();
             }
         }
     }
 
+    /**
+     * @return the settings applied to the current connection
+     */
+    public ConnectionSettings getSettings() {
+        return settings;
+    }
+
     public void addRuntimeParameterConfiguration(
         String parameterConfiguration
     ) {
-        runtimeParameterChanges.add(parameterConfiguration);
+        settings = settings.withRuntimeParameter(parameterConfiguration);
     }
 
     public void setTransactionIsolation(
@@ -100,11 +164,11 @@ public final class ConnectionParameters {
             logger.debug(() -> format("connection(%s)#setTransactionIsolation(%s)", connection, transactionIsolation));
             connection.setTransactionIsolation(transactionIsolation);
         });
-        this.transactionIsolation = transactionIsolation;
+        settings = settings.withTransactionIsolation(transactionIsolation);
     }
 
     public Integer getTransactionIsolation() {
-        return this.transactionIsolation;
+        return settings.getTransactionIsolation();
     }
 
     public void setAutoCommit(
@@ -115,23 +179,25 @@ public final class ConnectionParameters {
             logger.debug(() -> format("connection(%s)#setAutoCommit(%s)", connection, autoCommit));
             connection.setAutoCommit(autoCommit);
         });
-        this.isAutoCommit = autoCommit;
+        settings = settings.withAutoCommit(autoCommit);
     }
 
     public boolean isAutoCommit() {
+        final Boolean isAutoCommit = settings.getAutoCommit();
         return isAutoCommit == null || isAutoCommit;
     }
 
     public String getCatalog() {
-        return catalog;
+        return settings.getCatalog();
     }
 
     public void setCatalog(Supplier<Optional<Connection>> currentConnection, String catalog) throws SQLException {
         executeIfPresent(currentConnection, connection -> connection.setCatalog(catalog));
-        this.catalog = catalog;
+        settings = settings.withCatalog(catalog);
     }
 
     public Map<String, Class<?>> getTypeMap() {
+        final Map<String, Class<?>> typeMap = settings.getTypeMap();
         return typeMap == null ? Collections.emptyMap() : new HashMap<>(typeMap);
     }
 
@@ -140,11 +206,11 @@ public final class ConnectionParameters {
         Map<String, Class<?>> typeMap
     ) throws SQLException {
         executeIfPresent(currentConnection, connection -> connection.setTypeMap(typeMap));
-        this.typeMap = typeMap;
+        settings = settings.withTypeMap(typeMap);
     }
 
     public Integer getHoldability() {
-        return holdability;
+        return settings.getHoldability();
     }
 
     public void setHoldability(
@@ -152,10 +218,11 @@ public final class ConnectionParameters {
         Integer holdability
     ) throws SQLException {
         executeIfPresent(currentConnection, connection -> connection.setHoldability(holdability));
-        this.holdability = holdability;
+        settings = settings.withHoldability(holdability);
     }
 
     public boolean isReadOnly() {
+        final Boolean readOnly = settings.getReadOnly();
         return readOnly != null && readOnly;
     }
 
@@ -164,7 +231,7 @@ public final class ConnectionParameters {
             logger.debug(() -> format("connection(%s)#setReadOnly(%s)", connection, readOnly));
             connection.setReadOnly(readOnly);
         });
-        this.readOnly = readOnly;
+        settings = settings.withReadOnly(readOnly);
     }
 
     private void executeIfPresent(
@@ -178,12 +245,12 @@ public final class ConnectionParameters {
     }
 
     public String getSchema() {
-        return schema;
+        return settings.getSchema();
     }
 
     public void setSchema(Supplier<Optional<Connection>> currentConnection, String schema) throws SQLException {
         executeIfPresent(currentConnection, connection -> connection.setSchema(schema));
-        this.schema = schema;
+        settings = settings.withSchema(schema);
     }
 
     public void setClientInfo(
@@ -191,7 +258,7 @@ public final class ConnectionParameters {
         ClientInfo clientInfo
     ) throws SQLException {
         executeIfPresent(currentConnection, clientInfo::configure);
-        this.clientInfo = clientInfo;
+        settings = settings.withClientInfo(clientInfo);
     }
 
     public void setNetworkTimeout(
@@ -202,22 +269,17 @@ public final class ConnectionParameters {
             logger.debug(() -> format("connection(%s)#setNetworkTimeout(%s)", connection, networkTimeout));
             networkTimeout.configure(connection);
         });
-        this.networkTimeout = networkTimeout;
+        settings = settings.withNetworkTimeout(networkTimeout);
+    }
+
+    public NetworkTimeout getNetworkTimeout() {
+        return settings.getNetworkTimeout();
     }
 
     @Override
     public String toString() {
         return "ConnectionParameters{" +
-            "isAutoCommit=" + isAutoCommit +
-            ", readOnly=" + readOnly +
-            ", transactionIsolation=" + transactionIsolation +
-            ", catalog='" + catalog + '\'' +
-            ", typeMap=" + typeMap +
-            ", holdability=" + holdability +
-            ", schema='" + schema + '\'' +
-            ", clientInfo=" + clientInfo +
-            ", networkTimeout=" + networkTimeout +
-            ", runtimeParameterChanges=" + runtimeParameterChanges +
+            "settings=" + settings +
             '}';
     }
 }
@@ -0,0 +1,236 @@
+package com.atlassian.db.replica.internal;
+
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable snapshot of {@link ConnectionParameters}. A null value means the parameter was never set.
+ * <p>
+ * Snapshots are interned, so connections configured the same way share a snapshot and comparing them
+ * is usually a reference check. Only the settings taking a few distinct values across the process are interned.
+ */
+@ThreadSafe
+public final class ConnectionSettings {
+    private static final int INTERNED_CAPACITY = 1024;
+    private static final ConcurrentMap<ConnectionSettings, ConnectionSettings> INTERNED = new ConcurrentHashMap<>();
+    public static final ConnectionSettings EMPTY = intern(new ConnectionSettings(
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        null,
+        Collections.emptyList()
+    ));
+    private final Boolean autoCommit;
+    private final Boolean readOnly;
+    private final Integer transactionIsolation;
+    private final String catalog;
+    private final Map<String, Class<?>> typeMap;
+    private final Integer holdability;
+    private final String schema;
+    private final ClientInfo clientInfo;
+    private final NetworkTimeout networkTimeout;
+    private final List<String> runtimeParameters;
+    private final int hash;
+
+    private ConnectionSettings(
+        Boolean autoCommit,
+        Boolean readOnly,
+        Integer transactionIsolation,
+        String catalog,
+        Map<String, Class<?>> typeMap,
+        Integer holdability,
+        String schema,
+        ClientInfo clientInfo,
+        NetworkTimeout networkTimeout,
+        List<String> runtimeParameters
+    ) {
+        this.autoCommit = autoCommit;
+        this.readOnly = readOnly;
+        this.transactionIsolation = transactionIsolation;
+        this.catalog = catalog;
+        this.typeMap = typeMap;
+        this.holdability = holdability;
+        this.schema = schema;
+        this.clientInfo = clientInfo;
+        this.networkTimeout = networkTimeout;
+        this.runtimeParameters = runtimeParameters;
+        this.hash = Objects.hash(
+            autoCommit,
+            readOnly,
+            transactionIsolation,
+            catalog,
+            typeMap,
+            holdability,
+            schema,
+            clientInfo,
+            networkTimeout,
+            runtimeParameters
+        );
+    }
+
+    /**
+     * The interned settings are never evicted, so settings referring to application objects or varying per session
+     * aren't interned. Type maps refer to application classes and network timeouts to application executors,
+     * so they'd leak class loaders. Runtime parameters are often set per session, so they'd fill the capacity.
+     */
+    private static ConnectionSettings intern(ConnectionSettings settings) {
+        if (settings.typeMap != null || settings.networkTimeout != null || !settings.runtimeParameters.isEmpty()) {
+            return settings;
+        }
+        final ConnectionSettings interned = INTERNED.get(settings);
+        if (interned != null) {
+            return interned;
+        }
+        if (INTERNED.size() >= INTERNED_CAPACITY) {
+            return settings;
+        }
+        final ConnectionSettings previous = INTERNED.putIfAbsent(settings, settings);
+        return previous != null ? previous : settings;
+    }
+
+    ConnectionSettings withAutoCommit(Boolean autoCommit) {
+        return intern(new ConnectionSettings(autoCommit, readOnly, transactionIsolation, catalog, typeMap,
+            holdability, schema, clientInfo, networkTimeout, runtimeParameters));
+    }
+
+    ConnectionSettings withReadOnly(Boolean readOnly) {
+        return intern(new ConnectionSettings(autoCommit, readOnly, transactionIsolation, catalog, typeMap,
+            holdability, schema, clientInfo, networkTimeout, runtimeParameters));
+    }
+
+    ConnectionSettings withTransactionIsolation(Integer transactionIsolation) {
+        return intern(new ConnectionSettings(autoCommit, readOnly, transactionIsolation, catalog, typeMap,
+            holdability, schema, clientInfo, networkTimeout, runtimeParameters));
+    }
+
+    ConnectionSettings withCatalog(String catalog) {
+        return intern(new ConnectionSettings(autoCommit, readOnly, transactionIsolation, catalog, typeMap,
+            holdability, schema, clientInfo, networkTimeout, runtimeParameters));
+    }
+
+    ConnectionSettings withTypeMap(Map<String, Class<?>> typeMap) {
+        final Map<String, Class<?>> copy = typeMap != null ? Collections.unmodifiableMap(new HashMap<>(typeMap)) : null;
+        return intern(new ConnectionSettings(autoCommit, readOnly, transactionIsolation, catalog, copy,
+            holdability, schema, clientInfo, networkTimeout, runtimeParameters));
+    }
+
+    ConnectionSettings withHoldability(Integer holdability) {
+        return intern(new ConnectionSettings(autoCommit, readOnly, transactionIsolation, catalog, typeMap,
+            holdability, schema, clientInfo, networkTimeout, runtimeParameters));
+    }
+
+    ConnectionSettings withSchema(String schema) {
+        return intern(new ConnectionSettings(autoCommit, readOnly, transactionIsolation, catalog, typeMap,
+            holdability, schema, clientInfo, networkTimeout, runtimeParameters));
+    }
+
+    ConnectionSettings withClientInfo(ClientInfo clientInfo) {
+        return intern(new ConnectionSettings(autoCommit, readOnly, transactionIsolation, catalog, typeMap,
+            holdability, schema, clientInfo, networkTimeout, runtimeParameters));
+    }
+
+    ConnectionSettings withNetworkTimeout(NetworkTimeout networkTimeout) {
+        return intern(new ConnectionSettings(autoCommit, readOnly, transactionIsolation, catalog, typeMap,
+            holdability, schema, clientInfo, networkTimeout, runtimeParameters));
+    }
+
+    ConnectionSettings withRuntimeParameter(String runtimeParameter) {
+        final List<String> appended = new ArrayList<>(runtimeParameters.size() + 1);
+        appended.addAll(runtimeParameters);
+        appended.add(runtimeParameter);
+        return intern(new ConnectionSettings(autoCommit, readOnly, transactionIsolation, catalog, typeMap,
+            holdability, schema, clientInfo, networkTimeout, Collections.unmodifiableList(appended)));
+    }
+
+    Boolean getAutoCommit() {
+        return autoCommit;
+    }
+
+    Boolean getReadOnly() {
+        return readOnly;
+    }
+
+    Integer getTransactionIsolation() {
+        return transactionIsolation;
+    }
+
+    String getCatalog() {
+        return catalog;
+    }
+
+    Map<String, Class<?>> getTypeMap() {
+        return typeMap;
+    }
+
+    Integer getHoldability() {
+        return holdability;
+    }
+
+    String getSchema() {
+        return schema;
+    }
+
+    ClientInfo getClientInfo() {
+        return clientInfo;
+    }
+
+    NetworkTimeout getNetworkTimeout() {
+        return networkTimeout;
+    }
+
+    List<String> getRuntimeParameters() {
+        return runtimeParameters;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ConnectionSettings that = (ConnectionSettings) o;
+        return hash == that.hash &&
+            Objects.equals(autoCommit, that.autoCommit) &&
+            Objects.equals(readOnly, that.readOnly) &&
+            Objects.equals(transactionIsolation, that.transactionIsolation) &&
+            Objects.equals(catalog, that.catalog) &&
+            Objects.equals(typeMap, that.typeMap) &&
+            Objects.equals(holdability, that.holdability) &&
+            Objects.equals(schema, that.schema) &&
+            Objects.equals(clientInfo, that.clientInfo) &&
+            Objects.equals(networkTimeout, that.networkTimeout) &&
+            runtimeParameters.equals(that.runtimeParameters);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionSettings{" +
+            "autoCommit=" + autoCommit +
+            ", readOnly=" + readOnly +
+            ", transactionIsolation=" + transactionIsolation +
+            ", catalog='" + catalog + '\'' +
+            ", typeMap=" + typeMap +
+            ", holdability=" + holdability +
+            ", schema='" + schema + '\'' +
+            ", clientInfo=" + clientInfo +
+            ", networkTimeout=" + networkTimeout +
+            ", runtimeParameters=" + runtimeParameters +
+            '}';
+    }
+}
@@ -1,16 +1,24 @@
 package com.atlassian.db.replica.internal;
 
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 public abstract class DecisionAwareReference<T> extends LazyReference<T> {
     private final AtomicReference<RouteDecisionBuilder> firstCause = new AtomicReference<>();
+    private final AtomicInteger generation = new AtomicInteger();
 
     protected DecisionAwareReference() {
         super();
     }
 
+    protected DecisionAwareReference(boolean threadConfined) {
+        super(threadConfined);
+    }
+
     public T get(RouteDecisionBuilder currentCause) {
-        firstCause.compareAndSet(null, currentCause);
+        if (firstCause.get() == null) {
+            firstCause.compareAndSet(null, currentCause);
+        }
         return super.get();
     }
 
@@ -18,6 +26,14 @@ public abstract class DecisionAwareReference<T> extends LazyReference<T> {
     public void reset() {
         super.reset();
         firstCause.set(null);
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Counts the resets, so whoever derived something from the value can tell it was released since.
+     */
+    public int getGeneration() {
+        return generation.get();
     }
 
     public RouteDecisionBuilder getFirstCause() {
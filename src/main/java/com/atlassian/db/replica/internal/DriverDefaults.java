@@ -0,0 +1,106 @@
+package com.atlassian.db.replica.internal;
+
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+import com.atlassian.db.replica.spi.ConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * The parameters new connections and statements of a database start with. Each of them is learned once, from
+ * a connection borrowed just for it, so reading them doesn't switch {@link com.atlassian.db.replica.api.DualConnection}
+ * to main. The replica is preferred, because it's cheaper.
+ * <p>
+ * Share an instance through {@link com.atlassian.db.replica.api.ConnectionDefaults}. Otherwise, they're learned once
+ * per {@link ConnectionProvider} instance, see {@link #of(ConnectionProvider)}.
+ */
+@ThreadSafe
+public final class DriverDefaults {
+    private static final Map<ConnectionProvider, DriverDefaults> LEARNED = Collections.synchronizedMap(
+        new WeakHashMap<>()
+    );
+    private volatile Integer transactionIsolation;
+    private volatile Integer holdability;
+    private volatile Integer networkTimeout;
+    private volatile Integer maxFieldSize;
+    private volatile Integer maxRows;
+
+    public DriverDefaults() {
+    }
+
+    /**
+     * Keyed by the identity of the provider, so providers created per connection learn the defaults every time.
+     */
+    public static DriverDefaults of(ConnectionProvider connectionProvider) {
+        return LEARNED.computeIfAbsent(connectionProvider, provider -> new DriverDefaults());
+    }
+
+    public int getTransactionIsolation(ConnectionProvider connectionProvider) throws SQLException {
+        if (transactionIsolation == null) {
+            transactionIsolation = learn(connectionProvider, Connection::getTransactionIsolation);
+        }
+        return transactionIsolation;
+    }
+
+    public int getHoldability(ConnectionProvider connectionProvider) throws SQLException {
+        if (holdability == null) {
+            holdability = learn(connectionProvider, Connection::getHoldability);
+        }
+        return holdability;
+    }
+
+    public int getNetworkTimeout(ConnectionProvider connectionProvider) throws SQLException {
+        if (networkTimeout == null) {
+            networkTimeout = learn(connectionProvider, Connection::getNetworkTimeout);
+        }
+        return networkTimeout;
+    }
+
+    public int getMaxFieldSize(ConnectionProvider connectionProvider) throws SQLException {
+        if (maxFieldSize == null) {
+            maxFieldSize = learn(connectionProvider, connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    return statement.getMaxFieldSize();
+                }
+            });
+        }
+        return maxFieldSize;
+    }
+
+    public int getMaxRows(ConnectionProvider connectionProvider) throws SQLException {
+        if (maxRows == null) {
+            maxRows = learn(connectionProvider, connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    return statement.getMaxRows();
+                }
+            });
+        }
+        return maxRows;
+    }
+
+    /**
+     * Concurrent callers may learn the same parameter more than once. It's cheaper than making them wait.
+     */
+    private static int learn(
+        ConnectionProvider connectionProvider,
+        ConnectionFunction parameter
+    ) throws SQLException {
+        final Connection connection = connectionProvider.isReplicaAvailable() ?
+            connectionProvider.getReplicaConnection() :
+            connectionProvider.getMainConnection();
+        try {
+            return parameter.apply(connection);
+        } finally {
+            connection.close();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ConnectionFunction {
+        int apply(Connection connection) throws SQLException;
+    }
+}
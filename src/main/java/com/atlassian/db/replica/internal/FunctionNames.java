@@ -0,0 +1,99 @@
+package com.atlassian.db.replica.internal;
+
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * An open-addressing hash table of lower-cased function names. Looks names up directly in the SQL, folding
+ * the case of ASCII letters on the fly, so a lookup doesn't allocate.
+ */
+@ThreadSafe
+public final class FunctionNames {
+    public static final FunctionNames EMPTY = new FunctionNames(Collections.emptySet());
+    private final Set<String> functions;
+    private final char[][] names;
+    private final int[] hashes;
+    private final int mask;
+
+    public FunctionNames(Collection<String> functions) {
+        final int capacity = Integer.highestOneBit(Math.max(functions.size(), 1) * 4 - 1);
+        this.functions = Collections.unmodifiableSet(new LinkedHashSet<>(functions));
+        this.names = new char[capacity][];
+        this.hashes = new int[capacity];
+        this.mask = capacity - 1;
+        for (String function : functions) {
+            add(function);
+        }
+    }
+
+    private void add(String function) {
+        final int hash = hash(function, 0, function.length());
+        int slot = hash & mask;
+        while (names[slot] != null) {
+            if (hashes[slot] == hash && matches(names[slot], function, 0, function.length())) {
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        final char[] name = new char[function.length()];
+        for (int i = 0; i < name.length; i++) {
+            name[i] = fold(function.charAt(i));
+        }
+        names[slot] = name;
+        hashes[slot] = hash;
+    }
+
+    /**
+     * @param sql   holds the function name
+     * @param start index of the first character of the function name
+     * @param end   index after the last character of the function name
+     * @return true if the function name is in the table, regardless of its case
+     */
+    public boolean contains(String sql, int start, int end) {
+        if (functions.isEmpty()) {
+            return false;
+        }
+        final int hash = hash(sql, start, end);
+        for (int slot = hash & mask; names[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash && matches(names[slot], sql, start, end)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the names the table was built from
+     */
+    public Set<String> getFunctions() {
+        return functions;
+    }
+
+    private static int hash(String sql, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + fold(sql.charAt(i));
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(char[] name, String sql, int start, int end) {
+        if (name.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (name[i] != fold(sql.charAt(start + i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static char fold(char character) {
+        return character >= 'A' && character <= 'Z' ? (char) (character + ('a' - 'A')) : character;
+    }
+}
@@ -3,14 +3,35 @@ package com.atlassian.db.replica.internal;
 
 import com.atlassian.db.replica.internal.util.ThreadSafe;
 
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 
+import static java.lang.String.format;
+
+/**
+ * Thread-safe, unless it's thread-confined. {@link #create()} usually acquires a connection, so it runs under
+ * a {@link ReentrantLock} instead of a monitor, which would pin virtual threads to their carriers while they wait
+ * for the network.
+ */
 @ThreadSafe
 public abstract class LazyReference<T> implements Supplier<T> {
     private T reference;
-    private final Object lock = new Object();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final boolean threadConfined;
+    private final AtomicReference<Thread> user = new AtomicReference<>();
 
     protected LazyReference() {
+        this(false);
+    }
+
+    /**
+     * @param threadConfined skips the lock, because only one thread at a time uses the reference. Connection pools
+     *                       may hand the reference over to other threads, as long as they don't use it concurrently.
+     *                       It's asserted, when assertions are enabled.
+     */
+    protected LazyReference(boolean threadConfined) {
+        this.threadConfined = threadConfined;
     }
 
     protected abstract T create() throws Exception;
@@ -21,18 +42,55 @@ public abstract class LazyReference<T> implements Supplier<T> {
 
     @Override
     public T get() {
-        synchronized (lock) {
-            if (!isInitialized()) {
-                try {
-                    reference = create();
-                } catch (Exception e) {
-                    throw new RuntimeException(e);
-                }
+        if (threadConfined) {
+            assert enter() : format(
+                "The reference is confined to one thread at a time, but %s used it, while %s did",
+                Thread.currentThread(),
+                user.get()
+            );
+            try {
+                initialize();
+            } finally {
+                assert exit();
+            }
+        } else {
+            lock.lock();
+            try {
+                initialize();
+            } finally {
+                lock.unlock();
             }
         }
         return reference;
     }
 
+    private boolean enter() {
+        return user.compareAndSet(null, Thread.currentThread());
+    }
+
+    private boolean exit() {
+        user.set(null);
+        return true;
+    }
+
+    private void initialize() {
+        if (!isInitialized()) {
+            try {
+                reference = create();
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * @return the reference, or null if it's not initialized. It never creates the reference, so it's safe to call
+     * from any thread, even if the reference is thread-confined.
+     */
+    public T peek() {
+        return reference;
+    }
+
     public void reset() {
         reference = null;
     }
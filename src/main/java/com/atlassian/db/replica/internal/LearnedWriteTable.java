@@ -0,0 +1,89 @@
+package com.atlassian.db.replica.internal;
+
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers SQL, which the classifier sent to a replica, but the replica rejected as a write. It keeps
+ * the {@link SqlFingerprint} of the SQL, so SQL with inlined literals doesn't churn the table.
+ * <p>
+ * Lookups are lock-free. They remember their verdicts, so repeated SQL isn't fingerprinted again. Learning is rare,
+ * so it evicts the oldest SQL and forgets the verdicts under a lock.
+ */
+@ThreadSafe
+public final class LearnedWriteTable {
+    private static final int VERDICTS = 1024;
+    private final int capacity;
+    private final Set<Long> writes = ConcurrentHashMap.newKeySet();
+    private final Queue<Long> order = new ArrayDeque<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder learned = new LongAdder();
+    private final CachingSqlClassifier verdicts = new CachingSqlClassifier(this::judge, VERDICTS);
+
+    public LearnedWriteTable(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("The capacity must be positive, but was " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return true if SQL of the same shape was learned as a write
+     */
+    public boolean isWrite(String sql) {
+        if (writes.isEmpty()) {
+            return false;
+        }
+        if (verdicts.classify(sql) == SqlRoute.WRITE) {
+            hits.increment();
+            return true;
+        }
+        return false;
+    }
+
+    private SqlRoute judge(String sql) {
+        return writes.contains(SqlFingerprint.of(sql)) ? SqlRoute.WRITE : SqlRoute.READ;
+    }
+
+    /**
+     * Forgets the verdicts even if the shape is known already: a replica rejecting it means a verdict judged
+     * concurrently with the learning went stale.
+     *
+     * @param fingerprint the {@link SqlFingerprint} of the SQL
+     * @return true if SQL of the same shape wasn't known as a write before
+     */
+    public boolean learn(long fingerprint) {
+        synchronized (order) {
+            try {
+                if (!writes.add(fingerprint)) {
+                    return false;
+                }
+                order.add(fingerprint);
+                if (order.size() > capacity) {
+                    writes.remove(order.remove());
+                }
+            } finally {
+                verdicts.clear();
+            }
+        }
+        learned.increment();
+        return true;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getLearnCount() {
+        return learned.sum();
+    }
+
+    public int size() {
+        return writes.size();
+    }
+}
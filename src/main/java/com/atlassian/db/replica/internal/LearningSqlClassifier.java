@@ -0,0 +1,41 @@
+package com.atlassian.db.replica.internal;
+
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+
+import java.util.function.LongConsumer;
+
+/**
+ * Routes SQL, which replicas rejected before, to the main database.
+ */
+@ThreadSafe
+public final class LearningSqlClassifier implements SqlClassifier {
+    private final SqlClassifier delegate;
+    private final LearnedWriteTable learnedWrites;
+    private final LongConsumer onLearned;
+
+    /**
+     * @param onLearned called with the fingerprint of every newly learned SQL shape
+     */
+    public LearningSqlClassifier(SqlClassifier delegate, LearnedWriteTable learnedWrites, LongConsumer onLearned) {
+        this.delegate = delegate;
+        this.learnedWrites = learnedWrites;
+        this.onLearned = onLearned;
+    }
+
+    @Override
+    public SqlRoute classify(String sql) {
+        final SqlRoute route = delegate.classify(sql);
+        if ((route == SqlRoute.READ || route == SqlRoute.COMMAND) && learnedWrites.isWrite(sql)) {
+            return SqlRoute.WRITE;
+        }
+        return route;
+    }
+
+    @Override
+    public void learnWrite(String sql) {
+        final long fingerprint = SqlFingerprint.of(sql);
+        if (learnedWrites.learn(fingerprint)) {
+            onLearned.accept(fingerprint);
+        }
+    }
+}
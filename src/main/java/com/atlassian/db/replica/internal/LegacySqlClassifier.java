@@ -0,0 +1,27 @@
+package com.atlassian.db.replica.internal;
+
+/**
+ * Classifies SQL with the {@link SqlQuery} heuristics. Used in the compatibility mode.
+ */
+public final class LegacySqlClassifier implements SqlClassifier {
+    private final SqlFunction sqlFunction;
+
+    public LegacySqlClassifier(SqlFunction sqlFunction) {
+        this.sqlFunction = sqlFunction;
+    }
+
+    @Override
+    public SqlRoute classify(String sql) {
+        final SqlQuery sqlQuery = new SqlQuery(sql, true);
+        if (sqlQuery.isSqlSet()) {
+            return SqlRoute.SET;
+        }
+        if (sqlQuery.isWriteOperation(sqlFunction)) {
+            return SqlRoute.WRITE;
+        }
+        if (sqlQuery.isSelectForUpdate()) {
+            return SqlRoute.LOCK;
+        }
+        return sqlQuery.isSelect() ? SqlRoute.READ : SqlRoute.COMMAND;
+    }
+}
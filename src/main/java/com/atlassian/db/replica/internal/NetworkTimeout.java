@@ -18,6 +18,10 @@ public final class NetworkTimeout {
         connection.setNetworkTimeout(executor, milliseconds);
     }
 
+    public int getMilliseconds() {
+        return milliseconds;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
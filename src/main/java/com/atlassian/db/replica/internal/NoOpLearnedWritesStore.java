@@ -0,0 +1,18 @@
+package com.atlassian.db.replica.internal;
+
+import com.atlassian.db.replica.spi.LearnedWritesStore;
+
+import java.util.Collection;
+import java.util.Collections;
+
+public class NoOpLearnedWritesStore implements LearnedWritesStore {
+    @Override
+    public Collection<Long> load() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void save(long fingerprint) {
+        // do nothing
+    }
+}
@@ -25,7 +25,6 @@ import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.Calendar;
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 
 public class ReplicaCallableStatement extends ReplicaPreparedStatement implements CallableStatement {
@@ -42,9 +41,10 @@ public class ReplicaCallableStatement extends ReplicaPreparedStatement implement
         Integer resultSetType,
         Integer resultSetConcurrency,
         Integer resultSetHoldability,
-        Set<String> readOnlyFunctions,
+        SqlClassifier sqlClassifier,
+        SqlRoute route,
+        RoutingHint hint,
         DualConnection dualConnection,
-        boolean compatibleWithPreviousVersion,
         LazyLogger logger
     ) {
         super(
@@ -55,9 +55,10 @@ public class ReplicaCallableStatement extends ReplicaPreparedStatement implement
             resultSetType,
             resultSetConcurrency,
             resultSetHoldability,
-            readOnlyFunctions,
+            sqlClassifier,
+            route,
+            hint,
             dualConnection,
-            compatibleWithPreviousVersion,
             logger
         );
         this.sql = sql;
@@ -646,9 +647,8 @@ public class ReplicaCallableStatement extends ReplicaPreparedStatement implement
         private final ReplicaConsistency consistency;
         private final DatabaseCall databaseCall;
         private final String sql;
-        private final Set<String> readOnlyFunctions;
+        private final SqlClassifier sqlClassifier;
         private final DualConnection dualConnection;
-        private final boolean compatibleWithPreviousVersion;
         private Integer resultSetType;
         private Integer resultSetConcurrency;
         private Integer resultSetHoldability;
@@ -659,18 +659,16 @@ public class ReplicaCallableStatement extends ReplicaPreparedStatement implement
             ReplicaConsistency consistency,
             DatabaseCall databaseCall,
             String sql,
-            Set<String> readOnlyFunctions,
+            SqlClassifier sqlClassifier,
             DualConnection dualConnection,
-            boolean compatibleWithPreviousVersion,
             LazyLogger logger
         ) {
             this.connectionProvider = connectionProvider;
             this.consistency = consistency;
             this.databaseCall = databaseCall;
             this.sql = sql;
-            this.readOnlyFunctions = readOnlyFunctions;
+            this.sqlClassifier = sqlClassifier;
             this.dualConnection = dualConnection;
-            this.compatibleWithPreviousVersion = compatibleWithPreviousVersion;
             this.logger = logger;
         }
 
@@ -698,9 +696,10 @@ public class ReplicaCallableStatement extends ReplicaPreparedStatement implement
                 resultSetType,
                 resultSetConcurrency,
                 resultSetHoldability,
-                readOnlyFunctions,
+                sqlClassifier,
+                sql != null ? sqlClassifier.classify(sql) : null,
+                sql != null ? RoutingHint.parse(sql) : null,
                 dualConnection,
-                compatibleWithPreviousVersion,
                 logger.isEnabled() ?
                     new TaggedLogger("sql", sql,
                         new TaggedLogger(
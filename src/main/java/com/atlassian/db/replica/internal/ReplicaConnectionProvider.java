@@ -3,7 +3,10 @@ package com.atlassian.db.replica.internal;
 import com.atlassian.db.replica.api.reason.Reason;
 import com.atlassian.db.replica.api.reason.RouteDecision;
 import com.atlassian.db.replica.internal.logs.LazyLogger;
+import com.atlassian.db.replica.internal.state.ConnectionHedging;
+import com.atlassian.db.replica.internal.state.ConnectionRelease;
 import com.atlassian.db.replica.internal.state.ConnectionState;
+import com.atlassian.db.replica.internal.state.IdleConnections;
 import com.atlassian.db.replica.internal.state.State;
 import com.atlassian.db.replica.internal.state.StateListener;
 import com.atlassian.db.replica.spi.ConnectionProvider;
@@ -21,17 +24,45 @@ import static com.atlassian.db.replica.internal.state.State.CLOSED;
 import static com.atlassian.db.replica.internal.state.State.MAIN;
 
 public class ReplicaConnectionProvider implements AutoCloseable {
+    private final ConnectionProvider connectionProvider;
+    private final DriverDefaults driverDefaults;
     private final ReplicaConsistency consistency;
     private final ConnectionState state;
     private final ConnectionParameters parameters;
     private final Warnings warnings;
     private final LazyLogger logger;
+    private final boolean leaveMainAfterCommit;
+    private final boolean threadConfined;
 
     public ReplicaConnectionProvider(
         ConnectionProvider connectionProvider,
         ReplicaConsistency consistency,
         StateListener stateListener,
         LazyLogger logger
+    ) {
+        this(connectionProvider, consistency, stateListener, logger, false, null, null, null, false, null);
+    }
+
+    /**
+     * @param leaveMainAfterCommit lets reads return to a replica after a commit, see {@link #leaveMainIfClean()}
+     * @param idleConnections keeps the connection we switch away from, or null to close it
+     * @param hedging acquires main in parallel to slow consistency checks, or null to acquire it after them
+     * @param release closes connections off the caller thread, or null to close them on the caller thread
+     * @param threadConfined lets the connections and statements be used without locks, by one thread at a time
+     * @param driverDefaults shares the learned defaults between connections, or null to learn them per
+     *                       {@code connectionProvider}
+     */
+    public ReplicaConnectionProvider(
+        ConnectionProvider connectionProvider,
+        ReplicaConsistency consistency,
+        StateListener stateListener,
+        LazyLogger logger,
+        boolean leaveMainAfterCommit,
+        IdleConnections idleConnections,
+        ConnectionHedging hedging,
+        ConnectionRelease release,
+        boolean threadConfined,
+        DriverDefaults driverDefaults
     ) {
         this.parameters = new ConnectionParameters(logger);
         this.warnings = new Warnings();
@@ -41,10 +72,22 @@ public class ReplicaConnectionProvider implements AutoCloseable {
             parameters,
             warnings,
             stateListener,
-            logger
+            logger,
+            idleConnections,
+            hedging,
+            release,
+            threadConfined
         );
+        this.connectionProvider = connectionProvider;
+        this.driverDefaults = driverDefaults != null ? driverDefaults : DriverDefaults.of(connectionProvider);
         this.consistency = consistency;
         this.logger = logger;
+        this.leaveMainAfterCommit = leaveMainAfterCommit;
+        this.threadConfined = threadConfined;
+    }
+
+    public boolean isThreadConfined() {
+        return threadConfined;
     }
 
     public Connection getWriteConnection(RouteDecisionBuilder decisionBuilder) throws SQLException {
@@ -55,6 +98,14 @@ public class ReplicaConnectionProvider implements AutoCloseable {
         return state.getReadConnection(decisionBuilder);
     }
 
+    public int getWriteGeneration() {
+        return state.getWriteGeneration();
+    }
+
+    public int getReadGeneration() {
+        return state.getReadGeneration();
+    }
+
     public void addRuntimeParameterConfiguration(String parameterConfiguration) {
         parameters.addRuntimeParameterConfiguration(parameterConfiguration);
     }
@@ -63,11 +114,20 @@ public class ReplicaConnectionProvider implements AutoCloseable {
         parameters.setTransactionIsolation(state::getConnection, transactionIsolation);
     }
 
+    /**
+     * Metadata getters read the parameter set on the connection, the open connection or the driver default,
+     * so they don't switch the connection to main.
+     */
     public int getTransactionIsolation() throws SQLException {
-        if (parameters.getTransactionIsolation() != null) {
-            return parameters.getTransactionIsolation();
+        final Integer transactionIsolation = parameters.getTransactionIsolation();
+        if (transactionIsolation != null) {
+            return transactionIsolation;
+        }
+        final Optional<Connection> connection = state.getConnection();
+        if (connection.isPresent()) {
+            return connection.get().getTransactionIsolation();
         } else {
-            return state.getWriteConnection(new RouteDecisionBuilder(Reason.RW_API_CALL)).getTransactionIsolation();
+            return driverDefaults.getTransactionIsolation(connectionProvider);
         }
     }
 
@@ -78,6 +138,7 @@ public class ReplicaConnectionProvider implements AutoCloseable {
         }
         parameters.setAutoCommit(state::getConnection, autoCommit);
         if (autoCommitBefore != getAutoCommit()) {
+            state.endReadOnlyTransaction();
             recordCommit(autoCommitBefore);
         }
     }
@@ -94,6 +155,27 @@ public class ReplicaConnectionProvider implements AutoCloseable {
         parameters.setNetworkTimeout(state::getConnection, new NetworkTimeout(executor, milliseconds));
     }
 
+    public int getNetworkTimeout() throws SQLException {
+        final NetworkTimeout networkTimeout = parameters.getNetworkTimeout();
+        if (networkTimeout != null) {
+            return networkTimeout.getMilliseconds();
+        }
+        final Optional<Connection> connection = state.getConnection();
+        if (connection.isPresent()) {
+            return connection.get().getNetworkTimeout();
+        } else {
+            return driverDefaults.getNetworkTimeout(connectionProvider);
+        }
+    }
+
+    public int getDefaultMaxFieldSize() throws SQLException {
+        return driverDefaults.getMaxFieldSize(connectionProvider);
+    }
+
+    public int getDefaultMaxRows() throws SQLException {
+        return driverDefaults.getMaxRows(connectionProvider);
+    }
+
     public boolean getAutoCommit() {
         return parameters.isAutoCommit();
     }
@@ -108,6 +190,7 @@ public class ReplicaConnectionProvider implements AutoCloseable {
 
     public void setReadOnly(boolean readOnly) throws SQLException {
         parameters.setReadOnly(state::getConnection, readOnly);
+        state.endReadOnlyTransaction();
     }
 
     public String getCatalog() {
@@ -126,8 +209,17 @@ public class ReplicaConnectionProvider implements AutoCloseable {
         parameters.setTypeMap(state::getConnection, typeMap);
     }
 
-    public Integer getHoldability() throws SQLException {
-        return parameters.getHoldability() == null ? state.getWriteConnection(new RouteDecisionBuilder(Reason.RW_API_CALL)).getHoldability() : parameters.getHoldability();
+    public int getHoldability() throws SQLException {
+        final Integer holdability = parameters.getHoldability();
+        if (holdability != null) {
+            return holdability;
+        }
+        final Optional<Connection> connection = state.getConnection();
+        if (connection.isPresent()) {
+            return connection.get().getHoldability();
+        } else {
+            return driverDefaults.getHoldability(connectionProvider);
+        }
     }
 
     public void setHoldability(Integer holdability) throws SQLException {
@@ -178,6 +270,7 @@ public class ReplicaConnectionProvider implements AutoCloseable {
 
     public void rollback() throws SQLException {
         state.clearDirty();
+        state.endReadOnlyTransaction();
         final Optional<Connection> connection = state.getConnection();
         if (connection.isPresent()) {
             connection.get().rollback();
@@ -192,6 +285,7 @@ public class ReplicaConnectionProvider implements AutoCloseable {
             connection.get().commit();
             recordCommit(parameters.isAutoCommit());
         }
+        state.endReadOnlyTransaction();
     }
 
     private void recordCommit(boolean autoCommit) throws SQLException {
@@ -199,6 +293,17 @@ public class ReplicaConnectionProvider implements AutoCloseable {
             final Connection mainConnection = state.getWriteConnection(new RouteDecisionBuilder(Reason.RW_API_CALL));
             consistency.write(mainConnection);
             state.clearDirty();
+            leaveMainIfClean();
+        }
+    }
+
+    /**
+     * Lets reads return to a replica, once it's consistent, if the main connection has nothing left to finish:
+     * it's clean and in the auto-commit mode. Does nothing, unless the connection leaves main after commits.
+     */
+    public void leaveMainIfClean() {
+        if (leaveMainAfterCommit && parameters.isAutoCommit()) {
+            state.leaveMain();
         }
     }
 
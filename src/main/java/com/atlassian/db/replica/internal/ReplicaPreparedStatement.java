@@ -28,13 +28,15 @@ import java.sql.SQLXML;
 import java.sql.Time;
 import java.sql.Timestamp;
 import java.util.Calendar;
-import java.util.Set;
 import java.util.UUID;
 
 import static com.atlassian.db.replica.api.reason.Reason.RW_API_CALL;
 
 public class ReplicaPreparedStatement extends ReplicaStatement implements PreparedStatement {
     private final String sql;
+    private final SqlRoute route;
+    private final RoutingHint hint;
+    private final SqlFingerprint fingerprint;
     private final Integer resultSetType;
     private final Integer resultSetConcurrency;
     private final Integer resultSetHoldability;
@@ -54,9 +56,10 @@ public class ReplicaPreparedStatement extends ReplicaStatement implements Prepar
         Integer autoGeneratedKeys,
         String[] columnNames,
         int[] columnIndexes,
-        Set<String> readOnlyFunctions,
+        SqlClassifier sqlClassifier,
+        SqlRoute route,
+        RoutingHint hint,
         DualConnection dualConnection,
-        boolean compatibleWithPreviousVersion,
         LazyLogger logger
     ) {
         super(
@@ -66,12 +69,14 @@ public class ReplicaPreparedStatement extends ReplicaStatement implements Prepar
             resultSetType,
             resultSetConcurrency,
             resultSetHoldability,
-            readOnlyFunctions,
+            sqlClassifier,
             dualConnection,
-            compatibleWithPreviousVersion,
             logger
         );
         this.sql = sql;
+        this.route = route;
+        this.hint = hint;
+        this.fingerprint = sql != null ? new SqlFingerprint(sql) : null;
         this.resultSetType = resultSetType;
         this.resultSetConcurrency = resultSetConcurrency;
         this.resultSetHoldability = resultSetHoldability;
@@ -89,9 +94,10 @@ public class ReplicaPreparedStatement extends ReplicaStatement implements Prepar
         Integer resultSetType,
         Integer resultSetConcurrency,
         Integer resultSetHoldability,
-        Set<String> readOnlyFunctions,
+        SqlClassifier sqlClassifier,
+        SqlRoute route,
+        RoutingHint hint,
         DualConnection dualConnection,
-        boolean compatibleWithPreviousVersion,
         LazyLogger logger
     ) {
         super(
@@ -101,12 +107,14 @@ public class ReplicaPreparedStatement extends ReplicaStatement implements Prepar
             resultSetType,
             resultSetConcurrency,
             resultSetHoldability,
-            readOnlyFunctions,
+            sqlClassifier,
             dualConnection,
-            compatibleWithPreviousVersion,
             logger
         );
         this.sql = sql;
+        this.route = route;
+        this.hint = hint;
+        this.fingerprint = sql != null ? new SqlFingerprint(sql) : null;
         this.resultSetType = resultSetType;
         this.resultSetConcurrency = resultSetConcurrency;
         this.resultSetHoldability = resultSetHoldability;
@@ -119,16 +127,22 @@ public class ReplicaPreparedStatement extends ReplicaStatement implements Prepar
     @Override
     public ResultSet executeQuery() throws SQLException {
         checkClosed();
-        final RouteDecisionBuilder decisionBuilder = new RouteDecisionBuilder(Reason.READ_OPERATION).sql(sql);
-        final PreparedStatement statement = getReadStatement(decisionBuilder);
+        final RouteDecisionBuilder decisionBuilder = decision(Reason.READ_OPERATION).hint(hint);
+        final boolean replayable = !isReadStatementInitialized();
+        final PreparedStatement statement = getReadStatement(decisionBuilder, route);
         logger.info(() -> "executeQuery()");
-        return execute(statement::executeQuery, decisionBuilder.build());
+        return executeRead(
+            statement,
+            decisionBuilder,
+            replayable,
+            readStatement -> ((PreparedStatement) readStatement).executeQuery()
+        );
     }
 
     @Override
     public int executeUpdate() throws SQLException {
         checkClosed();
-        final RouteDecisionBuilder decisionBuilder = new RouteDecisionBuilder(RW_API_CALL).sql(this.sql);
+        final RouteDecisionBuilder decisionBuilder = decision(RW_API_CALL);
         final PreparedStatement statement = getWriteStatement(decisionBuilder);
         logger.info(() -> "executeUpdate()");
         return execute(statement::executeUpdate, decisionBuilder.build());
@@ -137,7 +151,7 @@ public class ReplicaPreparedStatement extends ReplicaStatement implements Prepar
     @Override
     public long executeLargeUpdate() throws SQLException {
         checkClosed();
-        final RouteDecisionBuilder decisionBuilder = new RouteDecisionBuilder(RW_API_CALL).sql(this.sql);
+        final RouteDecisionBuilder decisionBuilder = decision(RW_API_CALL);
         final PreparedStatement statement = getWriteStatement(decisionBuilder);
         logger.info(() -> "executeLargeUpdate()");
         return execute(statement::executeLargeUpdate, decisionBuilder.build());
@@ -307,7 +321,7 @@ public class ReplicaPreparedStatement extends ReplicaStatement implements Prepar
     @Override
     public boolean execute() throws SQLException {
         checkClosed();
-        final RouteDecisionBuilder decisionBuilder = new RouteDecisionBuilder(RW_API_CALL).sql(this.sql);
+        final RouteDecisionBuilder decisionBuilder = decision(RW_API_CALL);
         final PreparedStatement statement = getWriteStatement(decisionBuilder);
         logger.info(() -> "execute()");
         return execute(statement::execute, decisionBuilder.build());
@@ -587,6 +601,13 @@ public class ReplicaPreparedStatement extends ReplicaStatement implements Prepar
         );
     }
 
+    /**
+     * Starts a decision about the prepared SQL, which remembers its fingerprint.
+     */
+    private RouteDecisionBuilder decision(Reason reason) {
+        return new RouteDecisionBuilder(reason).sql(sql).fingerprint(fingerprint);
+    }
+
     @Override
     public PreparedStatement getWriteStatement(RouteDecisionBuilder decisionBuilder) throws SQLException {
         return (PreparedStatement) super.getWriteStatement(decisionBuilder);
@@ -597,6 +618,14 @@ public class ReplicaPreparedStatement extends ReplicaStatement implements Prepar
         return (PreparedStatement) super.getReadStatement(decisionBuilder);
     }
 
+    @Override
+    protected PreparedStatement getReadStatement(
+        RouteDecisionBuilder decisionBuilder,
+        SqlRoute route
+    ) throws SQLException {
+        return (PreparedStatement) super.getReadStatement(decisionBuilder, route);
+    }
+
     @Override
     public PreparedStatement getCurrentStatement() {
         return (PreparedStatement) super.getCurrentStatement();
@@ -623,9 +652,8 @@ public class ReplicaPreparedStatement extends ReplicaStatement implements Prepar
         private final ReplicaConsistency consistency;
         private final DatabaseCall databaseCall;
         private final String sql;
-        private final Set<String> readOnlyFunctions;
+        private final SqlClassifier sqlClassifier;
         private final DualConnection dualConnection;
-        private final boolean compatibleWithPreviousVersion;
         private Integer resultSetType;
         private Integer resultSetConcurrency;
         private Integer resultSetHoldability;
@@ -639,18 +667,16 @@ public class ReplicaPreparedStatement extends ReplicaStatement implements Prepar
             ReplicaConsistency consistency,
             DatabaseCall databaseCall,
             String sql,
-            Set<String> readOnlyFunctions,
+            SqlClassifier sqlClassifier,
             DualConnection dualConnection,
-            boolean compatibleWithPreviousVersion,
             LazyLogger logger
         ) {
             this.connectionProvider = connectionProvider;
             this.consistency = consistency;
             this.databaseCall = databaseCall;
             this.sql = sql;
-            this.readOnlyFunctions = readOnlyFunctions;
+            this.sqlClassifier = sqlClassifier;
             this.dualConnection = dualConnection;
-            this.compatibleWithPreviousVersion = compatibleWithPreviousVersion;
             this.logger = logger;
         }
 
@@ -684,6 +710,9 @@ public class ReplicaPreparedStatement extends ReplicaStatement implements Prepar
             return this;
         }
 
+        /**
+         * Classifies the SQL and parses its routing hint once. Every execution of the statement reuses them.
+         */
         public ReplicaPreparedStatement build() {
             return new ReplicaPreparedStatement(
                 connectionProvider,
@@ -696,9 +725,10 @@ public class ReplicaPreparedStatement extends ReplicaStatement implements Prepar
                 autoGeneratedKeys,
                 columnNames,
                 columnIndexes,
-                readOnlyFunctions,
+                sqlClassifier,
+                sql != null ? sqlClassifier.classify(sql) : null,
+                sql != null ? RoutingHint.parse(sql) : null,
                 dualConnection,
-                compatibleWithPreviousVersion,
                 logger.isEnabled() ?
                     new TaggedLogger("sql", sql,
                         new TaggedLogger(
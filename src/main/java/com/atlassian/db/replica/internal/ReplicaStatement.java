@@ -17,35 +17,51 @@ import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Set;
 import java.util.UUID;
+import java.util.function.Supplier;
 
 import static com.atlassian.db.replica.api.reason.Reason.LOCK;
 import static com.atlassian.db.replica.api.reason.Reason.MAIN_CONNECTION_REUSE;
+import static com.atlassian.db.replica.api.reason.Reason.MAIN_HINT;
 import static com.atlassian.db.replica.api.reason.Reason.READ_OPERATION;
+import static com.atlassian.db.replica.api.reason.Reason.REPLICA_HINT;
 import static com.atlassian.db.replica.api.reason.Reason.RO_API_CALL;
 import static com.atlassian.db.replica.api.reason.Reason.RW_API_CALL;
 import static com.atlassian.db.replica.api.reason.Reason.WRITE_OPERATION;
+import static com.atlassian.db.replica.api.reason.Reason.WRITE_REJECTED_BY_REPLICA;
 import static com.atlassian.db.replica.internal.state.State.MAIN;
+import static com.atlassian.db.replica.internal.state.State.REPLICA;
 import static java.lang.String.format;
 
 public class ReplicaStatement implements Statement {
+    private static final String READ_ONLY_SQL_TRANSACTION = "25006";
     private final ReplicaConnectionProvider connectionProvider;
     private final Integer resultSetType;
     private final Integer resultSetConcurrency;
     private final Integer resultSetHoldability;
     private Statement currentStatement;
+    private Integer maxFieldSize;
+    private Integer maxRows;
     private volatile boolean isClosed = false;
     @SuppressWarnings("rawtypes")
-    private final List<StatementOperation> operations = new ArrayList<>();
+    private List<StatementOperation> operations = new ArrayList<>();
+    /**
+     * The operations performed last time, in case they need to be replayed on another statement.
+     */
+    @SuppressWarnings("rawtypes")
+    private List<StatementOperation> performedOperations = new ArrayList<>();
     private final List<StatementOperation<Statement>> batches = new ArrayList<>();
     private final ReplicaConsistency consistency;
     private final DatabaseCall databaseCall;
-    private final SqlFunction sqlFunction;
+    private final SqlClassifier sqlClassifier;
     private final DecisionAwareReference<Statement> readStatement;
     private final DecisionAwareReference<Statement> writeStatement;
+    /**
+     * The generations of the connections the statements were created on, see {@link #discardStaleStatements()}.
+     */
+    private int readStatementGeneration;
+    private int writeStatementGeneration;
     private final DualConnection dualConnection;
-    private final boolean compatibleWithPreviousVersion;
     private final LazyLogger logger;
 
     public ReplicaStatement(
@@ -55,9 +71,8 @@ public class ReplicaStatement implements Statement {
         Integer resultSetType,
         Integer resultSetConcurrency,
         Integer resultSetHoldability,
-        Set<String> readOnlyFunctions,
+        SqlClassifier sqlClassifier,
         DualConnection dualConnection,
-        boolean compatibleWithPreviousVersion,
         LazyLogger logger
     ) {
         this.consistency = consistency;
@@ -66,21 +81,24 @@ public class ReplicaStatement implements Statement {
         this.resultSetType = resultSetType;
         this.resultSetConcurrency = resultSetConcurrency;
         this.resultSetHoldability = resultSetHoldability;
-        this.sqlFunction = new SqlFunction(readOnlyFunctions);
-        readStatement = new DecisionAwareReference<Statement>() {
+        this.sqlClassifier = sqlClassifier;
+        readStatement = new DecisionAwareReference<Statement>(connectionProvider.isThreadConfined()) {
             @Override
             public Statement create() throws Exception {
-                return createStatement(connectionProvider.getReadConnection(getFirstCause()));
+                final Connection connection = connectionProvider.getReadConnection(getFirstCause());
+                readStatementGeneration = connectionProvider.getReadGeneration();
+                return createStatement(connection);
             }
         };
-        writeStatement = new DecisionAwareReference<Statement>() {
+        writeStatement = new DecisionAwareReference<Statement>(connectionProvider.isThreadConfined()) {
             @Override
             public Statement create() throws Exception {
-                return createStatement(connectionProvider.getWriteConnection(getFirstCause()));
+                final Connection connection = connectionProvider.getWriteConnection(getFirstCause());
+                writeStatementGeneration = connectionProvider.getWriteGeneration();
+                return createStatement(connection);
             }
         };
         this.dualConnection = dualConnection;
-        this.compatibleWithPreviousVersion = compatibleWithPreviousVersion;
         this.logger = logger;
     }
 
@@ -90,7 +108,7 @@ public class ReplicaStatement implements Statement {
         final RouteDecisionBuilder decisionBuilder = new RouteDecisionBuilder(READ_OPERATION).sql(sql);
         final Statement statement = getReadStatement(decisionBuilder);
         logger.info(() -> format("executeQuery(sql='%s')", sql));
-        return execute(() -> statement.executeQuery(sql), decisionBuilder.build());
+        return executeRead(statement, decisionBuilder, true, readStatement -> readStatement.executeQuery(sql));
     }
 
     @Override
@@ -124,7 +142,13 @@ public class ReplicaStatement implements Statement {
     @Override
     public int getMaxFieldSize() throws SQLException {
         checkClosed();
-        return getWriteStatement(new RouteDecisionBuilder(RW_API_CALL)).getMaxFieldSize();
+        if (maxFieldSize != null) {
+            return maxFieldSize;
+        } else if (getCurrentStatement() != null) {
+            return getCurrentStatement().getMaxFieldSize();
+        } else {
+            return connectionProvider.getDefaultMaxFieldSize();
+        }
     }
 
     @Override
@@ -133,12 +157,19 @@ public class ReplicaStatement implements Statement {
         addOperation(
             (StatementOperation<Statement>) statement -> statement.setMaxFieldSize(max)
         );
+        maxFieldSize = max;
     }
 
     @Override
     public int getMaxRows() throws SQLException {
         checkClosed();
-        return getWriteStatement(new RouteDecisionBuilder(RW_API_CALL)).getMaxRows();
+        if (maxRows != null) {
+            return maxRows;
+        } else if (getCurrentStatement() != null) {
+            return getCurrentStatement().getMaxRows();
+        } else {
+            return connectionProvider.getDefaultMaxRows();
+        }
     }
 
     @Override
@@ -147,6 +178,7 @@ public class ReplicaStatement implements Statement {
         addOperation(
             (StatementOperation<Statement>) statement -> statement.setMaxRows(max)
         );
+        maxRows = max;
     }
 
     @Override
@@ -204,21 +236,10 @@ public class ReplicaStatement implements Statement {
     @Override
     public boolean execute(String sql) throws SQLException {
         checkClosed();
-        final RouteDecisionBuilder decisionBuilder;
-        final Statement statement;
-        SqlQuery sqlQuery = new SqlQuery(sql, compatibleWithPreviousVersion);
-        if (sqlQuery.isSqlSet()) {
-            decisionBuilder = new RouteDecisionBuilder(READ_OPERATION).sql(sql);
-            statement = getReadStatement(decisionBuilder);
-            connectionProvider.addRuntimeParameterConfiguration(sql);
-        } else {
-            decisionBuilder = new RouteDecisionBuilder(RW_API_CALL).sql(sql);
-            statement = getWriteStatement(decisionBuilder);
-        }
-        logger.info(() -> format("execute(sql='%s')", sql));
-        return execute(
-            () -> statement.execute(sql),
-            decisionBuilder.build()
+        return executeClassified(
+            sql,
+            statement -> statement.execute(sql),
+            () -> format("execute(sql='%s')", sql)
         );
     }
 
@@ -374,36 +395,30 @@ public class ReplicaStatement implements Statement {
     @Override
     public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
         checkClosed();
-        final RouteDecisionBuilder decisionBuilder = new RouteDecisionBuilder(RW_API_CALL).sql(sql);
-        final Statement statement = getWriteStatement(decisionBuilder);
-        logger.info(() -> format("execute(sql='%s', autoGeneratedKeys)", sql));
-        return execute(
-            () -> statement.execute(sql, autoGeneratedKeys),
-            decisionBuilder.build()
+        return executeClassified(
+            sql,
+            statement -> statement.execute(sql, autoGeneratedKeys),
+            () -> format("execute(sql='%s', autoGeneratedKeys)", sql)
         );
     }
 
     @Override
     public boolean execute(String sql, int[] columnIndexes) throws SQLException {
         checkClosed();
-        final RouteDecisionBuilder decisionBuilder = new RouteDecisionBuilder(RW_API_CALL).sql(sql);
-        final Statement state = getWriteStatement(decisionBuilder);
-        logger.info(() -> format("execute(sql='%s', columnIndexes)", sql));
-        return execute(
-            () -> state.execute(sql, columnIndexes),
-            decisionBuilder.build()
+        return executeClassified(
+            sql,
+            statement -> statement.execute(sql, columnIndexes),
+            () -> format("execute(sql='%s', columnIndexes)", sql)
         );
     }
 
     @Override
     public boolean execute(String sql, String[] columnNames) throws SQLException {
         checkClosed();
-        final RouteDecisionBuilder decisionBuilder = new RouteDecisionBuilder(RW_API_CALL).sql(sql);
-        final Statement statement = getWriteStatement(decisionBuilder);
-        logger.info(() -> format("execute(sql='%s', columnNames)", sql));
-        return execute(
-            () -> statement.execute(sql, columnNames),
-            decisionBuilder.build()
+        return executeClassified(
+            sql,
+            statement -> statement.execute(sql, columnNames),
+            () -> format("execute(sql='%s', columnNames)", sql)
         );
     }
 
@@ -482,6 +497,7 @@ public class ReplicaStatement implements Statement {
         addOperation(
             (StatementOperation<Statement>) statement -> statement.setLargeMaxRows(max)
         );
+        maxRows = (int) Math.min(max, Integer.MAX_VALUE);
     }
 
     @Override
@@ -558,13 +574,79 @@ public class ReplicaStatement implements Statement {
         return result;
     }
 
+    /**
+     * Executes SQL of an unknown kind. Queries and runtime parameter changes go where {@link #executeQuery(String)}
+     * would run them. Everything else runs on main.
+     */
+    private boolean executeClassified(
+        String sql,
+        StatementCall<Boolean> call,
+        Supplier<String> message
+    ) throws SQLException {
+        final SqlRoute route = sqlClassifier.classify(sql);
+        if (route == SqlRoute.READ || route == SqlRoute.SET) {
+            final RouteDecisionBuilder decisionBuilder = new RouteDecisionBuilder(READ_OPERATION)
+                .sql(sql)
+                .hint(RoutingHint.parse(sql));
+            final Statement statement = getReadStatement(decisionBuilder, route);
+            if (route == SqlRoute.SET) {
+                connectionProvider.addRuntimeParameterConfiguration(sql);
+            }
+            logger.info(message);
+            return executeRead(statement, decisionBuilder, true, call);
+        }
+        final RouteDecisionBuilder decisionBuilder = new RouteDecisionBuilder(RW_API_CALL).sql(sql);
+        final Statement statement = getWriteStatement(decisionBuilder);
+        logger.info(message);
+        return execute(() -> call.call(statement), decisionBuilder.build());
+    }
+
+    /**
+     * Executes a read. If the replica rejects it as a write, the classifier learns the SQL and the read runs on
+     * the main database.
+     *
+     * @param replayable true if the operations performed on the read statement for this read are all its
+     *                   operations, so they can be replayed on the write statement
+     */
+    <T> T executeRead(
+        Statement statement,
+        RouteDecisionBuilder decisionBuilder,
+        boolean replayable,
+        StatementCall<T> call
+    ) throws SQLException {
+        final boolean onReplica = connectionProvider.getState().equals(REPLICA);
+        try {
+            return execute(() -> call.call(statement), decisionBuilder.build());
+        } catch (SQLException exception) {
+            final String sql = decisionBuilder.getSql();
+            if (!onReplica || sql == null || !READ_ONLY_SQL_TRANSACTION.equals(exception.getSQLState())) {
+                throw exception;
+            }
+            sqlClassifier.learnWrite(sql);
+            if (!replayable || connectionProvider.getReadOnly()) {
+                throw exception;
+            }
+            logger.info(() -> "The replica rejected the read as a write. Retrying on main.");
+            final RouteDecisionBuilder retryDecisionBuilder = new RouteDecisionBuilder(WRITE_REJECTED_BY_REPLICA)
+                .sql(sql)
+                .cause(decisionBuilder.build());
+            operations.addAll(0, performedOperations);
+            final Statement writeStatement = getWriteStatement(retryDecisionBuilder);
+            return execute(() -> call.call(writeStatement), retryDecisionBuilder.build());
+        }
+    }
+
     public void performOperations() throws SQLException {
         //noinspection rawtypes
         for (StatementOperation operation : operations) {
             //noinspection unchecked
             operation.accept(getCurrentStatement());
         }
+        //noinspection rawtypes
+        final List<StatementOperation> performed = operations;
+        operations = performedOperations;
         operations.clear();
+        performedOperations = performed;
     }
 
     protected Statement getCurrentStatement() {
@@ -583,22 +665,24 @@ public class ReplicaStatement implements Statement {
         operations.clear();
     }
 
+    protected boolean isReadStatementInitialized() {
+        return readStatement.isInitialized();
+    }
+
     public static Builder builder(
         ReplicaConnectionProvider connectionProvider,
         ReplicaConsistency consistency,
         DatabaseCall databaseCall,
-        Set<String> readOnlyFunctions,
+        SqlClassifier sqlClassifier,
         DualConnection dualConnection,
-        boolean compatibleWithPreviousVersion,
         LazyLogger logger
     ) {
         return new Builder(
             connectionProvider,
             consistency,
             databaseCall,
-            readOnlyFunctions,
+            sqlClassifier,
             dualConnection,
-            compatibleWithPreviousVersion,
             logger
         );
     }
@@ -607,31 +691,52 @@ public class ReplicaStatement implements Statement {
         final Connection connection = currentStatement.getConnection();
         if (connection.getAutoCommit()) {
             consistency.write(connection);
+            connectionProvider.leaveMainIfClean();
         } else {
             connectionProvider.markConnectionDirty();
         }
     }
 
     public Statement getReadStatement(RouteDecisionBuilder decisionBuilder) throws SQLException {
+        final String sql = decisionBuilder.getSql();
+        if (sql == null) {
+            return getReadStatement(decisionBuilder, null);
+        }
+        decisionBuilder.hint(RoutingHint.parse(sql));
+        return getReadStatement(decisionBuilder, sqlClassifier.classify(sql));
+    }
+
+    /**
+     * A {@link RoutingHint} of the decision overrides the route of reads, unless the connection already uses the main
+     * database. Writes and locks stay on the main database despite a replica hint.
+     *
+     * @param route the classified SQL of the decision, or null if there's no SQL
+     */
+    protected Statement getReadStatement(RouteDecisionBuilder decisionBuilder, SqlRoute route) throws SQLException {
+        discardStaleStatements();
         if (connectionProvider.getState().equals(MAIN)) {
             decisionBuilder.reason(MAIN_CONNECTION_REUSE);
             connectionProvider.getStateDecision().ifPresent(decisionBuilder::cause);
             logger.debug(() -> "Main connection reuse");
             return prepareWriteStatement(decisionBuilder);
         }
-        String sql = decisionBuilder.getSql();
-        if (sql != null) {
-            SqlQuery sqlQuery = new SqlQuery(sql, compatibleWithPreviousVersion);
-            if (sqlQuery.isWriteOperation(sqlFunction)) {
-                decisionBuilder.reason(WRITE_OPERATION);
-                logger.debug(() -> "write operation");
-                return prepareWriteStatement(decisionBuilder);
-            }
-            if (sqlQuery.isSelectForUpdate()) {
-                decisionBuilder.reason(LOCK);
-                logger.debug(() -> "lock");
-                return prepareWriteStatement(decisionBuilder);
-            }
+        final RoutingHint hint = decisionBuilder.getHint();
+        if (hint != null && hint.isMain()) {
+            decisionBuilder.reason(MAIN_HINT);
+            logger.debug(() -> "main hint");
+            return prepareWriteStatement(decisionBuilder);
+        }
+        if (route == SqlRoute.WRITE) {
+            decisionBuilder.reason(WRITE_OPERATION);
+            logger.debug(() -> "write operation");
+            return prepareWriteStatement(decisionBuilder);
+        } else if (route == SqlRoute.LOCK) {
+            decisionBuilder.reason(LOCK);
+            logger.debug(() -> "lock");
+            return prepareWriteStatement(decisionBuilder);
+        } else if (hint != null && hint.isReplica()) {
+            decisionBuilder.reason(REPLICA_HINT);
+            logger.debug(() -> "replica hint");
         }
         setCurrentStatement(getCurrentStatement() != null ? getCurrentStatement() : readStatement.get(decisionBuilder));
         performOperations();
@@ -643,11 +748,47 @@ public class ReplicaStatement implements Statement {
     }
 
     private Statement prepareWriteStatement(RouteDecisionBuilder decisionBuilder) throws SQLException {
+        discardStaleStatements();
         setCurrentStatement(writeStatement.get(decisionBuilder));
         performOperations();
         return getCurrentStatement();
     }
 
+    /**
+     * The connection may switch databases between executions, e.g. a read on another statement leaves main after
+     * an auto-commit write. It closes or parks the connection this statement was created on, so we create a new one
+     * and replay the settings on it.
+     */
+    private void discardStaleStatements() {
+        final boolean staleRead = readStatement.isInitialized()
+            && readStatementGeneration != connectionProvider.getReadGeneration();
+        final boolean staleWrite = writeStatement.isInitialized()
+            && writeStatementGeneration != connectionProvider.getWriteGeneration();
+        if (staleRead) {
+            discardStatement(readStatement, new RouteDecisionBuilder(RO_API_CALL));
+        }
+        if (staleWrite) {
+            discardStatement(writeStatement, new RouteDecisionBuilder(RW_API_CALL));
+        }
+        if (staleRead || staleWrite) {
+            operations.addAll(0, performedOperations);
+            performedOperations.clear();
+        }
+    }
+
+    private void discardStatement(DecisionAwareReference<Statement> reference, RouteDecisionBuilder decisionBuilder) {
+        final Statement statement = reference.get(decisionBuilder);
+        reference.reset();
+        if (currentStatement == statement) {
+            currentStatement = null;
+        }
+        try {
+            statement.close();
+        } catch (Exception e) {
+            // Ignore. The connection is already gone
+        }
+    }
+
     protected Statement createStatement(Connection connection) throws SQLException {
         if (resultSetType == null) {
             return connection.createStatement();
@@ -669,13 +810,17 @@ public class ReplicaStatement implements Statement {
         return statements;
     }
 
+    @FunctionalInterface
+    protected interface StatementCall<T> {
+        T call(Statement statement) throws SQLException;
+    }
+
     public static class Builder {
         private final ReplicaConnectionProvider connectionProvider;
         private final ReplicaConsistency consistency;
         private final DatabaseCall databaseCall;
-        private final Set<String> readOnlyFunctions;
+        private final SqlClassifier sqlClassifier;
         private final DualConnection dualConnection;
-        private final boolean compatibleWithPreviousVersion;
         private Integer resultSetType;
         private Integer resultSetConcurrency;
         private Integer resultSetHoldability;
@@ -685,17 +830,15 @@ public class ReplicaStatement implements Statement {
             ReplicaConnectionProvider connectionProvider,
             ReplicaConsistency consistency,
             DatabaseCall databaseCall,
-            Set<String> readOnlyFunctions,
+            SqlClassifier sqlClassifier,
             DualConnection dualConnection,
-            boolean compatibleWithPreviousVersion,
             LazyLogger logger
         ) {
             this.connectionProvider = connectionProvider;
             this.consistency = consistency;
             this.databaseCall = databaseCall;
-            this.readOnlyFunctions = readOnlyFunctions;
+            this.sqlClassifier = sqlClassifier;
             this.dualConnection = dualConnection;
-            this.compatibleWithPreviousVersion = compatibleWithPreviousVersion;
             this.logger = logger;
         }
 
@@ -722,9 +865,8 @@ public class ReplicaStatement implements Statement {
                 resultSetType,
                 resultSetConcurrency,
                 resultSetHoldability,
-                readOnlyFunctions,
+                sqlClassifier,
                 dualConnection,
-                compatibleWithPreviousVersion,
                 logger.isEnabled() ?
                     new TaggedLogger("ReplicaStatement", UUID.randomUUID().toString(), logger) :
                     logger
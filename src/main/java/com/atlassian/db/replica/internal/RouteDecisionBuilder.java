@@ -9,6 +9,8 @@ public final class RouteDecisionBuilder {
     private String sql = null;
     private Reason reason;
     private RouteDecision cause = null;
+    private RoutingHint hint = null;
+    private SqlFingerprint fingerprint = null;
 
     public RouteDecisionBuilder(Reason reason) {
         this.reason = reason;
@@ -29,12 +31,32 @@ public final class RouteDecisionBuilder {
         return this;
     }
 
+    public RouteDecisionBuilder hint(final RoutingHint hint) {
+        this.hint = hint;
+        return this;
+    }
+
+    /**
+     * @param fingerprint remembers the fingerprint of the SQL
+     */
+    public RouteDecisionBuilder fingerprint(final SqlFingerprint fingerprint) {
+        this.fingerprint = fingerprint;
+        return this;
+    }
+
     public String getSql() {
         return sql;
     }
 
+    /**
+     * @return the routing hint of the SQL, if any
+     */
+    public RoutingHint getHint() {
+        return hint;
+    }
+
     public RouteDecision build() {
-        return new RouteDecision(sql, reason, cause);
+        return new RouteDecision(sql, reason, cause, fingerprint);
     }
 
     @Override
@@ -44,12 +66,13 @@ public final class RouteDecisionBuilder {
         RouteDecisionBuilder that = (RouteDecisionBuilder) o;
         return Objects.equals(sql, that.sql)
             && Objects.equals(reason, that.reason)
-            && Objects.equals(cause, that.cause);
+            && Objects.equals(cause, that.cause)
+            && Objects.equals(hint, that.hint);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(sql, reason, cause);
+        return Objects.hash(sql, reason, cause, hint);
     }
 
     @Override
@@ -58,6 +81,7 @@ public final class RouteDecisionBuilder {
             "sql='" + sql + '\'' +
             ", reason=" + reason +
             ", cause=" + cause +
+            ", hint=" + hint +
             '}';
     }
 }
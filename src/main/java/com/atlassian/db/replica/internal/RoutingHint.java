@@ -0,0 +1,131 @@
+package com.atlassian.db.replica.internal;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Overrides the route of a read. It's a comment at the start of the SQL:
+ * <ul>
+ *     <li>{@code /*+ db-replica:replica *}{@code /} runs the read on a replica, even if the replica is not
+ *     consistent</li>
+ *     <li>{@code /*+ db-replica:main *}{@code /} runs the read on the main database</li>
+ *     <li>{@code /*+ db-replica:max-staleness=500ms *}{@code /} runs the read on a replica, which lags behind
+ *     the main database by at most the given time. The time is in {@code ms} or {@code s}.</li>
+ * </ul>
+ * Writes and locks, e.g. {@code SELECT ... FOR UPDATE}, ignore the hints and run on the main database.
+ * Parsing SQL without the comment only looks at its leading whitespace and first character. Unknown hints are
+ * ignored.
+ */
+public final class RoutingHint {
+    public static final RoutingHint MAIN = new RoutingHint(true, null);
+    public static final RoutingHint REPLICA = new RoutingHint(false, null);
+    private static final String PREFIX = "/*+";
+    private static final String NAMESPACE = "db-replica:";
+    private static final String MAX_STALENESS = "max-staleness=";
+    private final boolean main;
+    private final Duration maxStaleness;
+
+    private RoutingHint(boolean main, Duration maxStaleness) {
+        this.main = main;
+        this.maxStaleness = maxStaleness;
+    }
+
+    /**
+     * @return the hint at the start of the SQL, or null if there's none
+     */
+    public static RoutingHint parse(String sql) {
+        int position = skipWhitespace(sql, 0);
+        if (position == sql.length() || sql.charAt(position) != '/' || !sql.startsWith(PREFIX, position)) {
+            return null;
+        }
+        position = skipWhitespace(sql, position + PREFIX.length());
+        if (!sql.startsWith(NAMESPACE, position)) {
+            return null;
+        }
+        position += NAMESPACE.length();
+        final int end = sql.indexOf("*/", position);
+        if (end < 0) {
+            return null;
+        }
+        final String value = sql.substring(position, end).trim();
+        if (value.equals("replica")) {
+            return REPLICA;
+        } else if (value.equals("main")) {
+            return MAIN;
+        } else if (value.startsWith(MAX_STALENESS)) {
+            final Duration maxStaleness = parseDuration(value.substring(MAX_STALENESS.length()));
+            return maxStaleness != null ? new RoutingHint(false, maxStaleness) : null;
+        } else {
+            return null;
+        }
+    }
+
+    private static int skipWhitespace(String sql, int position) {
+        while (position < sql.length() && Character.isWhitespace(sql.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    private static Duration parseDuration(String value) {
+        final long multiplier;
+        final String digits;
+        if (value.endsWith("ms")) {
+            multiplier = 1;
+            digits = value.substring(0, value.length() - 2);
+        } else if (value.endsWith("s")) {
+            multiplier = 1000;
+            digits = value.substring(0, value.length() - 1);
+        } else {
+            return null;
+        }
+        try {
+            final long amount = Long.parseLong(digits);
+            return amount >= 0 ? Duration.ofMillis(amount * multiplier) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the read must run on the main database
+     */
+    public boolean isMain() {
+        return main;
+    }
+
+    /**
+     * @return true if the read runs on a replica regardless of its consistency
+     */
+    public boolean isReplica() {
+        return !main && maxStaleness == null;
+    }
+
+    /**
+     * @return the tolerated replica lag, or null if the hint doesn't tolerate any
+     */
+    public Duration getMaxStaleness() {
+        return maxStaleness;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RoutingHint that = (RoutingHint) o;
+        return main == that.main && Objects.equals(maxStaleness, that.maxStaleness);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(main, maxStaleness);
+    }
+
+    @Override
+    public String toString() {
+        return "RoutingHint{" +
+            "main=" + main +
+            ", maxStaleness=" + maxStaleness +
+            '}';
+    }
+}
@@ -0,0 +1,142 @@
+package com.atlassian.db.replica.internal;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * A binary file with routing data learned by a process. It starts with a magic number and a format version,
+ * followed by two sections: learned writes and read-only functions. A section starts with the number of its entries.
+ * Learned writes are {@link SqlFingerprint}s, 8 bytes each. Functions are strings, each one as its length in bytes
+ * and its UTF-8 bytes.
+ */
+public final class RoutingSnapshotFile {
+    private static final int MAGIC = 0x44425250;
+    private static final int VERSION = 2;
+    private final Path path;
+
+    public RoutingSnapshotFile(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Maps the file into memory and decodes it.
+     *
+     * @return an empty snapshot if the file doesn't exist
+     * @throws IOException if the file can't be read or isn't a snapshot
+     */
+    public Snapshot read() throws IOException {
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            final MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < 8 || buffer.getInt() != MAGIC) {
+                throw new IOException(path + " is not a routing snapshot");
+            }
+            final int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException(path + " has an unsupported routing snapshot version " + version);
+            }
+            final List<Long> learnedWrites = readFingerprints(buffer);
+            final List<String> readOnlyFunctions = readSection(buffer);
+            return new Snapshot(learnedWrites, readOnlyFunctions);
+        } catch (NoSuchFileException e) {
+            return new Snapshot(Collections.emptyList(), Collections.emptyList());
+        } catch (BufferUnderflowException e) {
+            throw new IOException(path + " is truncated", e);
+        }
+    }
+
+    private List<Long> readFingerprints(ByteBuffer buffer) throws IOException {
+        final int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / 8) {
+            throw new IOException(path + " is corrupted");
+        }
+        final List<Long> fingerprints = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            fingerprints.add(buffer.getLong());
+        }
+        return fingerprints;
+    }
+
+    private List<String> readSection(ByteBuffer buffer) throws IOException {
+        final int count = buffer.getInt();
+        if (count < 0 || count > buffer.remaining() / 4) {
+            throw new IOException(path + " is corrupted");
+        }
+        final List<String> strings = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final int length = buffer.getInt();
+            if (length < 0 || length > buffer.remaining()) {
+                throw new IOException(path + " is corrupted");
+            }
+            final byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            strings.add(new String(bytes, UTF_8));
+        }
+        return strings;
+    }
+
+    /**
+     * Writes a temporary file next to the snapshot and moves it over the snapshot, so readers never see
+     * a partially written snapshot.
+     */
+    public void write(Snapshot snapshot) throws IOException {
+        final Path temporary = path.resolveSibling(path.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            writeFingerprints(output, snapshot.getLearnedWrites());
+            writeSection(output, snapshot.getReadOnlyFunctions());
+        }
+        Files.move(temporary, path, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    private static void writeFingerprints(DataOutputStream output, Collection<Long> fingerprints) throws IOException {
+        output.writeInt(fingerprints.size());
+        for (long fingerprint : fingerprints) {
+            output.writeLong(fingerprint);
+        }
+    }
+
+    private static void writeSection(DataOutputStream output, Collection<String> strings) throws IOException {
+        output.writeInt(strings.size());
+        for (String string : strings) {
+            final byte[] bytes = string.getBytes(UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    public static final class Snapshot {
+        private final Collection<Long> learnedWrites;
+        private final Collection<String> readOnlyFunctions;
+
+        public Snapshot(Collection<Long> learnedWrites, Collection<String> readOnlyFunctions) {
+            this.learnedWrites = learnedWrites;
+            this.readOnlyFunctions = readOnlyFunctions;
+        }
+
+        public Collection<Long> getLearnedWrites() {
+            return learnedWrites;
+        }
+
+        public Collection<String> getReadOnlyFunctions() {
+            return readOnlyFunctions;
+        }
+    }
+}
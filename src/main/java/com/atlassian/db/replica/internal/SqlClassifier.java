@@ -0,0 +1,46 @@
+package com.atlassian.db.replica.internal;
+
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+
+import java.util.Set;
+
+/**
+ * Decides where an SQL statement can run.
+ */
+@ThreadSafe
+public interface SqlClassifier {
+
+    /**
+     * @param sql not null
+     * @return the route class of the {@code sql}
+     */
+    SqlRoute classify(String sql);
+
+    /**
+     * Learns from a replica rejecting the {@code sql} as a write. Forgets it by default.
+     *
+     * @param sql classified as a read before
+     */
+    default void learnWrite(String sql) {
+    }
+
+    /**
+     * @param tryUnknownFunctionsOnReplica classifies calls to functions, which aren't known to be read-only,
+     *                                     as reads, so replicas can reject them
+     */
+    static SqlClassifier create(
+        Set<String> readOnlyFunctions,
+        FunctionNames discoveredFunctionNames,
+        boolean compatibleWithPreviousVersion,
+        boolean tryUnknownFunctionsOnReplica
+    ) {
+        final SqlFunction sqlFunction = new SqlFunction(
+            readOnlyFunctions,
+            discoveredFunctionNames,
+            tryUnknownFunctionsOnReplica
+        );
+        return compatibleWithPreviousVersion ?
+            new LegacySqlClassifier(sqlFunction) :
+            new TokenizingSqlClassifier(sqlFunction);
+    }
+}
@@ -0,0 +1,208 @@
+package com.atlassian.db.replica.internal;
+
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+
+import java.util.function.LongSupplier;
+
+import static com.atlassian.db.replica.internal.TokenizingSqlClassifier.dollarEnd;
+import static com.atlassian.db.replica.internal.TokenizingSqlClassifier.isIdentifierStart;
+import static com.atlassian.db.replica.internal.TokenizingSqlClassifier.isKeyword;
+import static com.atlassian.db.replica.internal.TokenizingSqlClassifier.literalEnd;
+import static com.atlassian.db.replica.internal.TokenizingSqlClassifier.quotedIdentifierEnd;
+import static com.atlassian.db.replica.internal.TokenizingSqlClassifier.skipIgnored;
+import static com.atlassian.db.replica.internal.TokenizingSqlClassifier.wordEnd;
+
+/**
+ * Fingerprints the shape of an SQL statement. Statements differing only in literals, parameter placeholders,
+ * the number of values in {@code IN} lists, whitespace, comments or the letter case of unquoted words get
+ * the same fingerprint.
+ * <p>
+ * Lexes the SQL in place, with the {@link TokenizingSqlClassifier} rules, and hashes the normalised tokens
+ * with 64-bit FNV-1a. It doesn't allocate.
+ * <p>
+ * Computes the fingerprint on the first {@link #getAsLong()} and remembers it.
+ */
+@ThreadSafe
+public final class SqlFingerprint implements LongSupplier {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final char VALUE = '?';
+    private static final char TOKEN_END = ' ';
+    private final String sql;
+    private long fingerprint;
+    private volatile boolean computed = false;
+
+    public SqlFingerprint(String sql) {
+        this.sql = sql;
+    }
+
+    @Override
+    public long getAsLong() {
+        if (!computed) {
+            fingerprint = of(sql);
+            computed = true;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * @param sql not null
+     * @return the fingerprint of the {@code sql} shape
+     */
+    public static long of(String sql) {
+        final int length = sql.length();
+        long hash = FNV_OFFSET_BASIS;
+        int position = 0;
+        boolean afterIn = false;
+        while (true) {
+            position = skipIgnored(sql, position);
+            if (position >= length) {
+                return hash;
+            }
+            final char character = sql.charAt(position);
+            if (afterIn && character == '(') {
+                final int listEnd = valueListEnd(sql, position);
+                if (listEnd != -1) {
+                    hash = hashToken(hashToken(hashToken(hash, '('), VALUE), ')');
+                    position = listEnd;
+                    afterIn = false;
+                    continue;
+                }
+            }
+            afterIn = false;
+            final int valueEnd = valueEnd(sql, position);
+            if (valueEnd != -1) {
+                hash = hashToken(hash, VALUE);
+                position = valueEnd;
+            } else if (isIdentifierStart(character)) {
+                final int end = wordEnd(sql, position);
+                for (int i = position; i < end; i++) {
+                    hash = hash(hash, toLowerCase(sql.charAt(i)));
+                }
+                hash = hash(hash, TOKEN_END);
+                afterIn = isKeyword(sql, position, end, "IN");
+                position = end;
+            } else if (character == '"') {
+                final int end = quotedIdentifierEnd(sql, position);
+                for (int i = position; i < end; i++) {
+                    hash = hash(hash, sql.charAt(i));
+                }
+                hash = hash(hash, TOKEN_END);
+                position = end;
+            } else {
+                hash = hashToken(hash, character);
+                position++;
+            }
+        }
+    }
+
+    /**
+     * @return the end of a literal or a parameter placeholder starting at the {@code position}, or -1 if there's none
+     */
+    private static int valueEnd(String sql, int position) {
+        final int length = sql.length();
+        final char character = sql.charAt(position);
+        if (character == '\'') {
+            return literalEnd(sql, position, false);
+        }
+        if (character == '?') {
+            return position + 1;
+        }
+        if (character == '$') {
+            return dollarEnd(sql, position);
+        }
+        if (isDigit(character) || (character == '.' && position + 1 < length && isDigit(sql.charAt(position + 1)))) {
+            return numberEnd(sql, position);
+        }
+        if (isIdentifierStart(character) && position + 1 < length && sql.charAt(position + 1) == '\'') {
+            return literalEnd(sql, position + 1, character == 'E' || character == 'e');
+        }
+        return -1;
+    }
+
+    private static int numberEnd(String sql, int position) {
+        final int length = sql.length();
+        while (position < length) {
+            final char character = sql.charAt(position);
+            if (isDigit(character) || character == '.') {
+                position++;
+            } else if ((character == 'e' || character == 'E')
+                && position + 1 < length
+                && (isDigit(sql.charAt(position + 1)) || sql.charAt(position + 1) == '-' || sql.charAt(position + 1) == '+')) {
+                position += 2;
+            } else {
+                return position;
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Matches a list of literals or parameter placeholders, optionally signed or cast, e.g.
+     * {@code (?, ?, ?)} or {@code (-1, 2::int)}.
+     *
+     * @return the end of the list opened at the {@code position}, or -1 if it's not such a list
+     */
+    private static int valueListEnd(String sql, int position) {
+        final int length = sql.length();
+        boolean expectsValue = true;
+        position++;
+        while (true) {
+            position = skipIgnored(sql, position);
+            if (position >= length) {
+                return -1;
+            }
+            final char character = sql.charAt(position);
+            if (expectsValue) {
+                if ((character == '-' || character == '+') && position + 1 < length) {
+                    position = skipIgnored(sql, position + 1);
+                    if (position >= length) {
+                        return -1;
+                    }
+                }
+                final int valueEnd = valueEnd(sql, position);
+                if (valueEnd == -1) {
+                    return -1;
+                }
+                position = castEnd(sql, valueEnd);
+                expectsValue = false;
+            } else if (character == ',') {
+                position++;
+                expectsValue = true;
+            } else if (character == ')') {
+                return position + 1;
+            } else {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @return the end of a cast to a simple type, e.g. {@code ::uuid}, or the {@code position} if there's none
+     */
+    private static int castEnd(String sql, int position) {
+        if (position + 2 < sql.length()
+            && sql.charAt(position) == ':'
+            && sql.charAt(position + 1) == ':'
+            && isIdentifierStart(sql.charAt(position + 2))) {
+            return wordEnd(sql, position + 2);
+        }
+        return position;
+    }
+
+    private static long hashToken(long hash, char character) {
+        return hash(hash(hash, character), TOKEN_END);
+    }
+
+    private static long hash(long hash, char character) {
+        return (hash ^ character) * FNV_PRIME;
+    }
+
+    private static char toLowerCase(char character) {
+        return character >= 'A' && character <= 'Z' ? (char) (character + ('a' - 'A')) : character;
+    }
+
+    private static boolean isDigit(char character) {
+        return character >= '0' && character <= '9';
+    }
+}
@@ -1,6 +1,6 @@
 package com.atlassian.db.replica.internal;
 
-import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -10,7 +10,7 @@ import static java.lang.Math.min;
 
 public class SqlFunction {
     private static final String methodBracketStart = Pattern.quote("(");
-    private static final Set<String> standardReadOnlyFunctions = Stream
+    private static final List<String> standardReadOnlyFunctions = Stream
         .of(
             "abs",
             "cbrt",
@@ -404,12 +404,65 @@ public class SqlFunction {
             "txid_snapshot_xmin",
             "txid_visible_in_snapshot"
         )
-        .flatMap(name -> Stream.of(name, name.toUpperCase()))
-        .collect(Collectors.toCollection(HashSet::new));
-    private final Set<String> readOnlyFunctions;
+        .collect(Collectors.toList());
+    private static final FunctionNames standardFunctionNames = new FunctionNames(standardReadOnlyFunctions);
+    /**
+     * Functions, which a replica wouldn't reject, but which must run on main anyway, because they depend on
+     * or change the state of the main session, e.g. take advisory locks.
+     */
+    private static final FunctionNames mainOnlyFunctionNames = new FunctionNames(Stream
+        .of(
+            "currval",
+            "lastval",
+            "nextval",
+            "setval",
+            "pg_advisory_lock",
+            "pg_advisory_lock_shared",
+            "pg_advisory_unlock",
+            "pg_advisory_unlock_all",
+            "pg_advisory_unlock_shared",
+            "pg_advisory_xact_lock",
+            "pg_advisory_xact_lock_shared",
+            "pg_try_advisory_lock",
+            "pg_try_advisory_lock_shared",
+            "pg_try_advisory_xact_lock",
+            "pg_try_advisory_xact_lock_shared",
+            "pg_notify"
+        )
+        .collect(Collectors.toList()));
+    private final FunctionNames readOnlyFunctionNames;
+    private final FunctionNames discoveredFunctionNames;
+    private final boolean tryUnknownFunctionsOnReplica;
 
     public SqlFunction(Set<String> readOnlyFunctions) {
-        this.readOnlyFunctions = readOnlyFunctions;
+        this(readOnlyFunctions, FunctionNames.EMPTY);
+    }
+
+    /**
+     * @param readOnlyFunctions       configured read-only functions
+     * @param discoveredFunctionNames read-only functions discovered in the database
+     */
+    public SqlFunction(Set<String> readOnlyFunctions, FunctionNames discoveredFunctionNames) {
+        this(readOnlyFunctions, discoveredFunctionNames, false);
+    }
+
+    /**
+     * @param readOnlyFunctions            configured read-only functions
+     * @param discoveredFunctionNames      read-only functions discovered in the database
+     * @param tryUnknownFunctionsOnReplica lets calls to functions, which aren't known to be read-only, run on
+     *                                     a replica, so a replica rejecting them can teach {@link LearningSqlClassifier}
+     */
+    public SqlFunction(
+        Set<String> readOnlyFunctions,
+        FunctionNames discoveredFunctionNames,
+        boolean tryUnknownFunctionsOnReplica
+    ) {
+        this.tryUnknownFunctionsOnReplica = tryUnknownFunctionsOnReplica;
+        this.readOnlyFunctionNames = readOnlyFunctions.isEmpty() ?
+            standardFunctionNames :
+            new FunctionNames(Stream.concat(standardReadOnlyFunctions.stream(), readOnlyFunctions.stream())
+                .collect(Collectors.toList()));
+        this.discoveredFunctionNames = discoveredFunctionNames;
     }
 
     boolean isFunctionCall(String sql) {
@@ -422,13 +475,36 @@ public class SqlFunction {
             return false;
         }
         final String potentialMethodName = mayContainFunction.split(methodBracketStart)[0];
-        if (standardReadOnlyFunctions.contains(potentialMethodName) || readOnlyFunctions.contains(potentialMethodName)) {
+        if (mayRunOnReplica(potentialMethodName, 0, potentialMethodName.length())) {
             return false;
         }
         final boolean hasSpaceInPotentialMethodName = potentialMethodName.contains(" ");
         return !hasSpaceInPotentialMethodName;
     }
 
+    /**
+     * @param sql   holds the function name
+     * @param start index of the first character of the function name
+     * @param end   index after the last character of the function name
+     * @return true if the function is known to be read-only, regardless of the case of the name
+     */
+    boolean isReadOnly(String sql, int start, int end) {
+        return readOnlyFunctionNames.contains(sql, start, end) || discoveredFunctionNames.contains(sql, start, end);
+    }
+
+    /**
+     * @param sql   holds the function name
+     * @param start index of the first character of the function name
+     * @param end   index after the last character of the function name
+     * @return true if the function is known to be read-only, or it's unknown and should be tried on a replica
+     */
+    boolean mayRunOnReplica(String sql, int start, int end) {
+        if (isReadOnly(sql, start, end)) {
+            return true;
+        }
+        return tryUnknownFunctionsOnReplica && !mainOnlyFunctionNames.contains(sql, start, end);
+    }
+
     /**
      * Skips `SELECT ` at the beginning of the query. Postgres identifiers are limited to
      * 63 characters, so we should be safe to interpret first 80 characters.
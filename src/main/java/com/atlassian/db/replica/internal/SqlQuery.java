@@ -36,6 +36,10 @@ public final class SqlQuery {
         return sql.startsWith("insert") || sql.startsWith("INSERT");
     }
 
+    public boolean isSelect() {
+        return sql.startsWith("select") || sql.startsWith("SELECT");
+    }
+
     public boolean isSqlSet() {
         return sql.startsWith("set") || sql.startsWith("SET");
     }
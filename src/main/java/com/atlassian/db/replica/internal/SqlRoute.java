@@ -0,0 +1,29 @@
+package com.atlassian.db.replica.internal;
+
+/**
+ * The class of an SQL statement, as far as routing between main and replica is concerned.
+ */
+public enum SqlRoute {
+    /**
+     * Can run on a replica.
+     */
+    READ,
+    /**
+     * Modifies data, e.g. INSERT, UPDATE, DELETE or a call to a function, which is not known to be read-only.
+     */
+    WRITE,
+    /**
+     * Takes row or table locks, e.g. SELECT ... FOR UPDATE. Must run on main, but doesn't modify data.
+     */
+    LOCK,
+    /**
+     * Changes a runtime parameter of the session, e.g. SET statement_timeout.
+     */
+    SET,
+    /**
+     * Neither a query nor a known write, e.g. BEGIN, VACUUM or EXPLAIN ANALYZE. Runs on a replica when executed
+     * as a query, but {@link java.sql.Statement#execute(String)} runs it on main, because it can change
+     * the session or the data.
+     */
+    COMMAND
+}
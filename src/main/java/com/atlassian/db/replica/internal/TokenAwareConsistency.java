@@ -0,0 +1,61 @@
+package com.atlassian.db.replica.internal;
+
+import com.atlassian.db.replica.api.ConsistencyToken;
+import com.atlassian.db.replica.spi.ReplicaConsistency;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Judges replicas of a single connection by an imported {@link ConsistencyToken}, until the connection writes.
+ * Afterwards, the token can't cover the connection's own writes, so it judges them like the delegate.
+ */
+public final class TokenAwareConsistency implements ReplicaConsistency {
+    private final ReplicaConsistency delegate;
+    private final ConsistencyToken token;
+    private volatile boolean written = false;
+
+    public TokenAwareConsistency(ReplicaConsistency delegate, ConsistencyToken token) {
+        this.delegate = delegate;
+        this.token = token;
+    }
+
+    @Override
+    public void write(Connection main) {
+        written = true;
+        delegate.write(main);
+    }
+
+    @Override
+    public void preCommit(Connection main) {
+        delegate.preCommit(main);
+    }
+
+    @Override
+    public boolean isConsistent(Supplier<Connection> replica) {
+        return written ? delegate.isConsistent(replica) : delegate.isConsistent(replica, token);
+    }
+
+    /**
+     * Tolerating staleness doesn't waive the token: the write it comes from has to be visible too.
+     */
+    @Override
+    public boolean isConsistent(Supplier<Connection> replica, Duration maxStaleness) {
+        if (written) {
+            return delegate.isConsistent(replica, maxStaleness);
+        }
+        return delegate.isConsistent(replica, token) && delegate.isConsistent(replica, maxStaleness);
+    }
+
+    @Override
+    public boolean isConsistent(Supplier<Connection> replica, ConsistencyToken token) {
+        return delegate.isConsistent(replica, this.token.merge(token));
+    }
+
+    @Override
+    public Optional<ConsistencyToken> exportToken() {
+        return delegate.exportToken();
+    }
+}
@@ -0,0 +1,756 @@
+package com.atlassian.db.replica.internal;
+
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+
+/**
+ * Classifies SQL by lexing it in place, without allocating substrings or running regular expressions.
+ * <p>
+ * The head of the statement decides most of the cases. Whitespace, comments and opening parentheses
+ * are skipped to find the leading keyword, and for a SELECT the first selected item is checked for a function call.
+ * <p>
+ * A locking clause ({@code FOR UPDATE}, {@code FOR NO KEY UPDATE}, {@code FOR SHARE}, {@code FOR KEY SHARE})
+ * can only close a SELECT, so it's read backwards from the tail of the statement.
+ * <p>
+ * A {@code WITH} query is lexed in full, because any of its CTEs can hold a data-modifying statement
+ * or a locking clause. So is a SELECT mentioning {@code FOR} anywhere but the tail, because its subqueries can lock.
+ * <p>
+ * JDBC escapes, e.g. {@code {call do_write(?)}} or {@code {? = call f(?)}}, call procedures, so they never read.
+ * <p>
+ * Statements starting with any other keyword than a query, a write, {@code SET} or {@code LOCK} are commands.
+ */
+@ThreadSafe
+public final class TokenizingSqlClassifier implements SqlClassifier {
+    /**
+     * The longest locking clause tail we expect, e.g. {@code FOR NO KEY UPDATE OF "a", "b" SKIP LOCKED}.
+     */
+    private static final int LOCKING_CLAUSE_TOKEN_LIMIT = 32;
+    /**
+     * How far back to look for a line comment in the tail. Keeps single-line statements cheap.
+     */
+    private static final int LINE_COMMENT_WINDOW = 256;
+    /**
+     * Lines up to this length are checked for a line comment char by char, longer ones are searched.
+     */
+    private static final int SHORT_LINE = 80;
+    private static final String[] WRITE_KEYWORDS = {
+        "INSERT",
+        "UPDATE",
+        "DELETE",
+        "MERGE",
+        "UPSERT",
+        "TRUNCATE",
+        "CALL",
+        "CREATE",
+        "ALTER",
+        "DROP",
+        "GRANT",
+        "REVOKE",
+        "COMMENT",
+        "REFRESH"
+    };
+    private static final String[] QUERY_KEYWORDS = {
+        "VALUES",
+        "TABLE",
+        "SHOW"
+    };
+    private static final int ASCII = 128;
+    private static final byte WHITESPACE = 1;
+    private static final byte IDENTIFIER_START = 2;
+    private static final byte IDENTIFIER_PART = 4;
+    private static final byte[] CHARACTER_CLASSES = classifyAsciiCharacters();
+    private final SqlFunction sqlFunction;
+
+    public TokenizingSqlClassifier(SqlFunction sqlFunction) {
+        this.sqlFunction = sqlFunction;
+    }
+
+    @Override
+    public SqlRoute classify(String sql) {
+        final int start = skipIgnoredAndParentheses(sql, 0);
+        if (startsWithKeyword(sql, start, "SELECT")) {
+            final int end = start + "SELECT".length();
+            if (isFunctionCall(sql, skipIgnored(sql, end))) {
+                return SqlRoute.WRITE;
+            }
+            if (endsWithLockingClause(sql, end)) {
+                return SqlRoute.LOCK;
+            }
+            return mentionsFor(sql, end) && containsLockingClause(sql, end) ? SqlRoute.LOCK : SqlRoute.READ;
+        }
+        final int end = wordEnd(sql, start);
+        if (end == start) {
+            return start < sql.length() && sql.charAt(start) == '{' ? classifyEscape(sql, start + 1) : SqlRoute.READ;
+        }
+        if (isKeyword(sql, start, end, "WITH")) {
+            return classifyCommonTableExpressions(sql, end);
+        }
+        if (isKeyword(sql, start, end, "SET")) {
+            return SqlRoute.SET;
+        }
+        if (isKeyword(sql, start, end, "LOCK")) {
+            return SqlRoute.LOCK;
+        }
+        if (isWriteKeyword(sql, start, end)) {
+            return SqlRoute.WRITE;
+        }
+        if (endsWithLockingClause(sql, end)) {
+            return SqlRoute.LOCK;
+        }
+        return isQueryKeyword(sql, start, end) ? SqlRoute.READ : SqlRoute.COMMAND;
+    }
+
+    /**
+     * Classifies a JDBC call escape: {@code {call ...}} is a write, {@code {? = call ...}} and any other escape
+     * are commands.
+     *
+     * @param position after the opening brace
+     */
+    private static SqlRoute classifyEscape(String sql, int position) {
+        final int start = skipIgnored(sql, position);
+        final int end = wordEnd(sql, start);
+        return isKeyword(sql, start, end, "CALL") ? SqlRoute.WRITE : SqlRoute.COMMAND;
+    }
+
+    /**
+     * A cheap filter before {@link #containsLockingClause}: looks for {@code FOR} regardless of case, even
+     * in literals and identifiers.
+     */
+    private static boolean mentionsFor(String sql, int position) {
+        final int last = sql.length() - "FOR".length();
+        for (int i = position; i <= last; i++) {
+            if ((sql.charAt(i) & ~0x20) == 'F'
+                && (sql.charAt(i + 1) & ~0x20) == 'O'
+                && (sql.charAt(i + 2) & ~0x20) == 'R') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Lexes the whole statement for a locking clause, e.g. one closing a subquery.
+     */
+    private static boolean containsLockingClause(String sql, int position) {
+        final int length = sql.length();
+        int lockingClause = 0;
+        while (true) {
+            position = skipIgnored(sql, position);
+            if (position >= length) {
+                return false;
+            }
+            final char character = sql.charAt(position);
+            if (isIdentifierStart(character)) {
+                final int end = wordEnd(sql, position);
+                if (end < length && sql.charAt(end) == '\'' && end - position == 1) {
+                    position = literalEnd(sql, end, character == 'E' || character == 'e');
+                    lockingClause = 0;
+                    continue;
+                }
+                lockingClause = nextLockingClauseState(sql, position, end, lockingClause);
+                if (lockingClause == LOCKING_CLAUSE_COMPLETE) {
+                    return true;
+                }
+                position = end;
+                continue;
+            }
+            lockingClause = 0;
+            if (character == '\'') {
+                position = literalEnd(sql, position, false);
+            } else if (character == '"') {
+                position = quotedIdentifierEnd(sql, position);
+            } else if (character == '$') {
+                position = dollarEnd(sql, position);
+            } else {
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Mirrors the original heuristic: the first selected item is a function call when its name is followed by
+     * a bracket, e.g. {@code SELECT nextval('seq')} or {@code SELECT public.do_something()}.
+     */
+    private boolean isFunctionCall(String sql, int position) {
+        final int nameEnd = qualifiedNameEnd(sql, position);
+        if (nameEnd == position || nameEnd >= sql.length() || sql.charAt(nameEnd) != '(') {
+            return false;
+        }
+        return !sqlFunction.mayRunOnReplica(sql, position, nameEnd);
+    }
+
+    /**
+     * Lexes the whole statement. Data-modifying statements can only start right after a bracket opening a CTE body
+     * or right after the closing bracket of the last CTE.
+     */
+    private static SqlRoute classifyCommonTableExpressions(String sql, int position) {
+        final int length = sql.length();
+        int depth = 0;
+        boolean statementStart = false;
+        int lockingClause = 0;
+        boolean locks = false;
+        while (true) {
+            position = skipIgnored(sql, position);
+            if (position >= length) {
+                return locks ? SqlRoute.LOCK : SqlRoute.READ;
+            }
+            final char character = sql.charAt(position);
+            if (isIdentifierStart(character)) {
+                final int end = wordEnd(sql, position);
+                if (end < length && sql.charAt(end) == '\'' && end - position == 1) {
+                    position = literalEnd(sql, end, character == 'E' || character == 'e');
+                    statementStart = false;
+                    lockingClause = 0;
+                    continue;
+                }
+                if (statementStart && isWriteKeyword(sql, position, end)) {
+                    return SqlRoute.WRITE;
+                }
+                lockingClause = nextLockingClauseState(sql, position, end, lockingClause);
+                if (lockingClause == LOCKING_CLAUSE_COMPLETE) {
+                    locks = true;
+                    lockingClause = 0;
+                }
+                statementStart = false;
+                position = end;
+                continue;
+            }
+            lockingClause = 0;
+            if (character == '(') {
+                depth++;
+                statementStart = true;
+                position++;
+            } else if (character == ')') {
+                depth--;
+                statementStart = depth <= 0;
+                position++;
+            } else if (character == '\'') {
+                statementStart = false;
+                position = literalEnd(sql, position, false);
+            } else if (character == '"') {
+                statementStart = false;
+                position = quotedIdentifierEnd(sql, position);
+            } else if (character == '$') {
+                statementStart = false;
+                position = dollarEnd(sql, position);
+            } else {
+                statementStart = false;
+                position++;
+            }
+        }
+    }
+
+    private static final int LOCKING_CLAUSE_COMPLETE = -1;
+
+    /**
+     * Tracks {@code FOR [NO] [KEY] UPDATE|SHARE}: 0 - nothing, 1 - FOR, 2 - FOR NO, 3 - FOR [NO] KEY.
+     */
+    private static int nextLockingClauseState(String sql, int start, int end, int state) {
+        if (state > 0 && (isKeyword(sql, start, end, "UPDATE") || isKeyword(sql, start, end, "SHARE"))) {
+            return LOCKING_CLAUSE_COMPLETE;
+        }
+        if (state == 1 && isKeyword(sql, start, end, "NO")) {
+            return 2;
+        }
+        if ((state == 1 || state == 2) && isKeyword(sql, start, end, "KEY")) {
+            return 3;
+        }
+        return isKeyword(sql, start, end, "FOR") ? 1 : 0;
+    }
+
+    /**
+     * Expects anything, which can close a locking clause: {@code LIMIT}, {@code OFFSET} or {@code FETCH} parts,
+     * a wait policy, a table of the {@code OF} list or the lock strength itself.
+     */
+    private static final int TAIL = 0;
+    /**
+     * Read {@code LOCKED}, expects {@code SKIP}.
+     */
+    private static final int SKIP = 1;
+    /**
+     * Read a wait policy, expects a table of the {@code OF} list or the lock strength.
+     */
+    private static final int WAIT_POLICY = 2;
+    /**
+     * Read a table of the {@code OF} list, expects a separator or {@code OF}.
+     */
+    private static final int TABLE = 3;
+    /**
+     * Read a comma or a dot, expects a table.
+     */
+    private static final int SEPARATOR = 4;
+    /**
+     * Read {@code OF}, expects the lock strength.
+     */
+    private static final int TABLES = 5;
+    private static final int LOCKING_CLAUSE_MISMATCH = -2;
+
+    /**
+     * Reads the statement backwards, following
+     * {@code FOR [NO] [KEY] UPDATE|SHARE [OF table [, ...]] [NOWAIT | SKIP LOCKED] [LIMIT | OFFSET | FETCH ...]}.
+     * Stops at the first token, which doesn't fit, so large queries cost the same as short ones.
+     * <p>
+     * Line comments can't be recognised backwards, so the line is checked only when the scan would stop or match.
+     * A commented line is read again with the state the scan had at the end of the line.
+     *
+     * @param bodyStart the end of the leading keyword, where the scan gives up
+     */
+    private static boolean endsWithLockingClause(String sql, int bodyStart) {
+        int position = sql.length();
+        int state = TAIL;
+        boolean closing = true;
+        int lineState = state;
+        boolean lineClosing = closing;
+        int tokens = 0;
+        while (position > bodyStart && tokens < LOCKING_CLAUSE_TOKEN_LIMIT) {
+            final char character = sql.charAt(position - 1);
+            if (character == '\n') {
+                lineState = state;
+                lineClosing = closing;
+                position--;
+                continue;
+            }
+            if (isWhitespace(character) || (closing && (character == ';' || character == ')'))) {
+                position--;
+                continue;
+            }
+            if (character == '/' && position > 1 && sql.charAt(position - 2) == '*') {
+                position = sql.lastIndexOf("/*", position - 3);
+                continue;
+            }
+            tokens++;
+            final int start;
+            final int next;
+            if (isIdentifierPart(character)) {
+                start = wordStart(sql, position);
+                next = nextLockingClauseTailState(sql, start, position, state);
+            } else if (character == '"') {
+                start = sql.lastIndexOf('"', position - 2);
+                next = state == TAIL || state == WAIT_POLICY || state == SEPARATOR ? TABLE : LOCKING_CLAUSE_MISMATCH;
+            } else if (character == ',' || character == '.') {
+                start = position - 1;
+                next = state == TABLE ? SEPARATOR : LOCKING_CLAUSE_MISMATCH;
+            } else {
+                start = position - 1;
+                next = character == '?' && state == TAIL ? TAIL : LOCKING_CLAUSE_MISMATCH;
+            }
+            final int lockingClause = next == LOCKING_CLAUSE_COMPLETE ? lockingClauseStart(sql, start) : -1;
+            final int lineComment;
+            if (lockingClause != -1) {
+                lineComment = lineCommentStart(sql, lockingClause);
+                if (lineComment == -1) {
+                    return true;
+                }
+            } else if (next < 0) {
+                lineComment = lineCommentStart(sql, position - 1);
+                if (lineComment == -1) {
+                    return false;
+                }
+            } else {
+                position = start;
+                state = next;
+                closing = false;
+                continue;
+            }
+            position = lineComment;
+            state = lineState;
+            closing = lineClosing;
+        }
+        return false;
+    }
+
+    private static int nextLockingClauseTailState(String sql, int start, int end, int state) {
+        final int word = lockingClauseWord(sql, start, end);
+        switch (state) {
+            case SKIP:
+                return word == SKIP_WORD ? WAIT_POLICY : LOCKING_CLAUSE_MISMATCH;
+            case TABLE:
+                return word == OF_WORD ? TABLES : LOCKING_CLAUSE_MISMATCH;
+            case TABLES:
+                return word == STRENGTH_WORD ? LOCKING_CLAUSE_COMPLETE : LOCKING_CLAUSE_MISMATCH;
+            case SEPARATOR:
+                return word == NUMBER ? LOCKING_CLAUSE_MISMATCH : TABLE;
+            default:
+                if (word == STRENGTH_WORD) {
+                    return LOCKING_CLAUSE_COMPLETE;
+                }
+                if (state == TAIL) {
+                    if (word == LIMIT_WORD || word == NUMBER) {
+                        return TAIL;
+                    }
+                    if (word == NOWAIT_WORD) {
+                        return WAIT_POLICY;
+                    }
+                    if (word == LOCKED_WORD) {
+                        return SKIP;
+                    }
+                }
+                return word == NUMBER ? LOCKING_CLAUSE_MISMATCH : TABLE;
+        }
+    }
+
+    private static final int OTHER_WORD = 0;
+    private static final int NUMBER = 1;
+    private static final int STRENGTH_WORD = 2;
+    private static final int OF_WORD = 3;
+    private static final int NOWAIT_WORD = 4;
+    private static final int LOCKED_WORD = 5;
+    private static final int SKIP_WORD = 6;
+    private static final int LIMIT_WORD = 7;
+
+    /**
+     * Tells the words of a locking clause and of the limit, which can follow it, by their first letter.
+     */
+    private static int lockingClauseWord(String sql, int start, int end) {
+        final char first = sql.charAt(start);
+        switch (first & ~0x20) {
+            case 'U':
+                return isKeyword(sql, start, end, "UPDATE") ? STRENGTH_WORD : OTHER_WORD;
+            case 'S':
+                if (isKeyword(sql, start, end, "SHARE")) {
+                    return STRENGTH_WORD;
+                }
+                return isKeyword(sql, start, end, "SKIP") ? SKIP_WORD : OTHER_WORD;
+            case 'O':
+                if (isKeyword(sql, start, end, "OF")) {
+                    return OF_WORD;
+                }
+                return isKeyword(sql, start, end, "OFFSET") || isKeyword(sql, start, end, "ONLY") ? LIMIT_WORD : OTHER_WORD;
+            case 'N':
+                if (isKeyword(sql, start, end, "NOWAIT")) {
+                    return NOWAIT_WORD;
+                }
+                return isKeyword(sql, start, end, "NEXT") ? LIMIT_WORD : OTHER_WORD;
+            case 'L':
+                if (isKeyword(sql, start, end, "LOCKED")) {
+                    return LOCKED_WORD;
+                }
+                return isKeyword(sql, start, end, "LIMIT") ? LIMIT_WORD : OTHER_WORD;
+            case 'A':
+                return isKeyword(sql, start, end, "ALL") ? LIMIT_WORD : OTHER_WORD;
+            case 'F':
+                return isKeyword(sql, start, end, "FETCH") || isKeyword(sql, start, end, "FIRST") ? LIMIT_WORD : OTHER_WORD;
+            case 'R':
+                return isKeyword(sql, start, end, "ROW") || isKeyword(sql, start, end, "ROWS") ? LIMIT_WORD : OTHER_WORD;
+            default:
+                return isIdentifierStart(first) ? OTHER_WORD : NUMBER;
+        }
+    }
+
+    /**
+     * Walks back through a short line. A long line is searched for dashes forwards,
+     * but no further back than the window.
+     *
+     * @return the start of a line comment, which covers the {@code index}, or -1 if there's none
+     */
+    private static int lineCommentStart(String sql, int index) {
+        final int limit = Math.max(0, index - LINE_COMMENT_WINDOW);
+        final int shortLineLimit = Math.max(limit, index - SHORT_LINE);
+        for (int position = index - 1; position >= shortLineLimit; position--) {
+            final char character = sql.charAt(position);
+            if (character == '\n') {
+                return -1;
+            }
+            if (character == '-') {
+                return lineCommentStart(sql, lineStart(sql, position, limit), index);
+            }
+        }
+        int dash = sql.indexOf('-', limit);
+        while (dash != -1 && dash < shortLineLimit) {
+            final int lineEnd = sql.indexOf('\n', dash);
+            if (lineEnd == -1 || lineEnd >= index) {
+                return lineCommentStart(sql, lineStart(sql, dash, limit), index);
+            }
+            dash = sql.indexOf('-', lineEnd);
+        }
+        return -1;
+    }
+
+    private static int lineStart(String sql, int index, int limit) {
+        int position = index;
+        while (position > limit && sql.charAt(position - 1) != '\n') {
+            position--;
+        }
+        return position;
+    }
+
+    /**
+     * Lexes the line to tell comments from dashes in literals, e.g. {@code 'a--b'}.
+     */
+    private static int lineCommentStart(String sql, int lineStart, int index) {
+        char quote = 0;
+        for (int position = lineStart; position < index; position++) {
+            final char character = sql.charAt(position);
+            if (quote != 0) {
+                if (character == quote) {
+                    quote = 0;
+                }
+            } else if (character == '\'' || character == '"') {
+                quote = character;
+            } else if (character == '-' && sql.charAt(position + 1) == '-') {
+                return position;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param position the start of UPDATE or SHARE
+     * @return the start of the preceding {@code FOR [NO] [KEY]}, or -1 if there's none
+     */
+    private static int lockingClauseStart(String sql, int position) {
+        int end = skipWhitespaceBackwards(sql, position);
+        int start = wordStart(sql, end);
+        if (isKeyword(sql, start, end, "KEY")) {
+            end = skipWhitespaceBackwards(sql, start);
+            start = wordStart(sql, end);
+            if (isKeyword(sql, start, end, "NO")) {
+                end = skipWhitespaceBackwards(sql, start);
+                start = wordStart(sql, end);
+            }
+        }
+        return isKeyword(sql, start, end, "FOR") ? start : -1;
+    }
+
+    private static int skipWhitespaceBackwards(String sql, int position) {
+        while (position > 0 && isWhitespace(sql.charAt(position - 1))) {
+            position--;
+        }
+        return position;
+    }
+
+    private static int wordStart(String sql, int end) {
+        int position = end;
+        while (position > 0 && isIdentifierPart(sql.charAt(position - 1))) {
+            position--;
+        }
+        return position;
+    }
+
+    private static int skipIgnoredAndParentheses(String sql, int position) {
+        while (true) {
+            position = skipIgnored(sql, position);
+            if (position < sql.length() && sql.charAt(position) == '(') {
+                position++;
+            } else {
+                return position;
+            }
+        }
+    }
+
+    /**
+     * Skips whitespace, line comments and (nested) block comments.
+     */
+    static int skipIgnored(String sql, int position) {
+        final int length = sql.length();
+        while (position < length) {
+            final char character = sql.charAt(position);
+            if (isWhitespace(character)) {
+                position++;
+            } else if (character == '-' && position + 1 < length && sql.charAt(position + 1) == '-') {
+                final int lineEnd = sql.indexOf('\n', position + 2);
+                position = lineEnd == -1 ? length : lineEnd + 1;
+            } else if (character == '/' && position + 1 < length && sql.charAt(position + 1) == '*') {
+                position = blockCommentEnd(sql, position);
+            } else {
+                return position;
+            }
+        }
+        return position;
+    }
+
+    private static int blockCommentEnd(String sql, int position) {
+        final int length = sql.length();
+        int depth = 0;
+        while (position + 1 < length) {
+            final char character = sql.charAt(position);
+            final char next = sql.charAt(position + 1);
+            if (character == '/' && next == '*') {
+                depth++;
+                position += 2;
+            } else if (character == '*' && next == '/') {
+                depth--;
+                position += 2;
+                if (depth == 0) {
+                    return position;
+                }
+            } else {
+                position++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * @param position points at the opening quote
+     * @return position after the closing quote
+     */
+    static int literalEnd(String sql, int position, boolean backslashEscapes) {
+        final int length = sql.length();
+        position++;
+        while (position < length) {
+            final char character = sql.charAt(position);
+            if (backslashEscapes && character == '\\') {
+                position += 2;
+            } else if (character == '\'') {
+                if (position + 1 < length && sql.charAt(position + 1) == '\'') {
+                    position += 2;
+                } else {
+                    return position + 1;
+                }
+            } else {
+                position++;
+            }
+        }
+        return length;
+    }
+
+    static int quotedIdentifierEnd(String sql, int position) {
+        final int length = sql.length();
+        for (int closing = position + 1; closing < length; closing++) {
+            if (sql.charAt(closing) == '"') {
+                return closing + 1;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Skips a dollar-quoted string, e.g. {@code $$text$$} or {@code $fn$text$fn$}, or a positional parameter, e.g. {@code $1}.
+     */
+    static int dollarEnd(String sql, int position) {
+        final int length = sql.length();
+        int tagEnd = position + 1;
+        while (tagEnd < length && isIdentifierPart(sql.charAt(tagEnd)) && sql.charAt(tagEnd) != '$') {
+            tagEnd++;
+        }
+        if (tagEnd >= length || sql.charAt(tagEnd) != '$' || Character.isDigit(sql.charAt(position + 1))) {
+            return tagEnd;
+        }
+        final int tagLength = tagEnd + 1 - position;
+        int closing = sql.indexOf('$', tagEnd + 1);
+        while (closing != -1) {
+            if (sql.regionMatches(closing, sql, position, tagLength)) {
+                return closing + tagLength;
+            }
+            closing = sql.indexOf('$', closing + 1);
+        }
+        return length;
+    }
+
+    /**
+     * @return the end of a possibly schema-qualified and quoted name, or {@code position} if there's no name
+     */
+    private static int qualifiedNameEnd(String sql, int position) {
+        final int length = sql.length();
+        int end = position;
+        while (end < length) {
+            final char character = sql.charAt(end);
+            final int partEnd;
+            if (character == '"') {
+                partEnd = quotedIdentifierEnd(sql, end);
+            } else if (isIdentifierStart(character)) {
+                partEnd = wordEnd(sql, end);
+            } else {
+                return end == position ? position : end - 1;
+            }
+            if (partEnd < length && sql.charAt(partEnd) == '.') {
+                end = partEnd + 1;
+            } else {
+                return partEnd;
+            }
+        }
+        return end;
+    }
+
+    static int wordEnd(String sql, int position) {
+        final int length = sql.length();
+        while (position < length && isIdentifierPart(sql.charAt(position))) {
+            position++;
+        }
+        return position;
+    }
+
+    /**
+     * Compares ASCII case-insensitively. The {@code keyword} must be in upper case.
+     */
+    static boolean isKeyword(String sql, int start, int end, String keyword) {
+        final int length = keyword.length();
+        if (end - start != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if ((sql.charAt(start + i) & ~0x20) != keyword.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Like {@link #isKeyword}, but doesn't need the end of the word. The {@code keyword} must be in upper case.
+     */
+    private static boolean startsWithKeyword(String sql, int start, String keyword) {
+        final int end = start + keyword.length();
+        if (end > sql.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if ((sql.charAt(i) & ~0x20) != keyword.charAt(i - start)) {
+                return false;
+            }
+        }
+        return end == sql.length() || !isIdentifierPart(sql.charAt(end));
+    }
+
+    private static boolean isWriteKeyword(String sql, int start, int end) {
+        for (String keyword : WRITE_KEYWORDS) {
+            if (isKeyword(sql, start, end, keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isQueryKeyword(String sql, int start, int end) {
+        for (String keyword : QUERY_KEYWORDS) {
+            if (isKeyword(sql, start, end, keyword)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isWhitespace(char character) {
+        return character < ASCII && (CHARACTER_CLASSES[character] & WHITESPACE) != 0;
+    }
+
+    static boolean isIdentifierStart(char character) {
+        if (character < ASCII) {
+            return (CHARACTER_CLASSES[character] & IDENTIFIER_START) != 0;
+        }
+        return Character.isLetter(character);
+    }
+
+    static boolean isIdentifierPart(char character) {
+        if (character < ASCII) {
+            return (CHARACTER_CLASSES[character] & IDENTIFIER_PART) != 0;
+        }
+        return Character.isLetterOrDigit(character);
+    }
+
+    private static byte[] classifyAsciiCharacters() {
+        final byte[] classes = new byte[ASCII];
+        for (char character = 0; character < ASCII; character++) {
+            if (character == ' ' || character == '\n' || character == '\t' || character == '\r' || character == '\f') {
+                classes[character] |= WHITESPACE;
+            }
+            if ((character >= 'A' && character <= 'Z') || (character >= 'a' && character <= 'z') || character == '_') {
+                classes[character] |= IDENTIFIER_START | IDENTIFIER_PART;
+            }
+            if ((character >= '0' && character <= '9') || character == '$') {
+                classes[character] |= IDENTIFIER_PART;
+            }
+        }
+        return classes;
+    }
+}
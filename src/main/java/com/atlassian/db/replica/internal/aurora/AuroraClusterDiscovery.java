@@ -2,6 +2,7 @@ package com.atlassian.db.replica.internal.aurora;
 
 import com.atlassian.db.replica.api.AuroraConnectionDetails;
 import com.atlassian.db.replica.api.Database;
+import com.atlassian.db.replica.api.ReplicaLagEstimate;
 import com.atlassian.db.replica.api.jdbc.JdbcUrl;
 import com.atlassian.db.replica.internal.NoCacheSuppliedCache;
 import com.atlassian.db.replica.internal.logs.LazyLogger;
@@ -27,6 +28,7 @@ public final class AuroraClusterDiscovery {
     private final Logger logger;
     private final LazyLogger lazyLogger;
     private final Supplier<Connection> discovererConnectionSupplier;
+    private final ReplicaLagEstimate replicaLagEstimate;
 
     private AuroraClusterDiscovery(
         ReplicaConnectionPerUrlProvider replicaConnectionPerUrlProvider,
@@ -34,7 +36,8 @@ public final class AuroraClusterDiscovery {
         String clusterUri,
         Logger logger,
         LazyLogger lazyLogger,
-        Supplier<Connection> discovererConnectionSupplier
+        Supplier<Connection> discovererConnectionSupplier,
+        ReplicaLagEstimate replicaLagEstimate
     ) {
         this.replicaConnectionPerUrlProvider = replicaConnectionPerUrlProvider;
         this.discoveredReplicasCache = discoveredReplicasCache;
@@ -42,6 +45,7 @@ public final class AuroraClusterDiscovery {
         this.logger = logger;
         this.lazyLogger = lazyLogger;
         this.discovererConnectionSupplier = discovererConnectionSupplier;
+        this.replicaLagEstimate = replicaLagEstimate;
     }
 
     public Collection<Database> getReplicas(Supplier<Connection> connectionSupplier) {
@@ -104,7 +108,8 @@ public final class AuroraClusterDiscovery {
             return new AuroraReplicasDiscoverer(
                 new AuroraJdbcUrl(AuroraEndpoint.parse(readerEndpoint), databaseName),
                 logger,
-                lazyLogger
+                lazyLogger,
+                replicaLagEstimate
             );
         } catch (SQLException exception) {
             throw new ReadReplicaDiscovererCreationException(exception);
@@ -122,7 +127,8 @@ public final class AuroraClusterDiscovery {
         return new AuroraReplicasDiscoverer(
             new AuroraJdbcUrl(AuroraEndpoint.parse(readerEndpoint), databaseName),
             logger,
-            lazyLogger
+            lazyLogger,
+            replicaLagEstimate
         );
     }
 
@@ -137,6 +143,7 @@ public final class AuroraClusterDiscovery {
         private Logger logger;
         private LazyLogger lazyLogger = new NoopLazyLogger();
         private Supplier<Connection> discovererConnectionSupplier = null;
+        private ReplicaLagEstimate replicaLagEstimate = null;
 
         public Builder replicaConnectionPerUrlProvider(ReplicaConnectionPerUrlProvider replicaConnectionPerUrlProvider) {
             this.replicaConnectionPerUrlProvider = replicaConnectionPerUrlProvider;
@@ -180,6 +187,14 @@ public final class AuroraClusterDiscovery {
             return this;
         }
 
+        /**
+         * @param replicaLagEstimate records the lag of the most outdated replica from every discovery
+         */
+        public Builder replicaLagEstimate(ReplicaLagEstimate replicaLagEstimate) {
+            this.replicaLagEstimate = replicaLagEstimate;
+            return this;
+        }
+
         /**
          * @deprecated use
          * {@link Builder#replicaConnectionPerUrlProvider(ReplicaConnectionPerUrlProvider)}{@code .}
@@ -198,7 +213,8 @@ public final class AuroraClusterDiscovery {
                 clusterUri,
                 logger,
                 lazyLogger,
-                discovererConnectionSupplier
+                discovererConnectionSupplier,
+                replicaLagEstimate
             );
         }
     }
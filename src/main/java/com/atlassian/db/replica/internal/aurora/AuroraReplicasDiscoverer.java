@@ -1,11 +1,13 @@
 package com.atlassian.db.replica.internal.aurora;
 
+import com.atlassian.db.replica.api.ReplicaLagEstimate;
 import com.atlassian.db.replica.internal.logs.LazyLogger;
 import com.atlassian.db.replica.spi.Logger;
 
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.time.Duration;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -20,11 +22,25 @@ public final class AuroraReplicasDiscoverer {
 
     private final Logger logger;
     private final LazyLogger lazyLogger;
+    private final ReplicaLagEstimate replicaLagEstimate;
 
     public AuroraReplicasDiscoverer(AuroraJdbcUrl readerUrl, Logger logger, LazyLogger lazyLogger) {
+        this(readerUrl, logger, lazyLogger, null);
+    }
+
+    /**
+     * @param replicaLagEstimate records the lag of the most outdated replica from every discovery, can be null
+     */
+    public AuroraReplicasDiscoverer(
+        AuroraJdbcUrl readerUrl,
+        Logger logger,
+        LazyLogger lazyLogger,
+        ReplicaLagEstimate replicaLagEstimate
+    ) {
         this.readerUrl = readerUrl;
         this.logger = logger;
         this.lazyLogger = lazyLogger;
+        this.replicaLagEstimate = replicaLagEstimate;
     }
 
     /**
@@ -46,6 +62,7 @@ public final class AuroraReplicasDiscoverer {
 
     private List<String> fetchReplicasServerIds(Connection connection) throws SQLException {
         List<String> ids = new LinkedList<>();
+        long maxReplicaLagInMs = -1;
         final String sql = "SELECT server_id, durable_lsn, current_read_lsn, feedback_xmin, " +
             "round(extract(milliseconds from (now()-last_update_timestamp))) as state_lag_in_msec, replica_lag_in_msec " +
             "FROM aurora_replica_status() " +
@@ -55,6 +72,9 @@ public final class AuroraReplicasDiscoverer {
             while (rs.next()) {
                 String serverId = rs.getString("server_id");
                 long replicaLagInMs = rs.getLong("replica_lag_in_msec");
+                if (!rs.wasNull()) {
+                    maxReplicaLagInMs = Math.max(maxReplicaLagInMs, replicaLagInMs);
+                }
                 long durableLsn = rs.getLong("durable_lsn");
                 long currentReadLsn = rs.getLong("current_read_lsn");
                 long feedbackXmin = rs.getLong("feedback_xmin");
@@ -73,6 +93,9 @@ public final class AuroraReplicasDiscoverer {
                 ids.add(serverId);
             }
         }
+        if (replicaLagEstimate != null && maxReplicaLagInMs >= 0) {
+            replicaLagEstimate.recordLag(Duration.ofMillis(maxReplicaLagInMs));
+        }
         return ids;
     }
 }
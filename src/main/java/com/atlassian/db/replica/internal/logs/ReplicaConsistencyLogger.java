@@ -1,8 +1,11 @@
 package com.atlassian.db.replica.internal.logs;
 
+import com.atlassian.db.replica.api.ConsistencyToken;
 import com.atlassian.db.replica.spi.ReplicaConsistency;
 
 import java.sql.Connection;
+import java.time.Duration;
+import java.util.Optional;
 import java.util.function.Supplier;
 
 import static java.lang.String.format;
@@ -49,4 +52,33 @@ public final class ReplicaConsistencyLogger implements ReplicaConsistency {
             throw e;
         }
     }
+
+    @Override
+    public boolean isConsistent(Supplier<Connection> replica, Duration maxStaleness) {
+        try {
+            final boolean consistent = delegate.isConsistent(replica, maxStaleness);
+            logger.debug(() -> format("ReplicaConsistency#isConsistent(maxStaleness=%s) = %b", maxStaleness, consistent));
+            return consistent;
+        } catch (Exception e) {
+            logger.debug(() -> format("Failed ReplicaConsistency#isConsistent(maxStaleness=%s)", maxStaleness), e);
+            throw e;
+        }
+    }
+
+    @Override
+    public boolean isConsistent(Supplier<Connection> replica, ConsistencyToken token) {
+        try {
+            final boolean consistent = delegate.isConsistent(replica, token);
+            logger.debug(() -> format("ReplicaConsistency#isConsistent(token=%s) = %b", token.encode(), consistent));
+            return consistent;
+        } catch (Exception e) {
+            logger.debug(() -> format("Failed ReplicaConsistency#isConsistent(token=%s)", token.encode()), e);
+            throw e;
+        }
+    }
+
+    @Override
+    public Optional<ConsistencyToken> exportToken() {
+        return delegate.exportToken();
+    }
 }
@@ -0,0 +1,56 @@
+package com.atlassian.db.replica.internal.state;
+
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+import com.atlassian.db.replica.spi.ConnectionProvider;
+
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Starts {@link MainConnectionHedge}s for all connections sharing it. If the latest consistency check
+ * was negative, the next one is likely to fail too, so the hedge starts right away.
+ */
+@ThreadSafe
+public final class ConnectionHedging {
+    private final ScheduledExecutorService executor;
+    private final Duration threshold;
+    private final LongAdder started;
+    private final LongAdder used;
+    private final LongAdder wasted;
+    private volatile boolean lastCheckInconsistent = false;
+
+    public ConnectionHedging(
+        ScheduledExecutorService executor,
+        Duration threshold,
+        LongAdder started,
+        LongAdder used,
+        LongAdder wasted
+    ) {
+        this.executor = executor;
+        this.threshold = threshold;
+        this.started = started;
+        this.used = used;
+        this.wasted = wasted;
+    }
+
+    MainConnectionHedge start(ConnectionProvider connectionProvider) {
+        return MainConnectionHedge.start(
+            connectionProvider,
+            executor,
+            lastCheckInconsistent ? Duration.ZERO : threshold,
+            started,
+            wasted
+        );
+    }
+
+    void recordCheck(boolean consistent) {
+        if (lastCheckInconsistent == consistent) {
+            lastCheckInconsistent = !consistent;
+        }
+    }
+
+    void recordUse() {
+        used.increment();
+    }
+}
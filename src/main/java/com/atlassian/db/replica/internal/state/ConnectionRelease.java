@@ -0,0 +1,68 @@
+package com.atlassian.db.replica.internal.state;
+
+import com.atlassian.db.replica.internal.SqlRunnable;
+import com.atlassian.db.replica.internal.logs.LazyLogger;
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+
+import java.sql.SQLException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Resets and closes connections on an executor, so the caller doesn't wait for the driver round trips.
+ * <p>
+ * At most {@code capacity} releases wait for the executor. Once they all wait, or the executor rejects
+ * the release, the caller releases the connection itself. It slows the callers down to the release pace.
+ */
+@ThreadSafe
+public final class ConnectionRelease {
+    private final Executor executor;
+    private final Semaphore capacity;
+    private final LongAdder asynchronous;
+    private final LongAdder backPressured;
+    private final LongAdder failures;
+
+    public ConnectionRelease(
+        Executor executor,
+        int capacity,
+        LongAdder asynchronous,
+        LongAdder backPressured,
+        LongAdder failures
+    ) {
+        this.executor = executor;
+        this.capacity = new Semaphore(capacity);
+        this.asynchronous = asynchronous;
+        this.backPressured = backPressured;
+        this.failures = failures;
+    }
+
+    /**
+     * @param release resets and closes the connection
+     * @param logger  reports failures of asynchronous releases, which can't reach the caller anymore
+     * @throws SQLException if the caller had to release the connection and the release failed
+     */
+    void release(SqlRunnable release, LazyLogger logger) throws SQLException {
+        if (capacity.tryAcquire()) {
+            try {
+                executor.execute(() -> {
+                    try {
+                        release.run();
+                    } catch (Exception e) {
+                        failures.increment();
+                        logger.warn(() -> "Can't release connection", e);
+                    } finally {
+                        capacity.release();
+                    }
+                });
+                asynchronous.increment();
+                return;
+            } catch (RejectedExecutionException e) {
+                capacity.release();
+            }
+        }
+        backPressured.increment();
+        release.run();
+    }
+}
@@ -4,6 +4,7 @@ import com.atlassian.db.replica.api.reason.RouteDecision;
 import com.atlassian.db.replica.internal.ConnectionParameters;
 import com.atlassian.db.replica.internal.DecisionAwareReference;
 import com.atlassian.db.replica.internal.RouteDecisionBuilder;
+import com.atlassian.db.replica.internal.RoutingHint;
 import com.atlassian.db.replica.internal.SqlRunnable;
 import com.atlassian.db.replica.internal.Warnings;
 import com.atlassian.db.replica.internal.logs.LazyLogger;
@@ -16,9 +17,13 @@ import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.util.Optional;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import static com.atlassian.db.replica.api.reason.Reason.HIGH_TRANSACTION_ISOLATION_LEVEL;
 import static com.atlassian.db.replica.api.reason.Reason.MAIN_CONNECTION_REUSE;
+import static com.atlassian.db.replica.api.reason.Reason.READ_ONLY_TRANSACTION;
+import static com.atlassian.db.replica.api.reason.Reason.REPLICA_HINT;
 import static com.atlassian.db.replica.api.reason.Reason.REPLICA_INCONSISTENT;
 import static com.atlassian.db.replica.api.reason.Reason.RO_API_CALL;
 import static com.atlassian.db.replica.api.reason.Reason.RW_API_CALL;
@@ -33,22 +38,27 @@ public final class ConnectionState {
     public static final String READ_CONNECTION = "readConnection";
     public static final String WRITE_CONNECTION = "writeConnection";
     private final ReplicaConsistency consistency;
-    private volatile Boolean isClosed = false;
+    private final AtomicReference<State> state = new AtomicReference<>(NOT_INITIALISED);
     private final ConnectionParameters parameters;
     private final Warnings warnings;
     private final StateListener stateListener;
-    private volatile boolean replicaConsistent = true;
     private final DecisionAwareReference<Connection> readConnection;
     private final DecisionAwareReference<Connection> writeConnection;
     private final LazyLogger logger;
+    private final IdleConnections idleConnections;
+    private final ConnectionProvider connectionProvider;
+    private final ConnectionHedging hedging;
+    private final ConnectionRelease release;
+    private volatile Connection hedgedMainConnection = null;
+    private volatile ReadOnlyTransaction readOnlyTransaction = null;
 
     /**
      * When we use a connection to write to the database, it becomes a 'dirty' connection.
      * The state is cleared when we commit the transaction. Currently, we use it only
      * to detect dirty connection close() and commit the transaction before closing
      * the connection.
-     * In the future we can use this state to exit `MainConnection` state and move more traffic to replicas.
-     * (see <a href="https://github.com/atlassian-labs/db-replica/blob/master/docs/dual-connection-states.png">Dual connection states</a>).
+     * It's also used to exit `MainConnection` state and move more traffic to replicas, see {@link #leaveMain()}
+     * (and <a href="https://github.com/atlassian-labs/db-replica/blob/master/docs/dual-connection-states.png">Dual connection states</a>).
      */
     private volatile boolean dirty = false;
 
@@ -66,6 +76,17 @@ public final class ConnectionState {
         return dirty;
     }
 
+    /**
+     * Keeps the main connection only for reads, like in the {@link State#COMMITED_MAIN} state, so the next read
+     * can switch to a consistent replica. Does nothing unless the state is {@link State#MAIN} and clean.
+     */
+    public void leaveMain() {
+        if (!dirty && state.compareAndSet(MAIN, COMMITED_MAIN)) {
+            logger.debug(() -> "leaveMain");
+            stateListener.transition(MAIN, COMMITED_MAIN);
+        }
+    }
+
     public ConnectionState(
         ConnectionProvider connectionProvider,
         ReplicaConsistency consistency,
@@ -73,15 +94,46 @@ public final class ConnectionState {
         Warnings warnings,
         StateListener stateListener,
         LazyLogger logger
+    ) {
+        this(connectionProvider, consistency, parameters, warnings, stateListener, logger, null, null, null, false);
+    }
+
+    /**
+     * @param idleConnections keeps the connection we switch away from, or null to close it
+     * @param hedging acquires main in parallel to slow consistency checks, or null to acquire it after them
+     * @param release closes connections off the caller thread, or null to close them on the caller thread
+     * @param threadConfined lets the connections be used without locks, by one thread at a time
+     */
+    public ConnectionState(
+        ConnectionProvider connectionProvider,
+        ReplicaConsistency consistency,
+        ConnectionParameters parameters,
+        Warnings warnings,
+        StateListener stateListener,
+        LazyLogger logger,
+        IdleConnections idleConnections,
+        ConnectionHedging hedging,
+        ConnectionRelease release,
+        boolean threadConfined
     ) {
         this.consistency = consistency;
         this.parameters = parameters;
         this.warnings = warnings;
         this.stateListener = stateListener;
         this.logger = logger;
-        this.readConnection = new DecisionAwareReference<Connection>() {
+        this.idleConnections = idleConnections;
+        this.connectionProvider = connectionProvider;
+        this.hedging = hedging;
+        this.release = release;
+        this.readConnection = new DecisionAwareReference<Connection>(threadConfined) {
             @Override
             public Connection create() throws SQLException {
+                final Connection idleReplicaConnection = reuse(
+                    idleConnections != null ? idleConnections.takeReplica() : null
+                );
+                if (idleReplicaConnection != null) {
+                    return idleReplicaConnection;
+                }
                 if (connectionProvider.isReplicaAvailable()) {
                     final Connection replicaConnection = connectionProvider.getReplicaConnection();
                     parameters.initialize(replicaConnection);
@@ -91,32 +143,62 @@ public final class ConnectionState {
                 }
             }
         };
-        this.writeConnection = new DecisionAwareReference<Connection>() {
+        this.writeConnection = new DecisionAwareReference<Connection>(threadConfined) {
             @Override
             public Connection create() throws SQLException {
-                final Connection mainConnection = connectionProvider.getMainConnection();
+                final Connection idleMainConnection = reuse(
+                    idleConnections != null ? idleConnections.takeMain() : null
+                );
+                if (idleMainConnection != null) {
+                    return idleMainConnection;
+                }
+                final Connection hedgedConnection = hedgedMainConnection;
+                hedgedMainConnection = null;
+                final Connection mainConnection = hedgedConnection != null ?
+                    hedgedConnection :
+                    connectionProvider.getMainConnection();
                 parameters.initialize(mainConnection);
                 return mainConnection;
             }
         };
     }
 
+    /**
+     * Replays the parameters, which changed while the connection was idle.
+     */
+    private Connection reuse(IdleConnections.Parked parked) throws SQLException {
+        if (parked == null) {
+            return null;
+        }
+        final Connection connection = parked.getConnection();
+        logger.debug(() -> format("Reusing idle connection %s", connection));
+        if (!parked.getSettings().equals(parameters.getSettings())) {
+            idleConnections.recordReplay();
+            parameters.initialize(connection, parked.getSettings());
+        }
+        return connection;
+    }
+
+    /**
+     * It's a single volatile read, so it's cheap enough to call for every query.
+     */
     public State getState() {
-        if (isClosed != null && isClosed) {
-            return CLOSED;
-        } else {
-            final boolean readReady = readConnection.isInitialized();
-            final boolean writeReady = writeConnection.isInitialized();
-            if (!readReady && !writeReady) {
-                return NOT_INITIALISED;
-            } else if (!replicaConsistent && writeReady) {
-                return COMMITED_MAIN;
-            } else if (writeReady) {
-                return MAIN;
-            } else {
-                return REPLICA;
+        return state.get();
+    }
+
+    /**
+     * Moves to the {@code next} state, unless the connection is closed in the meantime.
+     * Each routing call ends with at most one transition, so listeners don't see intermediate states.
+     */
+    private void transition(State next) {
+        State previous;
+        do {
+            previous = state.get();
+            if (previous.equals(next) || previous.equals(CLOSED)) {
+                return;
             }
-        }
+        } while (!state.compareAndSet(previous, next));
+        stateListener.transition(previous, next);
     }
 
     public Optional<Connection> getConnection() {
@@ -134,13 +216,8 @@ public final class ConnectionState {
      * Provides a connection that will be used for reading operation. Will use read-replica if possible.
      */
     public Connection getReadConnection(RouteDecisionBuilder decisionBuilder) throws SQLException {
-        final State stateBefore = getState();
-        final Connection connection = prepareReadConnection(decisionBuilder);
-        final State stateAfter = getState();
-        if (!stateAfter.equals(stateBefore)) {
-            stateListener.transition(stateBefore, stateAfter);
-        }
-        return connection;
+        closeExpiredConnections();
+        return prepareReadConnection(decisionBuilder);
     }
 
     /**
@@ -148,13 +225,9 @@ public final class ConnectionState {
      * main database.
      */
     public Connection getWriteConnection(RouteDecisionBuilder decisionBuilder) throws SQLException {
-        final State stateBefore = getState();
-        replicaConsistent = true;
+        closeExpiredConnections();
         final Connection connection = prepareMainConnection(decisionBuilder);
-        final State stateAfter = getState();
-        if (!stateAfter.equals(stateBefore)) {
-            stateListener.transition(stateBefore, stateAfter);
-        }
+        transition(MAIN);
         return connection;
     }
 
@@ -163,6 +236,9 @@ public final class ConnectionState {
         if (readConnection.isInitialized()) {
             if (readConnection.get(decisionBuilder).equals(mainDatabaseConnection)) {
                 readConnection.reset(); // We can release the reference. We still can close it via `writeConnection`
+            } else if (canPark()) {
+                idleConnections.parkReplica(readConnection.get(decisionBuilder), parameters.getSettings());
+                readConnection.reset();
             } else {
                 closeConnection(readConnection, decisionBuilder, READ_CONNECTION);
             }
@@ -170,6 +246,29 @@ public final class ConnectionState {
         return mainDatabaseConnection;
     }
 
+    /**
+     * A connection outside of the auto-commit mode could hold an open transaction, so we don't keep it idle.
+     */
+    private boolean canPark() {
+        return idleConnections != null && parameters.isAutoCommit();
+    }
+
+    /**
+     * @return true if the replica is unavailable, so the read connection is the main connection
+     */
+    private boolean isSharedConnection(RouteDecisionBuilder decisionBuilder) {
+        return readConnection.isInitialized()
+            && readConnection.get(decisionBuilder).equals(writeConnection.get(decisionBuilder));
+    }
+
+    private void closeExpiredConnections() throws SQLException {
+        if (idleConnections != null) {
+            for (Connection connection : idleConnections.takeExpired()) {
+                closeIdleConnection(connection);
+            }
+        }
+    }
+
     public Optional<RouteDecision> getDecision() {
         if (getState().equals(MAIN)) {
             return Optional.of(writeConnection.getFirstCause().build());
@@ -178,14 +277,28 @@ public final class ConnectionState {
         }
     }
 
+    /**
+     * Changes every time the write connection is released, so statements created on it know to recreate themselves.
+     */
+    public int getWriteGeneration() {
+        return writeConnection.getGeneration();
+    }
+
+    /**
+     * Changes every time the read connection is released, so statements created on it know to recreate themselves.
+     */
+    public int getReadGeneration() {
+        return readConnection.getGeneration();
+    }
+
     public boolean hasWriteConnection() {
         final State state = getState();
         return state.equals(MAIN) || state.equals(COMMITED_MAIN);
     }
 
     public void close() throws SQLException {
-        final State state = getState();
-        isClosed = true;
+        final State stateBefore = state.getAndSet(CLOSED);
+        final Optional<SQLException> idleConnectionsCloseException = catchException(this::closeIdleConnections);
         final Optional<SQLException> mainConnectionCloseException = catchException(() -> closeConnection(
             writeConnection,
             new RouteDecisionBuilder(RW_API_CALL),
@@ -196,11 +309,33 @@ public final class ConnectionState {
             new RouteDecisionBuilder(RO_API_CALL),
             READ_CONNECTION
         ));
-        final State stateAfter = getState();
-        if (!stateAfter.equals(state)) {
-            stateListener.transition(state, stateAfter);
+        if (!stateBefore.equals(CLOSED)) {
+            stateListener.transition(stateBefore, CLOSED);
         }
         throwExceptions(mainConnectionCloseException, replicaConnectionCloseException);
+        if (idleConnectionsCloseException.isPresent()) {
+            throw idleConnectionsCloseException.get();
+        }
+    }
+
+    private void closeIdleConnections() throws SQLException {
+        if (idleConnections != null) {
+            SQLException exception = null;
+            for (Connection connection : idleConnections.takeAll()) {
+                try {
+                    closeIdleConnection(connection);
+                } catch (SQLException e) {
+                    if (exception == null) {
+                        exception = e;
+                    } else {
+                        exception.addSuppressed(e);
+                    }
+                }
+            }
+            if (exception != null) {
+                throw exception;
+            }
+        }
     }
 
     private Optional<SQLException> catchException(SqlRunnable runnable) {
@@ -226,11 +361,14 @@ public final class ConnectionState {
         }
     }
 
+    /**
+     * Can be called from any thread, even if the connection is thread-confined.
+     */
     public void abort(Executor executor) throws SQLException {
-        isClosed = true;
-        final Optional<Connection> connection = getConnection();
-        if (connection.isPresent()) {
-            connection.get().abort(executor);
+        final Connection connection = getState().equals(REPLICA) ? readConnection.peek() : writeConnection.peek();
+        state.set(CLOSED);
+        if (connection != null) {
+            connection.abort(executor);
         }
     }
 
@@ -240,34 +378,140 @@ public final class ConnectionState {
     private Connection prepareReadConnection(RouteDecisionBuilder decisionBuilder) throws SQLException {
         if (parameters.getTransactionIsolation() != null && parameters.getTransactionIsolation() > Connection.TRANSACTION_READ_COMMITTED) {
             decisionBuilder.reason(HIGH_TRANSACTION_ISOLATION_LEVEL);
-            return prepareMainConnection(decisionBuilder);
+            final Connection connection = prepareMainConnection(decisionBuilder);
+            if (!getState().equals(COMMITED_MAIN)) {
+                transition(MAIN);
+            }
+            return connection;
         }
         if (getState().equals(MAIN)) {
             decisionBuilder.reason(MAIN_CONNECTION_REUSE);
             decisionBuilder.cause(writeConnection.getFirstCause().build());
             return writeConnection.get(decisionBuilder);
         }
+        final RoutingHint hint = decisionBuilder.getHint();
+        if (hint != null && hint.isReplica()) {
+            decisionBuilder.reason(REPLICA_HINT);
+            return prepareReplicaConnection(decisionBuilder);
+        }
+        final Connection readOnlyTransactionConnection = continueReadOnlyTransaction(decisionBuilder);
+        if (readOnlyTransactionConnection != null) {
+            return readOnlyTransactionConnection;
+        }
+        final boolean startsReadOnlyTransaction = isReadOnlyTransaction();
+        final HedgingReplicaSupplier replica = new HedgingReplicaSupplier(decisionBuilder, canHedge());
         boolean isConsistent;
         try {
-            isConsistent = consistency.isConsistent(() -> readConnection.get(decisionBuilder));
+            if (hint != null && hint.getMaxStaleness() != null) {
+                isConsistent = consistency.isConsistent(replica, hint.getMaxStaleness());
+            } else {
+                isConsistent = consistency.isConsistent(replica);
+            }
         } catch (Exception e) {
+            replica.abandonHedge();
             closeConnection(readConnection, decisionBuilder, READ_CONNECTION);
             throw e;
         }
+        if (replica.canHedge) {
+            hedging.recordCheck(isConsistent);
+        }
+        final MainConnectionHedge hedge = replica.hedge;
         if (isConsistent) {
-            if (getState().equals(COMMITED_MAIN)) {
-                closeConnection(writeConnection, decisionBuilder, WRITE_CONNECTION);
+            if (hedge != null) {
+                hedge.abandon();
+            }
+            if (hint != null) {
+                decisionBuilder.reason(REPLICA_HINT);
+            } else if (startsReadOnlyTransaction) {
+                decisionBuilder.reason(READ_ONLY_TRANSACTION);
+            }
+            final Connection connection = prepareReplicaConnection(decisionBuilder);
+            if (startsReadOnlyTransaction) {
+                readOnlyTransaction = new ReadOnlyTransaction(decisionBuilder.build(), true);
             }
-            final Connection connection = readConnection.get(decisionBuilder);
-            replicaConsistent = true;
             return connection;
         } else {
-            replicaConsistent = false;
             decisionBuilder.reason(REPLICA_INCONSISTENT);
-            return prepareMainConnection(decisionBuilder);
+            if (hedge != null) {
+                useHedgedMainConnection(hedge);
+            }
+            final Connection connection = prepareMainConnection(decisionBuilder);
+            transition(COMMITED_MAIN);
+            if (startsReadOnlyTransaction) {
+                readOnlyTransaction = new ReadOnlyTransaction(decisionBuilder.build(), false);
+            }
+            return connection;
         }
     }
 
+    private boolean isReadOnlyTransaction() {
+        return parameters.isReadOnly() && !parameters.isAutoCommit();
+    }
+
+    /**
+     * Reads in a read-only transaction use the connection chosen by its first read, without checking the consistency
+     * again, so they see a single snapshot.
+     *
+     * @return the connection of the read-only transaction, or null if there's no such transaction
+     */
+    private Connection continueReadOnlyTransaction(RouteDecisionBuilder decisionBuilder) {
+        final ReadOnlyTransaction transaction = readOnlyTransaction;
+        if (transaction == null || !isReadOnlyTransaction()) {
+            return null;
+        }
+        if (transaction.isOnReplica() && getState().equals(REPLICA)) {
+            decisionBuilder.reason(READ_ONLY_TRANSACTION);
+            decisionBuilder.cause(transaction.getDecision());
+            return readConnection.get(decisionBuilder);
+        }
+        if (!transaction.isOnReplica() && getState().equals(COMMITED_MAIN)) {
+            decisionBuilder.reason(MAIN_CONNECTION_REUSE);
+            decisionBuilder.cause(transaction.getDecision());
+            return writeConnection.get(decisionBuilder);
+        }
+        return null;
+    }
+
+    /**
+     * Lets the next read-only transaction check the consistency again. Call it, once the transaction ends.
+     */
+    public void endReadOnlyTransaction() {
+        readOnlyTransaction = null;
+    }
+
+    /**
+     * @return false if hedging is off or there's main connection already
+     */
+    private boolean canHedge() {
+        if (hedging == null || writeConnection.isInitialized()) {
+            return false;
+        }
+        return idleConnections == null || !idleConnections.hasMain();
+    }
+
+    private void useHedgedMainConnection(MainConnectionHedge hedge) throws SQLException {
+        final Connection connection = hedge.join();
+        if (connection != null) {
+            logger.debug(() -> format("Using hedged main connection %s", connection));
+            hedging.recordUse();
+            hedgedMainConnection = connection;
+        }
+    }
+
+    private Connection prepareReplicaConnection(RouteDecisionBuilder decisionBuilder) throws SQLException {
+        if (getState().equals(COMMITED_MAIN)) {
+            if (canPark() && !isSharedConnection(decisionBuilder)) {
+                idleConnections.parkMain(writeConnection.get(decisionBuilder), parameters.getSettings());
+                writeConnection.reset();
+            } else {
+                closeConnection(writeConnection, decisionBuilder, WRITE_CONNECTION);
+            }
+        }
+        final Connection connection = readConnection.get(decisionBuilder);
+        transition(writeConnection.isInitialized() ? MAIN : REPLICA);
+        return connection;
+    }
+
     private void closeConnection(
         DecisionAwareReference<Connection> connectionReference,
         RouteDecisionBuilder decisionBuilder,
@@ -286,11 +530,39 @@ public final class ConnectionState {
             return;
         }
         try {
-            try {
-                warnings.saveWarning(connection.getWarnings());
-            } catch (Exception e) {
-                warnings.saveWarning(new SQLWarning(e));
-            }
+            closePhysicalConnection(connection, closeConnectionLogger);
+        } finally {
+            connectionReference.reset();
+        }
+    }
+
+    private void closeIdleConnection(Connection connection) throws SQLException {
+        final TaggedLogger closeConnectionLogger = new TaggedLogger("connectionType", "idleConnection", logger);
+        closeConnectionLogger.debug(() -> "Closing idle connection");
+        if (!connection.isClosed()) {
+            closePhysicalConnection(connection, closeConnectionLogger);
+        }
+    }
+
+    /**
+     * Saves the warnings before the connection is released, so they're visible right after a switch or close,
+     * even if the release happens later.
+     */
+    private void closePhysicalConnection(Connection connection, TaggedLogger closeConnectionLogger) throws SQLException {
+        try {
+            warnings.saveWarning(connection.getWarnings());
+        } catch (Exception e) {
+            warnings.saveWarning(new SQLWarning(e));
+        }
+        if (release != null) {
+            release.release(() -> resetAndClose(connection, closeConnectionLogger), closeConnectionLogger);
+        } else {
+            resetAndClose(connection, closeConnectionLogger);
+        }
+    }
+
+    private void resetAndClose(Connection connection, TaggedLogger closeConnectionLogger) throws SQLException {
+        try {
             if (connection.isReadOnly()) {
                 closeConnectionLogger.debug(() -> format("Closing connection(%s) setAutoCommit(true)", connection));
                 connection.setAutoCommit(true);
@@ -298,10 +570,56 @@ public final class ConnectionState {
                 connection.setReadOnly(false);
             }
         } finally {
-            connectionReference.reset();
             closeConnectionLogger.debug(() -> format("Closing connection(%s) close()", connection));
             connection.close();
         }
     }
 
+    /**
+     * Supplies the replica connection to a consistency check and starts the hedge racing the check on the first
+     * call, so checks, which don't touch the replica, e.g. the in-memory ones, don't schedule hedges.
+     */
+    private final class HedgingReplicaSupplier implements Supplier<Connection> {
+        private final RouteDecisionBuilder decisionBuilder;
+        private final boolean canHedge;
+        private volatile MainConnectionHedge hedge = null;
+
+        private HedgingReplicaSupplier(RouteDecisionBuilder decisionBuilder, boolean canHedge) {
+            this.decisionBuilder = decisionBuilder;
+            this.canHedge = canHedge;
+        }
+
+        @Override
+        public Connection get() {
+            if (canHedge && hedge == null) {
+                hedge = hedging.start(connectionProvider);
+            }
+            return readConnection.get(decisionBuilder);
+        }
+
+        private void abandonHedge() {
+            final MainConnectionHedge hedge = this.hedge;
+            if (hedge != null) {
+                hedge.abandon();
+            }
+        }
+    }
+
+    private static final class ReadOnlyTransaction {
+        private final RouteDecision decision;
+        private final boolean onReplica;
+
+        private ReadOnlyTransaction(RouteDecision decision, boolean onReplica) {
+            this.decision = decision;
+            this.onReplica = onReplica;
+        }
+
+        RouteDecision getDecision() {
+            return decision;
+        }
+
+        boolean isOnReplica() {
+            return onReplica;
+        }
+    }
 }
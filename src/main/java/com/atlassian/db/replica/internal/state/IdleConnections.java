@@ -0,0 +1,151 @@
+package com.atlassian.db.replica.internal.state;
+
+import com.atlassian.db.replica.internal.ConnectionSettings;
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+
+import java.sql.Connection;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps the connections, which {@link ConnectionState} switched away from, open. It can switch back to them
+ * without acquiring and initializing new ones. A connection is closed once it's idle for longer than
+ * the idle timeout.
+ */
+@ThreadSafe
+public final class IdleConnections {
+    private final Clock clock;
+    private final Duration idleTimeout;
+    private final LongAdder parks;
+    private final LongAdder reuses;
+    private final LongAdder replays;
+    private final LongAdder idleCloses;
+    private Parked replica = null;
+    private Parked main = null;
+
+    public IdleConnections(
+        Clock clock,
+        Duration idleTimeout,
+        LongAdder parks,
+        LongAdder reuses,
+        LongAdder replays,
+        LongAdder idleCloses
+    ) {
+        this.clock = clock;
+        this.idleTimeout = idleTimeout;
+        this.parks = parks;
+        this.reuses = reuses;
+        this.replays = replays;
+        this.idleCloses = idleCloses;
+    }
+
+    synchronized void parkReplica(Connection connection, ConnectionSettings settings) {
+        replica = park(connection, settings);
+    }
+
+    synchronized void parkMain(Connection connection, ConnectionSettings settings) {
+        main = park(connection, settings);
+    }
+
+    private Parked park(Connection connection, ConnectionSettings settings) {
+        parks.increment();
+        return new Parked(connection, settings, clock.instant());
+    }
+
+    synchronized boolean hasMain() {
+        return main != null;
+    }
+
+    /**
+     * @return the parked replica connection, or null if there's none
+     */
+    synchronized Parked takeReplica() {
+        final Parked taken = replica;
+        replica = null;
+        return reuse(taken);
+    }
+
+    /**
+     * @return the parked main connection, or null if there's none
+     */
+    synchronized Parked takeMain() {
+        final Parked taken = main;
+        main = null;
+        return reuse(taken);
+    }
+
+    private Parked reuse(Parked taken) {
+        if (taken != null) {
+            reuses.increment();
+        }
+        return taken;
+    }
+
+    void recordReplay() {
+        replays.increment();
+    }
+
+    /**
+     * @return the connections idle for longer than the idle timeout, which the caller has to close
+     */
+    synchronized List<Connection> takeExpired() {
+        final List<Connection> expired = new ArrayList<>(2);
+        if (replica == null && main == null) {
+            return expired;
+        }
+        final Instant deadline = clock.instant().minus(idleTimeout);
+        if (replica != null && replica.parkedAt.isBefore(deadline)) {
+            expired.add(replica.connection);
+            replica = null;
+        }
+        if (main != null && main.parkedAt.isBefore(deadline)) {
+            expired.add(main.connection);
+            main = null;
+        }
+        idleCloses.add(expired.size());
+        return expired;
+    }
+
+    /**
+     * @return all parked connections, which the caller has to close
+     */
+    synchronized List<Connection> takeAll() {
+        final List<Connection> all = new ArrayList<>(2);
+        if (replica != null) {
+            all.add(replica.connection);
+            replica = null;
+        }
+        if (main != null) {
+            all.add(main.connection);
+            main = null;
+        }
+        return all;
+    }
+
+    static final class Parked {
+        private final Connection connection;
+        private final ConnectionSettings settings;
+        private final Instant parkedAt;
+
+        private Parked(Connection connection, ConnectionSettings settings, Instant parkedAt) {
+            this.connection = connection;
+            this.settings = settings;
+            this.parkedAt = parkedAt;
+        }
+
+        Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * @return the settings applied to the connection
+         */
+        ConnectionSettings getSettings() {
+            return settings;
+        }
+    }
+}
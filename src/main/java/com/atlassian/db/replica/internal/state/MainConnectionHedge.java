@@ -0,0 +1,133 @@
+package com.atlassian.db.replica.internal.state;
+
+import com.atlassian.db.replica.internal.util.ThreadSafe;
+import com.atlassian.db.replica.spi.ConnectionProvider;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Acquires a main connection in the background, while a consistency check decides if a read can use a replica.
+ * <p>
+ * The acquisition starts once the check takes longer than a threshold. If the replica wins, the main connection
+ * is closed in the background too, so the caller doesn't wait for it.
+ */
+@ThreadSafe
+public final class MainConnectionHedge {
+    private static final int PENDING = 0;
+    private static final int ACQUIRING = 1;
+    private static final int ACQUIRED = 2;
+    private static final int ABANDONED = 3;
+    private final ConnectionProvider connectionProvider;
+    private final ScheduledExecutorService executor;
+    private final LongAdder started;
+    private final LongAdder wasted;
+    private final AtomicInteger progress = new AtomicInteger(PENDING);
+    private final CompletableFuture<Connection> connection = new CompletableFuture<>();
+    private volatile ScheduledFuture<?> acquisition;
+
+    private MainConnectionHedge(
+        ConnectionProvider connectionProvider,
+        ScheduledExecutorService executor,
+        LongAdder started,
+        LongAdder wasted
+    ) {
+        this.connectionProvider = connectionProvider;
+        this.executor = executor;
+        this.started = started;
+        this.wasted = wasted;
+    }
+
+    static MainConnectionHedge start(
+        ConnectionProvider connectionProvider,
+        ScheduledExecutorService executor,
+        Duration threshold,
+        LongAdder started,
+        LongAdder wasted
+    ) {
+        final MainConnectionHedge hedge = new MainConnectionHedge(connectionProvider, executor, started, wasted);
+        hedge.acquisition = executor.schedule(hedge::acquire, threshold.toNanos(), NANOSECONDS);
+        return hedge;
+    }
+
+    private void acquire() {
+        if (!progress.compareAndSet(PENDING, ACQUIRING)) {
+            return;
+        }
+        started.increment();
+        final Connection mainConnection;
+        try {
+            mainConnection = connectionProvider.getMainConnection();
+        } catch (Throwable e) {
+            connection.completeExceptionally(e);
+            return;
+        }
+        if (progress.compareAndSet(ACQUIRING, ACQUIRED)) {
+            connection.complete(mainConnection);
+        } else {
+            release(mainConnection);
+        }
+    }
+
+    /**
+     * Waits for the main connection, if its acquisition already started.
+     *
+     * @return the main connection, or null if the acquisition didn't start, so the caller has to acquire it
+     */
+    Connection join() throws SQLException {
+        if (progress.compareAndSet(PENDING, ABANDONED)) {
+            acquisition.cancel(false);
+            return null;
+        }
+        try {
+            return connection.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            abandon();
+            throw new SQLException("Interrupted while waiting for the main connection", e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new SQLException("Can't acquire the main connection", cause);
+        }
+    }
+
+    /**
+     * Gives up the main connection without waiting for it. It's released in the background, or right away if
+     * the executor rejects it, e.g. when it's shut down.
+     */
+    void abandon() {
+        final int previous = progress.getAndSet(ABANDONED);
+        if (previous == PENDING) {
+            acquisition.cancel(false);
+        } else if (previous == ACQUIRED) {
+            final Connection mainConnection = connection.getNow(null);
+            try {
+                executor.execute(() -> release(mainConnection));
+            } catch (RejectedExecutionException e) {
+                release(mainConnection);
+            }
+        }
+    }
+
+    private void release(Connection mainConnection) {
+        wasted.increment();
+        try {
+            mainConnection.close();
+        } catch (Exception ignored) {
+            // The connection is unused, so there's nothing to recover.
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.atlassian.db.replica.spi;
+
+import java.util.Collection;
+
+/**
+ * Persists the shapes of SQL, which replicas rejected as writes, so the learning survives restarts. It gets only
+ * their fingerprints, never the SQL itself, so literals in the SQL don't leak into the store.
+ */
+public interface LearnedWritesStore {
+
+    /**
+     * @return fingerprints learned before, not null
+     */
+    Collection<Long> load();
+
+    /**
+     * Called once for every newly learned SQL shape, on the thread which executed the SQL. It shouldn't throw.
+     *
+     * @param fingerprint the shape of the SQL rejected by a replica
+     */
+    void save(long fingerprint);
+}
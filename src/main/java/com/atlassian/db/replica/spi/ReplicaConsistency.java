@@ -1,8 +1,11 @@
 package com.atlassian.db.replica.spi;
 
+import com.atlassian.db.replica.api.ConsistencyToken;
 import com.atlassian.db.replica.internal.util.ThreadSafe;
 
 import java.sql.Connection;
+import java.time.Duration;
+import java.util.Optional;
 import java.util.function.Supplier;
 
 /**
@@ -37,4 +40,37 @@ public interface ReplicaConsistency {
      * @return true if {@code replica} is consistent with main
      */
     boolean isConsistent(Supplier<Connection> replica);
+
+    /**
+     * Judges if {@code replica} is ready to be queried by a read, which tolerates missing the writes done
+     * in the last {@code maxStaleness}. By default, it doesn't tolerate missing any writes.
+     *
+     * @param replica      connects to the replica database
+     * @param maxStaleness how far the replica can lag behind main
+     * @return true if {@code replica} lags behind main by at most {@code maxStaleness}
+     */
+    default boolean isConsistent(Supplier<Connection> replica, Duration maxStaleness) {
+        return isConsistent(replica);
+    }
+
+    /**
+     * Judges if {@code replica} is ready to be queried by a read, which has to see the write from {@code token},
+     * e.g. done on another node. By default, it ignores the token.
+     *
+     * @param replica connects to the replica database
+     * @param token   the position of a write, e.g. from another node
+     * @return true if {@code replica} caught up with the {@code token}
+     */
+    default boolean isConsistent(Supplier<Connection> replica, ConsistencyToken token) {
+        return isConsistent(replica);
+    }
+
+    /**
+     * Exports the position of the last write, so reads on other nodes can see it. By default, there's no token.
+     *
+     * @return the token of the last known write, or empty if it's unknown
+     */
+    default Optional<ConsistencyToken> exportToken() {
+        return Optional.empty();
+    }
 }
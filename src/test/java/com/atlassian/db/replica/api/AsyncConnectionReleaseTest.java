@@ -0,0 +1,88 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.api.mocks.ConnectionProviderMock;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.atlassian.db.replica.api.Queries.SIMPLE_QUERY;
+import static com.atlassian.db.replica.api.mocks.CircularConsistency.permanentConsistency;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doThrow;
+
+public class AsyncConnectionReleaseTest {
+    private final List<Runnable> releases = new ArrayList<>();
+
+    @Test
+    public void shouldReleaseConnectionOnExecutor() throws SQLException {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final AsyncConnectionRelease release = AsyncConnectionRelease.builder(releases::add).build();
+        final Connection connection = connection(connectionProvider, release);
+
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+        connection.prepareStatement(SIMPLE_QUERY).executeUpdate();
+        final Connection replica = connectionProvider.getProvidedConnections().get(0);
+
+        assertThat(replica.isClosed()).isFalse();
+        assertThat(release.getAsynchronousCount()).isEqualTo(1);
+        releases.forEach(Runnable::run);
+        assertThat(replica.isClosed()).isTrue();
+    }
+
+    @Test
+    public void shouldKeepWarningsOfReleasedConnection() throws SQLException {
+        final SQLWarning replicaWarning = new SQLWarning("Replica warning");
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock(true, null, replicaWarning);
+        final AsyncConnectionRelease release = AsyncConnectionRelease.builder(releases::add).build();
+        final Connection connection = connection(connectionProvider, release);
+
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+        connection.prepareStatement(SIMPLE_QUERY).executeUpdate();
+
+        assertThat((Throwable) connection.getWarnings()).isEqualTo(replicaWarning);
+    }
+
+    @Test
+    public void shouldReleaseOnCallerThreadWhenQueueIsFull() throws SQLException {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final AsyncConnectionRelease release = AsyncConnectionRelease.builder(releases::add)
+            .queueCapacity(1)
+            .build();
+        final Connection connection = connection(connectionProvider, release);
+
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+        connection.prepareStatement(SIMPLE_QUERY).executeUpdate();
+        connection.close();
+
+        final Connection main = connectionProvider.getProvidedConnections().get(1);
+        assertThat(main.isClosed()).isTrue();
+        assertThat(release.getAsynchronousCount()).isEqualTo(1);
+        assertThat(release.getBackPressureCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldCountFailedReleases() throws SQLException {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final AsyncConnectionRelease release = AsyncConnectionRelease.builder(Runnable::run).build();
+        final Connection connection = connection(connectionProvider, release);
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+        doThrow(new SQLException("Broken connection")).when(connectionProvider.singleProvidedConnection()).close();
+
+        connection.close();
+
+        assertThat(release.getFailureCount()).isEqualTo(1);
+    }
+
+    private Connection connection(
+        ConnectionProviderMock connectionProvider,
+        AsyncConnectionRelease release
+    ) throws SQLException {
+        return DualConnection.builder(connectionProvider, permanentConsistency().build())
+            .asyncConnectionRelease(release)
+            .build();
+    }
+}
@@ -125,6 +125,49 @@ class AuroraMultiReplicaConsistencyTest {
         }
     }
 
+    @Test
+    void shouldCheckTokenOnEveryReplica() throws SQLException {
+        //given
+        final SuppliedCache discoveredReplicasCache = mock(SuppliedCache.class);
+        Collection<Connection> replicas = mockReplicaConnections(3, discoveredReplicasCache);
+        final ConsistencyToken lastWrite = ConsistencyToken.ofLsn(100);
+        sut = AuroraMultiReplicaConsistency.builder().replicaConsistency(new ReplicaConsistency() {
+            @Override
+            public void write(Connection main) {
+
+            }
+
+            @Override
+            public boolean isConsistent(Supplier<Connection> replica) {
+                return true;
+            }
+
+            @Override
+            public boolean isConsistent(Supplier<Connection> replica, ConsistencyToken token) {
+                replica.get();
+                return token.getLsn().orElse(0L) <= 100;
+            }
+
+            @Override
+            public Optional<ConsistencyToken> exportToken() {
+                return Optional.of(lastWrite);
+            }
+        }).discoveredReplicasCache(discoveredReplicasCache).build();
+
+        //when
+        boolean consistentWithOlderWrite = sut.isConsistent(() -> supplierConnection, ConsistencyToken.ofLsn(50));
+        boolean consistentWithNewerWrite = sut.isConsistent(() -> supplierConnection, ConsistencyToken.ofLsn(200));
+
+        //then
+        assertThat(consistentWithOlderWrite).isTrue();
+        assertThat(consistentWithNewerWrite).isFalse();
+        assertThat(sut.exportToken()).contains(lastWrite);
+        assertThat(replicas).hasSize(4);
+        for (Connection replica : replicas) {
+            verify(replica).close();
+        }
+    }
+
     @Test
     void shouldNotOpenConnectionIfNotNeeded() {
         //given
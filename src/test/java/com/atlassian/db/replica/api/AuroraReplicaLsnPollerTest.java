@@ -0,0 +1,113 @@
+package com.atlassian.db.replica.api;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.threeten.extra.MutableClock;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AuroraReplicaLsnPollerTest {
+    private static final long LAST_WRITE_LSN = 8679792506L;
+    private final MutableClock clock = MutableClock.epochUTC();
+    private final ScheduledExecutorService executor = mock(ScheduledExecutorService.class, RETURNS_MOCKS);
+    private final AtomicInteger replicaQueries = new AtomicInteger();
+    private final Connection polledReplica = mock(Connection.class);
+    private final Connection replica = mock(Connection.class);
+    private final Supplier<Connection> replicaSupplier = () -> {
+        replicaQueries.incrementAndGet();
+        return replica;
+    };
+    private final AuroraReplicaLsnPoller poller = AuroraReplicaLsnPoller.builder(() -> polledReplica)
+        .executor(executor)
+        .maxStaleness(Duration.ofSeconds(1))
+        .measureTime(clock)
+        .build();
+    private final AuroraPostgresLsnReplicaConsistency consistency = new AuroraPostgresLsnReplicaConsistency.Builder()
+        .replicaLsnPoller(poller)
+        .build();
+
+    @BeforeEach
+    public void writeToMain() throws SQLException {
+        final Connection main = mock(Connection.class);
+        mockLsnFetching(main, LAST_WRITE_LSN);
+        consistency.write(main);
+    }
+
+    @Test
+    public void shouldBeConsistentWithoutQueryingReplica() throws SQLException {
+        mockLsnFetching(polledReplica, LAST_WRITE_LSN);
+        poller.poll();
+
+        assertThat(consistency.isConsistent(replicaSupplier)).isTrue();
+        assertThat(replicaQueries).hasValue(0);
+    }
+
+    @Test
+    public void shouldBeInconsistentWithoutQueryingReplica() throws SQLException {
+        mockLsnFetching(polledReplica, LAST_WRITE_LSN - 1);
+        poller.poll();
+        clock.add(Duration.ofMillis(500));
+
+        assertThat(consistency.isConsistent(replicaSupplier)).isFalse();
+        assertThat(replicaQueries).hasValue(0);
+        assertThat(poller.getStaleness()).contains(Duration.ofMillis(500));
+    }
+
+    @Test
+    public void shouldFallBackWhenPollerFallsBehind() throws SQLException {
+        mockLsnFetching(polledReplica, LAST_WRITE_LSN - 1);
+        mockLsnFetching(replica, LAST_WRITE_LSN);
+        poller.poll();
+        clock.add(Duration.ofSeconds(2));
+
+        assertThat(poller.isUpToDate()).isFalse();
+        assertThat(consistency.isConsistent(replicaSupplier)).isTrue();
+        assertThat(replicaQueries).hasValue(1);
+        assertThat(poller.getFallbackCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldFallBackBeforeFirstPoll() throws SQLException {
+        mockLsnFetching(replica, LAST_WRITE_LSN);
+
+        assertThat(consistency.isConsistent(replicaSupplier)).isTrue();
+        assertThat(poller.getStaleness()).isEmpty();
+        assertThat(poller.getFallbackCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldKeepLastLsnWhenPollFails() throws SQLException {
+        mockLsnFetching(polledReplica, LAST_WRITE_LSN);
+        poller.poll();
+        clock.add(Duration.ofSeconds(5));
+        when(polledReplica.prepareStatement(anyString())).thenThrow(new SQLException("Replica is down"));
+
+        poller.poll();
+
+        assertThat(poller.getReplicaLsn()).contains(LAST_WRITE_LSN);
+        assertThat(poller.getStaleness()).contains(Duration.ofSeconds(5));
+        assertThat(poller.getPollCount()).isEqualTo(1);
+        assertThat(poller.getFailureCount()).isEqualTo(1);
+    }
+
+    private void mockLsnFetching(Connection connection, long lsn) throws SQLException {
+        final PreparedStatement preparedStatement = mock(PreparedStatement.class);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        final ResultSet resultSet = mock(ResultSet.class);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.getLong("lsn")).thenReturn(lsn);
+    }
+}
@@ -0,0 +1,136 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.api.mocks.ConnectionProviderMock;
+import com.atlassian.db.replica.spi.ReplicaConsistency;
+import org.junit.jupiter.api.Test;
+import org.threeten.extra.MutableClock;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static com.atlassian.db.replica.api.Queries.SIMPLE_QUERY;
+import static com.atlassian.db.replica.api.mocks.ConnectionProviderMock.ConnectionType.MAIN;
+import static com.atlassian.db.replica.api.mocks.ConnectionProviderMock.ConnectionType.REPLICA;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class ConsistencyTokenTest {
+    private static final Duration MAX_PROPAGATION = Duration.ofMillis(100);
+    private final MutableClock clock = MutableClock.of(Instant.parse("2026-10-18T10:00:00Z"), ZoneOffset.UTC);
+    private final ReplicaConsistency consistency = new PessimisticPropagationConsistency.Builder()
+        .assumeMaxPropagation(MAX_PROPAGATION)
+        .measureTime(clock)
+        .build();
+
+    @Test
+    public void shouldEncodeShortly() {
+        final ConsistencyToken token = ConsistencyToken.ofLsn(8679792506L)
+            .merge(ConsistencyToken.ofTimestamp(clock.instant()));
+
+        final String encoded = token.encode();
+
+        assertThat(encoded).matches("[a-z0-9.]{1,32}");
+        assertThat(ConsistencyToken.decode(encoded)).isEqualTo(token);
+        assertThat(token.getLsn()).contains(8679792506L);
+        assertThat(token.getTimestamp()).contains(clock.instant());
+    }
+
+    @Test
+    public void shouldRoundTimestampUp() {
+        final Instant write = clock.instant().plusNanos(1);
+
+        final ConsistencyToken token = ConsistencyToken.decode(ConsistencyToken.ofTimestamp(write).encode());
+
+        assertThat(token.getTimestamp()).contains(clock.instant().plusMillis(1));
+    }
+
+    @Test
+    public void shouldMergeLaterPositions() {
+        final ConsistencyToken merged = ConsistencyToken.ofLsn(5)
+            .merge(ConsistencyToken.ofLsn(3))
+            .merge(ConsistencyToken.ofTimestamp(clock.instant()));
+
+        assertThat(merged).isEqualTo(ConsistencyToken.ofLsn(5).merge(ConsistencyToken.ofTimestamp(clock.instant())));
+    }
+
+    @Test
+    public void shouldRejectMalformedTokens() {
+        assertThatThrownBy(() -> ConsistencyToken.decode("")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ConsistencyToken.decode("x12")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ConsistencyToken.decode("l12.l13")).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> ConsistencyToken.decode("l!")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void shouldExportLastWrite() {
+        consistency.write(null);
+
+        assertThat(consistency.exportToken()).contains(ConsistencyToken.ofTimestamp(clock.instant()));
+    }
+
+    @Test
+    public void shouldReadFromReplicaWhenTokenPropagated() throws SQLException {
+        final ConsistencyToken token = ConsistencyToken.ofTimestamp(clock.instant());
+        clock.add(MAX_PROPAGATION.multipliedBy(2));
+        consistency.write(null);
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+
+        try (Connection connection = DualConnection.builder(connectionProvider, consistency)
+            .consistencyToken(token)
+            .build()) {
+            connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+        }
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(REPLICA);
+    }
+
+    @Test
+    public void shouldReadFromMainWhenTokenNotPropagated() throws SQLException {
+        clock.add(MAX_PROPAGATION.multipliedBy(2));
+        final ConsistencyToken token = ConsistencyToken.ofTimestamp(clock.instant());
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+
+        try (Connection connection = DualConnection.builder(connectionProvider, consistency)
+            .consistencyToken(token)
+            .build()) {
+            connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+        }
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(MAIN);
+    }
+
+    @Test
+    public void shouldReadFromMainWhenTokenNotPropagatedDespiteStalenessHint() throws SQLException {
+        clock.add(MAX_PROPAGATION.multipliedBy(2));
+        final ConsistencyToken token = ConsistencyToken.ofTimestamp(clock.instant());
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+
+        try (Connection connection = DualConnection.builder(connectionProvider, consistency)
+            .consistencyToken(token)
+            .build()) {
+            connection.prepareStatement("/*+ db-replica:max-staleness=1s */ " + SIMPLE_QUERY).executeQuery();
+        }
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(MAIN);
+    }
+
+    @Test
+    public void shouldSeeOwnWritesDespiteToken() throws SQLException {
+        final ConsistencyToken token = ConsistencyToken.ofTimestamp(clock.instant());
+        clock.add(MAX_PROPAGATION.multipliedBy(2));
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+
+        try (Connection connection = DualConnection.builder(connectionProvider, consistency)
+            .consistencyToken(token)
+            .leaveMainAfterCommit()
+            .build()) {
+            connection.prepareStatement(SIMPLE_QUERY).executeUpdate();
+            connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+        }
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(MAIN);
+    }
+}
@@ -0,0 +1,211 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.api.mocks.ConnectionProviderMock;
+import com.atlassian.db.replica.internal.SqlFingerprint;
+import com.atlassian.db.replica.spi.LearnedWritesStore;
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static com.atlassian.db.replica.api.mocks.CircularConsistency.permanentConsistency;
+import static com.atlassian.db.replica.api.mocks.ConnectionProviderMock.ConnectionType.MAIN;
+import static com.atlassian.db.replica.api.mocks.ConnectionProviderMock.ConnectionType.REPLICA;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LearnedWritesTest {
+    private static final String SQL = "SELECT audited_read(?)";
+    private final List<Long> savedWrites = new ArrayList<>();
+    private final LearnedWrites learnedWrites = LearnedWrites.builder().build();
+
+    @Test
+    public void shouldRetryRejectedReadOnMain() throws SQLException {
+        final RejectingReplicaProvider connectionProvider = new RejectingReplicaProvider("25006");
+        final PreparedStatement statement = connection(connectionProvider, learnedWrites).prepareStatement(SQL);
+        statement.setString(1, "key");
+
+        statement.executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(REPLICA, MAIN);
+        final PreparedStatement mainStatement = (PreparedStatement) connectionProvider.getPreparedStatements().get(1);
+        verify(mainStatement).setString(1, "key");
+        verify(mainStatement).executeQuery();
+        assertThat(learnedWrites.getLearnCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRouteLearnedWritesToMain() throws SQLException {
+        connection(new RejectingReplicaProvider("25006"), learnedWrites).prepareStatement(SQL).executeQuery();
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+
+        connection(connectionProvider, learnedWrites).prepareStatement(SQL).executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsOnly(MAIN);
+        assertThat(learnedWrites.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotRetryOtherFailures() throws SQLException {
+        final RejectingReplicaProvider connectionProvider = new RejectingReplicaProvider("42P01");
+
+        final Throwable throwable = catchThrowable(
+            () -> connection(connectionProvider, learnedWrites).prepareStatement(SQL).executeQuery()
+        );
+
+        assertThat(throwable).isInstanceOf(SQLException.class);
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsOnly(REPLICA);
+        assertThat(learnedWrites.size()).isZero();
+    }
+
+    @Test
+    public void shouldSaveAndLoadLearnedWrites() throws SQLException {
+        final LearnedWritesStore store = new ListStore();
+        connection(new RejectingReplicaProvider("25006"), LearnedWrites.builder().store(store).build())
+            .prepareStatement(SQL)
+            .executeQuery();
+
+        final LearnedWrites reloaded = LearnedWrites.builder().store(store).build();
+
+        assertThat(savedWrites).containsExactly(SqlFingerprint.of(SQL));
+        assertThat(reloaded.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldEvictOldestLearnedWrites() {
+        savedWrites.addAll(Arrays.asList(1L, 2L, 3L));
+
+        final LearnedWrites learnedWrites = LearnedWrites.builder().capacity(2).store(new ListStore()).build();
+
+        assertThat(learnedWrites.size()).isEqualTo(2);
+        assertThat(learnedWrites.getLearnCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldRouteLearnedShapesWithOtherLiteralsToMain() throws SQLException {
+        connection(new RejectingReplicaProvider("25006"), learnedWrites)
+            .prepareStatement("SELECT audited_read('first')")
+            .executeQuery();
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+
+        connection(connectionProvider, learnedWrites).prepareStatement("SELECT audited_read('second')").executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsOnly(MAIN);
+        assertThat(learnedWrites.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRouteReadToMainOnceLearnedAsWrite() throws SQLException {
+        final String otherSql = "SELECT audited_read(?, ?)";
+        connection(new RejectingReplicaProvider("25006"), learnedWrites).prepareStatement(SQL).executeQuery();
+        final ConnectionProviderMock readingProvider = new ConnectionProviderMock();
+        connection(readingProvider, learnedWrites).prepareStatement(otherSql).executeQuery();
+        connection(new RejectingReplicaProvider("25006"), learnedWrites).prepareStatement(otherSql).executeQuery();
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+
+        connection(connectionProvider, learnedWrites).prepareStatement(otherSql).executeQuery();
+
+        assertThat(readingProvider.getProvidedConnectionTypes()).containsOnly(REPLICA);
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsOnly(MAIN);
+    }
+
+    @Test
+    public void shouldSendUnknownFunctionsToMainByDefault() throws SQLException {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+
+        DualConnection.builder(connectionProvider, permanentConsistency().build())
+            .learnedWrites(learnedWrites)
+            .build()
+            .prepareStatement(SQL)
+            .executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsOnly(MAIN);
+    }
+
+    @Test
+    public void shouldTryUnknownFunctionsOnReplica() throws SQLException {
+        final LearnedWrites learnedWrites = LearnedWrites.builder().tryUnknownFunctionsOnReplica().build();
+        final RejectingReplicaProvider connectionProvider = new RejectingReplicaProvider("25006");
+
+        aggressiveConnection(connectionProvider, learnedWrites).prepareStatement(SQL).executeQuery();
+        aggressiveConnection(connectionProvider, learnedWrites).prepareStatement(SQL).executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(REPLICA, MAIN, MAIN);
+        assertThat(learnedWrites.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldKeepMainOnlyFunctionsOnMain() throws SQLException {
+        final LearnedWrites learnedWrites = LearnedWrites.builder().tryUnknownFunctionsOnReplica().build();
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+
+        aggressiveConnection(connectionProvider, learnedWrites)
+            .prepareStatement("SELECT nextval('issue_seq')")
+            .executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsOnly(MAIN);
+    }
+
+    private Connection aggressiveConnection(ConnectionProviderMock connectionProvider, LearnedWrites learnedWrites)
+        throws SQLException {
+        return DualConnection.builder(connectionProvider, permanentConsistency().build())
+            .learnedWrites(learnedWrites)
+            .build();
+    }
+
+    private Connection connection(ConnectionProviderMock connectionProvider, LearnedWrites learnedWrites)
+        throws SQLException {
+        return DualConnection.builder(connectionProvider, permanentConsistency().build())
+            .readOnlyFunctions(ImmutableSet.of("audited_read"))
+            .learnedWrites(learnedWrites)
+            .build();
+    }
+
+    private static class RejectingReplicaProvider extends ConnectionProviderMock {
+        private final String sqlState;
+
+        private RejectingReplicaProvider(String sqlState) {
+            this.sqlState = sqlState;
+        }
+
+        @Override
+        public Connection getReplicaConnection() {
+            final Connection connection = super.getReplicaConnection();
+            try {
+                when(connection.prepareStatement(anyString())).thenAnswer(invocation -> {
+                    final PreparedStatement statement = mock(PreparedStatement.class);
+                    when(statement.executeQuery()).thenThrow(new SQLException("rejected", sqlState));
+                    when(statement.getConnection()).thenReturn(connection);
+                    preparedStatements.add(statement);
+                    return statement;
+                });
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+            return connection;
+        }
+    }
+
+    private class ListStore implements LearnedWritesStore {
+
+        @Override
+        public Collection<Long> load() {
+            return new ArrayList<>(savedWrites);
+        }
+
+        @Override
+        public void save(long fingerprint) {
+            savedWrites.add(fingerprint);
+        }
+    }
+}
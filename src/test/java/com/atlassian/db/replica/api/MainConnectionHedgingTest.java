@@ -0,0 +1,189 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.api.mocks.CircularConsistency;
+import com.atlassian.db.replica.api.mocks.ConnectionProviderMock;
+import com.atlassian.db.replica.spi.ReplicaConsistency;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.atlassian.db.replica.api.Queries.SIMPLE_QUERY;
+import static com.atlassian.db.replica.api.mocks.ConnectionProviderMock.ConnectionType.MAIN;
+import static com.atlassian.db.replica.api.mocks.ConnectionProviderMock.ConnectionType.REPLICA;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MainConnectionHedgingTest {
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final HedgeAwareConnectionProvider connectionProvider = new HedgeAwareConnectionProvider();
+
+    @AfterEach
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shouldUseMainConnectionAcquiredDuringSlowCheck() throws SQLException {
+        final MainConnectionHedging hedging = MainConnectionHedging.builder(executor)
+            .threshold(Duration.ZERO)
+            .build();
+        final Connection connection = connection(new SlowConsistency(false), hedging);
+
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactlyInAnyOrder(REPLICA, MAIN);
+        assertThat(hedging.getStartedCount()).isEqualTo(1);
+        assertThat(hedging.getUsedCount()).isEqualTo(1);
+        assertThat(hedging.getWastedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldReleaseHedgedConnectionWhenReplicaIsConsistent() throws Exception {
+        final MainConnectionHedging hedging = MainConnectionHedging.builder(executor)
+            .threshold(Duration.ZERO)
+            .build();
+        final Connection connection = connection(new SlowConsistency(true), hedging);
+
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        final int main = connectionProvider.getProvidedConnectionTypes().indexOf(MAIN);
+        final int replica = connectionProvider.getProvidedConnectionTypes().indexOf(REPLICA);
+        assertThat(connectionProvider.getProvidedConnections()).hasSize(2);
+        assertThat(connectionProvider.getProvidedConnections().get(main).isClosed()).isTrue();
+        assertThat(connectionProvider.getProvidedConnections().get(replica).isClosed()).isFalse();
+        assertThat(hedging.getUsedCount()).isEqualTo(0);
+        assertThat(hedging.getWastedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotHedgeFastChecks() throws SQLException {
+        final MainConnectionHedging hedging = MainConnectionHedging.builder(executor)
+            .threshold(Duration.ofHours(1))
+            .build();
+        final Connection connection = connection(CircularConsistency.permanentInconsistency().build(), hedging);
+
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(REPLICA, MAIN);
+        assertThat(hedging.getStartedCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldHedgeRightAwayAfterInconsistentCheck() throws SQLException {
+        final MainConnectionHedging hedging = MainConnectionHedging.builder(executor)
+            .threshold(Duration.ofHours(1))
+            .build();
+        DualConnection.builder(new ConnectionProviderMock(), CircularConsistency.permanentInconsistency().build())
+            .mainConnectionHedging(hedging)
+            .build()
+            .prepareStatement(SIMPLE_QUERY)
+            .executeQuery();
+
+        connection(new SlowConsistency(false), hedging).prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        assertThat(hedging.getStartedCount()).isEqualTo(1);
+        assertThat(hedging.getUsedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotHedgeChecksWithoutReplica() throws SQLException {
+        final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        try {
+            final MainConnectionHedging hedging = MainConnectionHedging.builder(executor)
+                .threshold(Duration.ofHours(1))
+                .build();
+            final ReplicaConsistency consistency = new PessimisticPropagationConsistency.Builder().build();
+
+            connection(consistency, hedging).prepareStatement(SIMPLE_QUERY).executeQuery();
+
+            assertThat(executor.getQueue()).isEmpty();
+            assertThat(hedging.getStartedCount()).isEqualTo(0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldReleaseHedgedConnectionWhenExecutorIsShutDown() throws Exception {
+        final MainConnectionHedging hedging = MainConnectionHedging.builder(executor)
+            .threshold(Duration.ZERO)
+            .build();
+        final ReplicaConsistency consistency = new SlowConsistency(true) {
+            @Override
+            public boolean isConsistent(Supplier<Connection> replica) {
+                final boolean consistent = super.isConsistent(replica);
+                executor.shutdown();
+                try {
+                    assertThat(executor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return consistent;
+            }
+        };
+
+        connection(consistency, hedging).prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        final int main = connectionProvider.getProvidedConnectionTypes().indexOf(MAIN);
+        assertThat(connectionProvider.getProvidedConnections().get(main).isClosed()).isTrue();
+        assertThat(hedging.getWastedCount()).isEqualTo(1);
+    }
+
+    private Connection connection(ReplicaConsistency consistency, MainConnectionHedging hedging) throws SQLException {
+        return DualConnection.builder(connectionProvider, consistency)
+            .mainConnectionHedging(hedging)
+            .build();
+    }
+
+    /**
+     * Keeps checking until the main connection is hedged.
+     */
+    private class SlowConsistency implements ReplicaConsistency {
+        private final boolean consistent;
+
+        private SlowConsistency(boolean consistent) {
+            this.consistent = consistent;
+        }
+
+        @Override
+        public void write(Connection main) {
+        }
+
+        @Override
+        public boolean isConsistent(Supplier<Connection> replica) {
+            replica.get();
+            try {
+                assertThat(connectionProvider.mainAcquired.await(5, TimeUnit.SECONDS)).isTrue();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return consistent;
+        }
+    }
+
+    private static class HedgeAwareConnectionProvider extends ConnectionProviderMock {
+        private final CountDownLatch mainAcquired = new CountDownLatch(1);
+
+        @Override
+        public synchronized Connection getMainConnection() {
+            final Connection connection = super.getMainConnection();
+            mainAcquired.countDown();
+            return connection;
+        }
+
+        @Override
+        public synchronized Connection getReplicaConnection() {
+            return super.getReplicaConnection();
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.atlassian.db.replica.api;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class MappedMonotonicCacheTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldSeeWritesFromOtherProcess() throws Exception {
+        final Path path = directory.resolve("last-write.lsn");
+        try (MappedMonotonicCache<Long> cache = MappedMonotonicCache.ofLongs(path)) {
+            cache.put(100L);
+
+            writeInOtherProcess(path, 200L);
+
+            assertThat(cache.get()).contains(200L);
+        }
+    }
+
+    @Test
+    public void shouldKeepMaximum() throws IOException {
+        final Path path = directory.resolve("last-write.lsn");
+        try (
+            MappedMonotonicCache<Long> first = MappedMonotonicCache.ofLongs(path);
+            MappedMonotonicCache<Long> second = MappedMonotonicCache.ofLongs(path)
+        ) {
+            first.put(300L);
+            second.put(200L);
+
+            assertThat(first.get()).contains(300L);
+            assertThat(second.get()).contains(300L);
+        }
+    }
+
+    @Test
+    public void shouldStartEmpty() throws IOException {
+        try (MappedMonotonicCache<Long> cache = MappedMonotonicCache.ofLongs(directory.resolve("last-write.lsn"))) {
+            assertThat(cache.get()).isEmpty();
+        }
+    }
+
+    @Test
+    public void shouldSurviveInterrupts() throws IOException {
+        try (MappedMonotonicCache<Long> cache = MappedMonotonicCache.ofLongs(directory.resolve("last-write.lsn"))) {
+            Thread.currentThread().interrupt();
+            try {
+                cache.put(100L);
+
+                assertThat(Thread.currentThread().isInterrupted()).isTrue();
+            } finally {
+                Thread.interrupted();
+            }
+            cache.put(200L);
+
+            assertThat(cache.get()).contains(200L);
+        }
+    }
+
+    @Test
+    public void shouldResetForAllProcesses() throws IOException {
+        final Path path = directory.resolve("last-write.lsn");
+        try (
+            MappedMonotonicCache<Long> first = MappedMonotonicCache.ofLongs(path);
+            MappedMonotonicCache<Long> second = MappedMonotonicCache.ofLongs(path)
+        ) {
+            first.put(300L);
+            second.reset();
+
+            assertThat(first.get()).isEmpty();
+        }
+    }
+
+    @Test
+    public void shouldCacheInstantsWithNanoseconds() throws IOException {
+        final Instant write = Instant.parse("2026-10-18T10:00:00.123456789Z");
+        final Path path = directory.resolve("last-write.time");
+        try (MappedMonotonicCache<Instant> cache = MappedMonotonicCache.ofInstants(path)) {
+            cache.put(write);
+        }
+
+        try (MappedMonotonicCache<Instant> cache = MappedMonotonicCache.ofInstants(path)) {
+            assertThat(cache.get()).contains(write);
+        }
+    }
+
+    @Test
+    public void shouldRejectOtherFiles() throws IOException {
+        final Path path = directory.resolve("routing.snapshot");
+        Files.write(path, "not a cache".getBytes());
+
+        assertThatThrownBy(() -> MappedMonotonicCache.ofLongs(path))
+            .isInstanceOf(IOException.class)
+            .hasMessageContaining("is not a monotonic cache");
+    }
+
+    private static void writeInOtherProcess(Path path, long value) throws Exception {
+        final Process process = new ProcessBuilder(
+            Paths.get(System.getProperty("java.home"), "bin", "java").toString(),
+            "-cp",
+            location(OtherProcess.class) + File.pathSeparator + location(MappedMonotonicCache.class),
+            OtherProcess.class.getName(),
+            path.toString(),
+            Long.toString(value)
+        ).inheritIO().start();
+        assertThat(process.waitFor(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(process.exitValue()).isEqualTo(0);
+    }
+
+    private static String location(Class<?> type) throws URISyntaxException {
+        return Paths.get(type.getProtectionDomain().getCodeSource().getLocation().toURI()).toString();
+    }
+
+    public static final class OtherProcess {
+        public static void main(String[] args) throws IOException {
+            try (MappedMonotonicCache<Long> cache = MappedMonotonicCache.ofLongs(Paths.get(args[0]))) {
+                cache.put(Long.parseLong(args[1]));
+            }
+        }
+    }
+}
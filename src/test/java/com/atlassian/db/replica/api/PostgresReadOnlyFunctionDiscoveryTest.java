@@ -0,0 +1,109 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.api.mocks.ConnectionProviderMock;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static com.atlassian.db.replica.api.mocks.CircularConsistency.permanentConsistency;
+import static com.atlassian.db.replica.api.mocks.ConnectionProviderMock.ConnectionType.MAIN;
+import static com.atlassian.db.replica.api.mocks.ConnectionProviderMock.ConnectionType.REPLICA;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PostgresReadOnlyFunctionDiscoveryTest {
+    private static final String SQL = "SELECT stable_function(1)";
+    private final List<List<String>> discoveries = new ArrayList<>();
+    private final ScheduledExecutorService executor = mock(ScheduledExecutorService.class, RETURNS_MOCKS);
+    private final PostgresReadOnlyFunctionDiscovery discovery = PostgresReadOnlyFunctionDiscovery
+        .builder(this::discoveryConnection)
+        .executor(executor)
+        .build();
+
+    @Test
+    public void shouldRouteDiscoveredFunctionsToReplica() throws SQLException {
+        discoveries.add(Arrays.asList("stable_function", "immutable_function"));
+        discovery.refresh();
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+
+        connection(connectionProvider).build().prepareStatement(SQL).executeQuery();
+
+        assertThat(discovery.getReadOnlyFunctions()).containsOnly("stable_function", "immutable_function");
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsOnly(REPLICA);
+    }
+
+    @Test
+    public void shouldRouteFunctionsToMainBeforeDiscovery() throws SQLException {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+
+        connection(connectionProvider).build().prepareStatement(SQL).executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsOnly(MAIN);
+    }
+
+    @Test
+    public void shouldKeepDiscoveredFunctionsWhenRefreshFails() {
+        discoveries.add(Arrays.asList("stable_function"));
+        discovery.refresh();
+
+        discovery.refresh();
+
+        assertThat(discovery.getReadOnlyFunctions()).containsOnly("stable_function");
+    }
+
+    @Test
+    public void shouldReplaceCachedRoutesWhenDiscoveryChanges() throws SQLException {
+        final SqlClassificationCache cache = SqlClassificationCache.builder().build();
+        final ConnectionProviderMock beforeDiscovery = new ConnectionProviderMock();
+        final ConnectionProviderMock afterDiscovery = new ConnectionProviderMock();
+
+        connection(beforeDiscovery).sqlClassificationCache(cache).build().prepareStatement(SQL).executeQuery();
+        discoveries.add(Arrays.asList("stable_function"));
+        discovery.refresh();
+        connection(afterDiscovery).sqlClassificationCache(cache).build().prepareStatement(SQL).executeQuery();
+
+        assertThat(beforeDiscovery.getProvidedConnectionTypes()).containsOnly(MAIN);
+        assertThat(afterDiscovery.getProvidedConnectionTypes()).containsOnly(REPLICA);
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldLeaveProvidedExecutorRunning() {
+        discovery.close();
+
+        verify(executor, never()).shutdownNow();
+    }
+
+    private DualConnection.Builder connection(ConnectionProviderMock connectionProvider) {
+        return DualConnection.builder(connectionProvider, permanentConsistency().build())
+            .readOnlyFunctionDiscovery(discovery);
+    }
+
+    private Connection discoveryConnection() throws SQLException {
+        if (discoveries.isEmpty()) {
+            throw new SQLException("Replica is unavailable");
+        }
+        final List<String> functions = discoveries.remove(0);
+        final ResultSet results = mock(ResultSet.class);
+        final int[] row = {-1};
+        when(results.next()).then(invocation -> ++row[0] < functions.size());
+        when(results.getString("name")).then(invocation -> functions.get(row[0]));
+        final Statement statement = mock(Statement.class);
+        when(statement.executeQuery(anyString())).thenReturn(results);
+        final Connection connection = mock(Connection.class);
+        when(connection.createStatement()).thenReturn(statement);
+        return connection;
+    }
+}
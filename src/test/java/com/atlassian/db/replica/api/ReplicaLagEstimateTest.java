@@ -0,0 +1,143 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.internal.aurora.AuroraEndpoint;
+import com.atlassian.db.replica.internal.aurora.AuroraJdbcUrl;
+import com.atlassian.db.replica.internal.aurora.AuroraReplicasDiscoverer;
+import com.atlassian.db.replica.internal.logs.NoopLazyLogger;
+import com.atlassian.db.replica.spi.ReplicaConsistency;
+import org.junit.jupiter.api.Test;
+import org.threeten.extra.MutableClock;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import static java.time.Duration.ofMillis;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ReplicaLagEstimateTest {
+    private static final Duration CEILING = Duration.ofSeconds(1);
+    private final MutableClock clock = MutableClock.epochUTC();
+    private final ReplicaLagEstimate estimate = ReplicaLagEstimate.builder()
+        .percentile(0.9)
+        .safetyMargin(ofMillis(20))
+        .ceiling(CEILING)
+        .sampleSize(10)
+        .minSamples(5)
+        .maxSampleAge(Duration.ofSeconds(30))
+        .measureTime(clock)
+        .build();
+
+    @Test
+    public void shouldUseCeilingWithoutEnoughSamples() {
+        recordLags(10, 10, 10, 10);
+
+        assertThat(estimate.getEstimatedLag()).isEmpty();
+        assertThat(estimate.getPropagationWindow()).isEqualTo(CEILING);
+        assertThat(estimate.getCeilingCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldAddSafetyMarginToPercentile() {
+        recordLags(10, 20, 30, 40, 50, 60, 70, 80, 90, 500);
+
+        assertThat(estimate.getEstimatedLag().get()).isBetween(ofMillis(90), ofMillis(93));
+        assertThat(estimate.getPropagationWindow()).isBetween(ofMillis(110), ofMillis(113));
+        assertThat(estimate.getSampleCount()).isEqualTo(10);
+    }
+
+    @Test
+    public void shouldEstimateShortLagsExactly() {
+        for (int i = 0; i < 10; i++) {
+            estimate.recordLag(Duration.ofNanos(20_000));
+        }
+
+        assertThat(estimate.getEstimatedLag()).contains(Duration.ofNanos(20_000));
+    }
+
+    @Test
+    public void shouldForgetOldestSamples() {
+        recordLags(900, 900, 900, 900, 900, 900, 900, 900, 900, 900);
+        recordLags(10, 10, 10, 10, 10, 10, 10, 10, 10, 10);
+
+        assertThat(estimate.getPropagationWindow()).isBetween(ofMillis(30), ofMillis(31));
+    }
+
+    @Test
+    public void shouldNotExceedCeiling() {
+        recordLags(2000, 2000, 2000, 2000, 2000);
+
+        assertThat(estimate.getPropagationWindow()).isEqualTo(CEILING);
+        assertThat(estimate.getCeilingCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldUseCeilingWhenSamplesStop() {
+        recordLags(10, 10, 10, 10, 10);
+        clock.add(Duration.ofMinutes(1));
+
+        assertThat(estimate.getPropagationWindow()).isEqualTo(CEILING);
+    }
+
+    @Test
+    public void shouldAdaptPropagation() {
+        final ReplicaConsistency consistency = new PessimisticPropagationConsistency.Builder()
+            .adaptPropagation(estimate)
+            .measureTime(clock)
+            .build();
+        consistency.write(null);
+        clock.add(ofMillis(100));
+
+        assertThat(consistency.isConsistent(() -> null)).isFalse();
+        recordLags(10, 10, 10, 10, 10);
+        assertThat(consistency.isConsistent(() -> null)).isTrue();
+    }
+
+    @Test
+    public void shouldReadPropagationWindowOncePerCheck() {
+        final ReplicaConsistency consistency = new PessimisticPropagationConsistency.Builder()
+            .adaptPropagation(estimate)
+            .measureTime(clock)
+            .build();
+        consistency.write(null);
+
+        consistency.isConsistent(() -> null, ofMillis(10));
+
+        assertThat(estimate.getCeilingCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldRecordLagOfMostOutdatedReplicaFromDiscovery() throws SQLException {
+        final AuroraReplicasDiscoverer discoverer = new AuroraReplicasDiscoverer(
+            new AuroraJdbcUrl(AuroraEndpoint.parse("arch-app-staging-1-001-lr.cm9o6ayveq1a.us-east-9.rds.amazonaws.com"), "db"),
+            null,
+            new NoopLazyLogger(),
+            estimate
+        );
+        final Connection connection = mock(Connection.class);
+        final PreparedStatement statement = mock(PreparedStatement.class);
+        final ResultSet resultSet = mock(ResultSet.class);
+        when(connection.prepareStatement(anyString())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.getString("server_id")).thenReturn("replica-1", "replica-2");
+
+        for (int i = 0; i < 5; i++) {
+            when(resultSet.next()).thenReturn(true, true, false);
+            when(resultSet.getLong("replica_lag_in_msec")).thenReturn(30L, 80L);
+            discoverer.fetchReplicasUrls(connection);
+        }
+
+        assertThat(estimate.getEstimatedLag().get()).isBetween(ofMillis(80), ofMillis(83));
+    }
+
+    private void recordLags(long... lagsInMillis) {
+        for (long lag : lagsInMillis) {
+            estimate.recordLag(ofMillis(lag));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.internal.SqlFingerprint;
+import com.atlassian.db.replica.spi.LearnedWritesStore;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.RETURNS_MOCKS;
+import static org.mockito.Mockito.mock;
+
+public class RoutingSnapshotTest {
+    private final ScheduledExecutorService executor = mock(ScheduledExecutorService.class, RETURNS_MOCKS);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void shouldLoadLearnedWritesSavedByPreviousProcess() {
+        final Path path = directory.resolve("routing.snapshot");
+        try (RoutingSnapshot previous = snapshot(path).build()) {
+            previous.learnedWritesStore().save(SqlFingerprint.of("SELECT audited_read(1)"));
+        }
+
+        try (RoutingSnapshot next = snapshot(path).build()) {
+            final LearnedWrites learnedWrites = LearnedWrites.builder().store(next.learnedWritesStore()).build();
+
+            assertThat(learnedWrites.size()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    public void shouldLoadReadOnlyFunctionsSavedByPreviousProcess() {
+        final Path path = directory.resolve("routing.snapshot");
+        try (RoutingSnapshot previous = snapshot(path).build()) {
+            previous.saveReadOnlyFunctions(Arrays.asList("stable_function", "immutable_function"));
+        }
+
+        try (
+            RoutingSnapshot next = snapshot(path).build();
+            PostgresReadOnlyFunctionDiscovery discovery = PostgresReadOnlyFunctionDiscovery
+                .builder(() -> {
+                    throw new IllegalStateException("Replica is unavailable");
+                })
+                .executor(executor)
+                .snapshot(next)
+                .build()
+        ) {
+            assertThat(discovery.getReadOnlyFunctions()).containsOnly("stable_function", "immutable_function");
+        }
+    }
+
+    @Test
+    public void shouldKeepNewestLearnedWrites() {
+        final Path path = directory.resolve("routing.snapshot");
+        try (RoutingSnapshot previous = snapshot(path).learnedWritesCapacity(2).build()) {
+            final LearnedWritesStore store = previous.learnedWritesStore();
+            store.save(1L);
+            store.save(2L);
+            store.save(3L);
+        }
+
+        try (RoutingSnapshot next = snapshot(path).build()) {
+            assertThat(next.learnedWritesStore().load()).containsExactly(2L, 3L);
+        }
+    }
+
+    @Test
+    public void shouldStartFromScratchWhenFileIsCorrupted() throws IOException {
+        final Path path = directory.resolve("routing.snapshot");
+        Files.write(path, new byte[]{1, 2, 3});
+
+        try (RoutingSnapshot snapshot = snapshot(path).build()) {
+            assertThat(snapshot.learnedWritesStore().load()).isEmpty();
+            assertThat(snapshot.getReadOnlyFunctions()).isEmpty();
+        }
+    }
+
+    @Test
+    public void shouldNotWriteUnchangedSnapshot() {
+        final Path path = directory.resolve("routing.snapshot");
+
+        snapshot(path).build().close();
+
+        assertThat(path).doesNotExist();
+    }
+
+    private RoutingSnapshot.Builder snapshot(Path path) {
+        return RoutingSnapshot.builder(path).executor(executor);
+    }
+}
@@ -0,0 +1,102 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.spi.ReplicaConsistency;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.threeten.extra.MutableClock;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class SessionScopedCacheTest {
+    private static final Duration MAX_PROPAGATION = Duration.ofMillis(100);
+    private final MutableClock clock = MutableClock.epochUTC();
+    private final Connection main = mock(Connection.class);
+    private final Supplier<Connection> replica = () -> mock(Connection.class);
+    private String session;
+    private final SessionScopedCache<Instant> lastWrite = SessionScopedCache.<Instant>builder(() -> session)
+        .capacity(2)
+        .build();
+    private final ReplicaConsistency consistency = new PessimisticPropagationConsistency.Builder()
+        .assumeMaxPropagation(MAX_PROPAGATION)
+        .cacheLastWrite(lastWrite)
+        .measureTime(clock)
+        .build();
+
+    @BeforeEach
+    public void startUp() {
+        session = null;
+        consistency.isConsistent(replica);
+        clock.add(MAX_PROPAGATION.multipliedBy(2));
+    }
+
+    @Test
+    public void shouldHoldBackOnlyWritingSession() {
+        session = "alice";
+        consistency.write(main);
+
+        assertThat(consistency.isConsistent(replica)).isFalse();
+        session = "bob";
+        assertThat(consistency.isConsistent(replica)).isTrue();
+        clock.add(MAX_PROPAGATION.multipliedBy(2));
+        session = "alice";
+        assertThat(consistency.isConsistent(replica)).isTrue();
+    }
+
+    @Test
+    public void shouldHoldBackEverySessionAtStartUp() {
+        lastWrite.reset();
+        session = "alice";
+        consistency.isConsistent(replica);
+
+        session = "bob";
+        assertThat(consistency.isConsistent(replica)).isFalse();
+    }
+
+    @Test
+    public void shouldHoldBackThreadsWithoutSessionAfterAnyWrite() {
+        session = "alice";
+        consistency.write(main);
+
+        session = null;
+        assertThat(consistency.isConsistent(replica)).isFalse();
+    }
+
+    @Test
+    public void shouldNotMissOwnWriteAfterEviction() {
+        session = "alice";
+        consistency.write(main);
+        session = "bob";
+        consistency.write(main);
+        session = "carol";
+        consistency.write(main);
+
+        assertThat(lastWrite.size()).isEqualTo(2);
+        assertThat(lastWrite.getEvictionCount()).isEqualTo(1);
+        session = "alice";
+        assertThat(consistency.isConsistent(replica)).isFalse();
+    }
+
+    @Test
+    public void shouldEvictSessionsWhichDidNotWriteRecently() {
+        session = "alice";
+        consistency.write(main);
+        session = "bob";
+        consistency.write(main);
+        clock.add(MAX_PROPAGATION.multipliedBy(2));
+        session = "alice";
+        consistency.write(main);
+        session = "carol";
+        consistency.write(main);
+
+        session = "bob";
+        assertThat(consistency.isConsistent(replica)).isTrue();
+        session = "alice";
+        assertThat(consistency.isConsistent(replica)).isFalse();
+    }
+}
@@ -0,0 +1,78 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.api.mocks.ConnectionProviderMock;
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static com.atlassian.db.replica.api.Queries.SIMPLE_QUERY;
+import static com.atlassian.db.replica.api.mocks.CircularConsistency.permanentConsistency;
+import static com.atlassian.db.replica.api.mocks.ConnectionProviderMock.ConnectionType.MAIN;
+import static com.atlassian.db.replica.api.mocks.ConnectionProviderMock.ConnectionType.REPLICA;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlClassificationCacheTest {
+    private final SqlClassificationCache cache = SqlClassificationCache.builder().build();
+
+    @Test
+    public void shouldShareClassificationBetweenConnections() throws SQLException {
+        final Connection first = connection(new ConnectionProviderMock()).build();
+        final Connection second = connection(new ConnectionProviderMock()).build();
+
+        first.prepareStatement(SIMPLE_QUERY).executeQuery();
+        second.prepareStatement(SIMPLE_QUERY).executeQuery();
+        second.createStatement().executeQuery(SIMPLE_QUERY);
+
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getHitCount()).isEqualTo(2);
+        assertThat(cache.getHitRate()).isEqualTo(2.0 / 3);
+    }
+
+    @Test
+    public void shouldSeparateDifferentlyConfiguredConnections() throws SQLException {
+        final String sql = "SELECT myFunction() FROM user";
+        final ConnectionProviderMock defaultProvider = new ConnectionProviderMock();
+        final ConnectionProviderMock customProvider = new ConnectionProviderMock();
+        final Connection defaultConnection = connection(defaultProvider).build();
+        final Connection customConnection = connection(customProvider)
+            .readOnlyFunctions(ImmutableSet.of("myFunction"))
+            .build();
+
+        defaultConnection.prepareStatement(sql).executeQuery();
+        customConnection.prepareStatement(sql).executeQuery();
+
+        assertThat(defaultProvider.getProvidedConnectionTypes()).containsOnly(MAIN);
+        assertThat(customProvider.getProvidedConnectionTypes()).containsOnly(REPLICA);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldLimitPartitions() throws SQLException {
+        final SqlClassificationCache cache = SqlClassificationCache.builder().maxPartitions(2).build();
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+
+        for (int i = 0; i < 3; i++) {
+            final Connection connection = DualConnection.builder(connectionProvider, permanentConsistency().build())
+                .sqlClassificationCache(cache)
+                .readOnlyFunctions(ImmutableSet.of("function" + i))
+                .build();
+            connection.prepareStatement("SELECT function2() FROM user").executeQuery();
+        }
+
+        assertThat(cache.getPartitionCount()).isEqualTo(2);
+        assertThat(cache.getMissCount()).isEqualTo(2);
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(MAIN, MAIN, REPLICA);
+    }
+
+    @Test
+    public void shouldReportNoHitRateBeforeLookups() {
+        assertThat(cache.getHitRate()).isZero();
+    }
+
+    private DualConnection.Builder connection(ConnectionProviderMock connectionProvider) {
+        return DualConnection.builder(connectionProvider, permanentConsistency().build())
+            .sqlClassificationCache(cache);
+    }
+}
@@ -10,6 +10,7 @@ import com.atlassian.db.replica.api.mocks.ReadOnlyAwareConnection;
 import com.atlassian.db.replica.api.mocks.SingleConnectionProvider;
 import com.atlassian.db.replica.internal.MonotonicMemoryCache;
 import com.atlassian.db.replica.api.reason.Reason;
+import com.atlassian.db.replica.api.reason.RouteDecision;
 import com.atlassian.db.replica.internal.RouteDecisionBuilder;
 import com.atlassian.db.replica.internal.state.State;
 import com.atlassian.db.replica.internal.state.StateListener;
@@ -32,9 +33,13 @@ import java.sql.Savepoint;
 import java.sql.Statement;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
@@ -148,20 +153,42 @@ public class TestDualConnection {
         ).databaseCall(databaseCall).build();
 
         connection.prepareStatement(SIMPLE_QUERY).execute();
-        connection.prepareStatement(SIMPLE_QUERY).execute(SIMPLE_QUERY);
-        connection.prepareStatement(SIMPLE_QUERY).execute(SIMPLE_QUERY, Statement.RETURN_GENERATED_KEYS);
-        connection.prepareStatement(SIMPLE_QUERY).execute(SIMPLE_QUERY, new String[]{"test"});
-        connection.prepareStatement(SIMPLE_QUERY).execute(SIMPLE_QUERY, new int[]{123});
-        connection.prepareStatement(SIMPLE_QUERY, new int[]{123}).execute(SIMPLE_QUERY, new int[]{123});
+        connection.createStatement().execute("UPDATE foo SET bar = 1");
+        connection.createStatement().execute("VACUUM foo");
 
-        assertThat(connectionProvider.getProvidedConnectionTypes())
-            .hasSize(1);
         assertThat(connectionProvider.getProvidedConnectionTypes())
             .containsOnly(MAIN);
+        verify(databaseCall).call(any(), eq(new RouteDecisionBuilder(Reason.RW_API_CALL).sql(SIMPLE_QUERY).build()));
+        verify(databaseCall).call(
+            any(),
+            eq(new RouteDecisionBuilder(Reason.RW_API_CALL).sql("UPDATE foo SET bar = 1").build())
+        );
+        verify(databaseCall).call(
+            any(),
+            eq(new RouteDecisionBuilder(Reason.RW_API_CALL).sql("VACUUM foo").build())
+        );
+    }
 
-        verify(databaseCall, times(6)).call(
+    @Test
+    public void shouldUseReplicaConnectionForExecutedQueries() throws SQLException {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final DatabaseCall databaseCall = mock(DatabaseCall.class);
+        when(databaseCall.call(any(), any())).thenReturn(true);
+        final Connection connection = DualConnection.builder(
+            connectionProvider,
+            permanentConsistency().build()
+        ).databaseCall(databaseCall).build();
+
+        connection.createStatement().execute(SIMPLE_QUERY);
+        connection.createStatement().execute(SIMPLE_QUERY, Statement.RETURN_GENERATED_KEYS);
+        connection.createStatement().execute(SIMPLE_QUERY, new String[]{"test"});
+        connection.createStatement().execute(SIMPLE_QUERY, new int[]{123});
+
+        assertThat(connectionProvider.getProvidedConnectionTypes())
+            .containsOnly(REPLICA);
+        verify(databaseCall, times(4)).call(
             any(),
-            eq(new RouteDecisionBuilder(Reason.RW_API_CALL).sql(SIMPLE_QUERY).build())
+            eq(new RouteDecisionBuilder(Reason.READ_OPERATION).sql(SIMPLE_QUERY).build())
         );
     }
 
@@ -800,6 +827,127 @@ public class TestDualConnection {
         );
     }
 
+    @Test
+    public void shouldFingerprintQueryShapes() throws SQLException {
+        final List<RouteDecision> decisions = new ArrayList<>();
+        final Connection connection = DualConnection
+            .builder(new ConnectionProviderMock(), permanentConsistency().build())
+            .databaseCall(new DatabaseCall() {
+                @Override
+                public <T> T call(SqlCall<T> call, RouteDecision decision) throws SQLException {
+                    decisions.add(decision);
+                    return call.call();
+                }
+            })
+            .build();
+
+        connection.prepareStatement("SELECT * FROM foo WHERE id IN (?, ?)").executeQuery();
+        connection.createStatement().executeQuery("select * from foo where id in (1, 2, 3)");
+        connection.createStatement().executeQuery("SELECT * FROM bar WHERE id IN (1)");
+
+        assertThat(decisions.get(0).getFingerprint()).isEqualTo(decisions.get(1).getFingerprint());
+        assertThat(decisions.get(0).getFingerprint()).isNotEqualTo(decisions.get(2).getFingerprint());
+    }
+
+    @Test
+    public void shouldExecuteHintedReadOnInconsistentReplica() throws SQLException {
+        final String sql = "/*+ db-replica:replica */ " + SIMPLE_QUERY;
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final DatabaseCall databaseCall = mock(DatabaseCall.class);
+        final Connection connection = DualConnection
+            .builder(connectionProvider, permanentInconsistency().build())
+            .databaseCall(databaseCall)
+            .build();
+
+        connection.prepareStatement(sql).executeQuery();
+        connection.createStatement().executeQuery(sql);
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsOnly(REPLICA);
+        verify(databaseCall, times(2)).call(
+            any(),
+            eq(new RouteDecisionBuilder(Reason.REPLICA_HINT).sql(sql).build())
+        );
+    }
+
+    @Test
+    public void shouldExecuteHintedLockOnMain() throws SQLException {
+        final String sql = "/*+ db-replica:replica */ SELECT * FROM foo WHERE id = 1 FOR UPDATE";
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final DatabaseCall databaseCall = mock(DatabaseCall.class);
+        final Connection connection = DualConnection
+            .builder(connectionProvider, permanentConsistency().build())
+            .databaseCall(databaseCall)
+            .build();
+
+        connection.prepareStatement(sql).executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsOnly(MAIN);
+        verify(databaseCall).call(
+            any(),
+            eq(new RouteDecisionBuilder(Reason.LOCK).sql(sql).build())
+        );
+    }
+
+    @Test
+    public void shouldExecuteHintedWriteOnMain() throws SQLException {
+        final String sql = "/*+ db-replica:replica */ SELECT unknown_function(1)";
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final Connection connection = DualConnection
+            .builder(connectionProvider, permanentConsistency().build())
+            .build();
+
+        connection.prepareStatement(sql).executeQuery();
+        connection.createStatement().execute(sql);
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsOnly(MAIN);
+    }
+
+    @Test
+    public void shouldExecuteHintedReadOnMain() throws SQLException {
+        final String sql = "/*+ db-replica:main */ " + SIMPLE_QUERY;
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final DatabaseCall databaseCall = mock(DatabaseCall.class);
+        final Connection connection = DualConnection
+            .builder(connectionProvider, permanentConsistency().build())
+            .databaseCall(databaseCall)
+            .build();
+
+        connection.prepareStatement(sql).executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsOnly(MAIN);
+        verify(databaseCall).call(
+            any(),
+            eq(new RouteDecisionBuilder(Reason.MAIN_HINT).sql(sql).build())
+        );
+    }
+
+    @Test
+    public void shouldExecuteReadToleratingStalenessOnReplica() throws SQLException {
+        final String sql = "/*+ db-replica:max-staleness=1s */ " + SIMPLE_QUERY;
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final DatabaseCall databaseCall = mock(DatabaseCall.class);
+        final ReplicaConsistency consistency = new PessimisticPropagationConsistency.Builder()
+            .assumeMaxPropagation(Duration.ofMillis(500))
+            .build();
+        final Connection connection = DualConnection
+            .builder(connectionProvider, consistency)
+            .databaseCall(databaseCall)
+            .build();
+
+        connection.prepareStatement(sql).executeQuery();
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(REPLICA, MAIN);
+        verify(databaseCall).call(
+            any(),
+            eq(new RouteDecisionBuilder(Reason.REPLICA_HINT).sql(sql).build())
+        );
+        verify(databaseCall).call(
+            any(),
+            eq(new RouteDecisionBuilder(Reason.REPLICA_INCONSISTENT).sql(SIMPLE_QUERY).build())
+        );
+    }
+
     @Test
     public void shouldExecuteUpdateOnMain() throws SQLException {
         final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
@@ -937,6 +1085,152 @@ public class TestDualConnection {
         verify(stateListener).transition(State.COMMITED_MAIN, State.REPLICA);
     }
 
+    @Test
+    public void shouldLeaveMainAfterAutoCommittedWrite() throws SQLException {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final StateListener stateListener = mock(StateListener.class);
+        final Connection connection = DualConnection.builder(connectionProvider, permanentConsistency().build())
+            .stateListener(stateListener)
+            .leaveMainAfterCommit()
+            .build();
+
+        connection.prepareStatement(SIMPLE_QUERY).executeUpdate();
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(MAIN, REPLICA);
+        verify(stateListener).transition(State.NOT_INITIALISED, State.MAIN);
+        verify(stateListener).transition(State.MAIN, State.COMMITED_MAIN);
+        verify(stateListener).transition(State.COMMITED_MAIN, State.REPLICA);
+        verifyNoMoreInteractions(stateListener);
+    }
+
+    @Test
+    public void shouldStayOnMainAfterCommitUntilReplicaIsConsistent() throws SQLException {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final List<RouteDecision> decisions = new ArrayList<>();
+        final Connection connection = DualConnection.builder(connectionProvider, permanentInconsistency().build())
+            .databaseCall(new DatabaseCall() {
+                @Override
+                public <T> T call(SqlCall<T> call, RouteDecision decision) throws SQLException {
+                    decisions.add(decision);
+                    return call.call();
+                }
+            })
+            .leaveMainAfterCommit()
+            .build();
+
+        connection.setAutoCommit(false);
+        connection.prepareStatement(SIMPLE_QUERY).executeUpdate();
+        connection.commit();
+        connection.setAutoCommit(true);
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(MAIN, REPLICA);
+        assertThat(decisions.get(decisions.size() - 1).getReason()).isEqualTo(Reason.REPLICA_INCONSISTENT);
+    }
+
+    @Test
+    public void shouldRecreateStatementAfterLeavingMain() throws SQLException {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final Connection connection = DualConnection.builder(connectionProvider, permanentConsistency().build())
+            .leaveMainAfterCommit()
+            .build();
+        final PreparedStatement update = connection.prepareStatement(SIMPLE_QUERY);
+        update.setQueryTimeout(3);
+
+        update.executeUpdate();
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+        update.executeUpdate();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(MAIN, REPLICA, MAIN);
+        final List<Statement> statements = connectionProvider.getPreparedStatements();
+        assertThat(statements).hasSize(3);
+        final Statement lastStatement = statements.get(2);
+        assertThat(lastStatement.getConnection().isClosed()).isFalse();
+        verify(lastStatement).setQueryTimeout(3);
+        verify(statements.get(0)).close();
+    }
+
+    @Test
+    public void shouldStayOnMainInsideTransaction() throws SQLException {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final Connection connection = DualConnection.builder(connectionProvider, permanentConsistency().build())
+            .leaveMainAfterCommit()
+            .build();
+
+        connection.setAutoCommit(false);
+        connection.prepareStatement(SIMPLE_QUERY).executeUpdate();
+        connection.commit();
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(MAIN);
+    }
+
+    @Test
+    public void shouldCheckConsistencyOncePerReadOnlyTransaction() throws SQLException {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final ReplicaConsistency consistency = mock(ReplicaConsistency.class);
+        when(consistency.isConsistent(any())).thenReturn(true);
+        final List<RouteDecision> decisions = new ArrayList<>();
+        final Connection connection = DualConnection.builder(connectionProvider, consistency)
+            .databaseCall(new DatabaseCall() {
+                @Override
+                public <T> T call(SqlCall<T> call, RouteDecision decision) throws SQLException {
+                    decisions.add(decision);
+                    return call.call();
+                }
+            })
+            .build();
+
+        connection.setReadOnly(true);
+        connection.setAutoCommit(false);
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        verify(consistency, times(1)).isConsistent(any());
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(REPLICA);
+        assertThat(decisions).extracting(RouteDecision::getReason).containsOnly(Reason.READ_ONLY_TRANSACTION);
+        assertThat(decisions.get(1).getCause()).contains(decisions.get(0));
+        assertThat(decisions.get(2).getCause()).contains(decisions.get(0));
+
+        connection.commit();
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        verify(consistency, times(2)).isConsistent(any());
+    }
+
+    @Test
+    public void shouldKeepReadOnlyTransactionOnMainWhenReplicaWasInconsistent() throws SQLException {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final Connection connection = DualConnection.builder(
+            connectionProvider,
+            new CircularConsistency.Builder(ImmutableList.of(false, true)).build()
+        ).build();
+
+        connection.setReadOnly(true);
+        connection.setAutoCommit(false);
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(REPLICA, MAIN);
+        assertThat(connectionProvider.getProvidedConnections().get(1).isClosed()).isFalse();
+    }
+
+    @Test
+    public void shouldCheckConsistencyForEveryReadInReadWriteTransaction() throws SQLException {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final ReplicaConsistency consistency = mock(ReplicaConsistency.class);
+        when(consistency.isConsistent(any())).thenReturn(true);
+        final Connection connection = DualConnection.builder(connectionProvider, consistency).build();
+
+        connection.setAutoCommit(false);
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        verify(consistency, times(2)).isConsistent(any());
+    }
+
     @Test
     public void shouldUsePrepareNewStatement() throws SQLException {
         final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
@@ -1124,7 +1418,7 @@ public class TestDualConnection {
 
         assertThat(connectionProvider.getProvidedConnectionTypes())
             .containsOnly(REPLICA);
-        verify(connectionProvider.singleProvidedConnection()).setReadOnly(false);
+        verify(connectionProvider.singleProvidedConnection(), never()).setReadOnly(anyBoolean());
         assertThat(connection.isReadOnly()).isFalse();
     }
 
@@ -1239,16 +1533,46 @@ public class TestDualConnection {
     }
 
     @Test
-    public void shouldGetTransactionIsolationLevelCallMainDatabase() throws SQLException {
+    public void shouldLearnDefaultTransactionIsolationWithoutMain() throws SQLException {
         final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final StateListener stateListener = mock(StateListener.class);
         final Connection connection = DualConnection.builder(
             connectionProvider,
             permanentInconsistency().build()
+        ).stateListener(stateListener).build();
+
+        connection.getTransactionIsolation();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(REPLICA);
+        verify(connectionProvider.singleProvidedConnection()).getTransactionIsolation();
+        verify(connectionProvider.singleProvidedConnection()).close();
+        verifyNoMoreInteractions(stateListener);
+    }
+
+    @Test
+    public void shouldLearnDefaultTransactionIsolationOncePerConnectionProvider() throws SQLException {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final ReplicaConsistency consistency = permanentConsistency().build();
+
+        DualConnection.builder(connectionProvider, consistency).build().getTransactionIsolation();
+        DualConnection.builder(connectionProvider, consistency).build().getTransactionIsolation();
+
+        assertThat(connectionProvider.getProvidedConnections()).hasSize(1);
+    }
+
+    @Test
+    public void shouldGetTransactionIsolationFromOpenConnection() throws SQLException {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final Connection connection = DualConnection.builder(
+            connectionProvider,
+            permanentConsistency().build()
         ).build();
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
 
         connection.getTransactionIsolation();
 
         verify(connectionProvider.singleProvidedConnection()).getTransactionIsolation();
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(REPLICA);
     }
 
     @Test
@@ -1367,7 +1691,7 @@ public class TestDualConnection {
     }
 
     @Test
-    public void shouldDelegateToMainIfHoldabilityNotKnown() throws SQLException {
+    public void shouldLearnDefaultHoldabilityWithoutMain() throws SQLException {
         final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
         final Connection connection = DualConnection.builder(
             connectionProvider,
@@ -1375,8 +1699,74 @@ public class TestDualConnection {
         ).build();
 
         connection.getHoldability();
+        connection.getNetworkTimeout();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsOnly(REPLICA);
+        connectionProvider.getProvidedConnections().forEach(conn -> {
+            try {
+                assertThat(conn.isClosed()).isTrue();
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        });
+    }
+
+    @Test
+    public void shouldShareLearnedDefaultsBetweenProviders() throws SQLException {
+        final ConnectionDefaults connectionDefaults = new ConnectionDefaults();
+        final ConnectionProviderMock firstProvider = new ConnectionProviderMock();
+        final ConnectionProviderMock secondProvider = new ConnectionProviderMock();
 
-        verify(connectionProvider.singleProvidedConnection()).getHoldability();
+        DualConnection.builder(firstProvider, permanentConsistency().build())
+            .connectionDefaults(connectionDefaults)
+            .build()
+            .getHoldability();
+        DualConnection.builder(secondProvider, permanentConsistency().build())
+            .connectionDefaults(connectionDefaults)
+            .build()
+            .getHoldability();
+
+        assertThat(firstProvider.getProvidedConnectionTypes()).containsOnly(REPLICA);
+        assertThat(secondProvider.getProvidedConnectionTypes()).isEmpty();
+    }
+
+    @Test
+    public void shouldGetStatementLimitsWithoutMain() throws SQLException {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final StateListener stateListener = mock(StateListener.class);
+        final Connection connection = DualConnection.builder(
+            connectionProvider,
+            permanentConsistency().build()
+        ).stateListener(stateListener).build();
+        final Statement statement = connection.createStatement();
+        statement.setMaxRows(100);
+
+        assertThat(statement.getMaxRows()).isEqualTo(100);
+        statement.getMaxFieldSize();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsOnly(REPLICA);
+        verifyNoMoreInteractions(stateListener);
+    }
+
+    @Test
+    public void shouldAbortThreadConfinedConnectionFromOtherThread() throws Exception {
+        final ConnectionProviderMock connectionProvider = new ConnectionProviderMock();
+        final Connection connection = DualConnection.builder(
+            connectionProvider,
+            permanentConsistency().build()
+        ).threadConfined().build();
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+        final Executor abortExecutor = Runnable::run;
+        final ExecutorService otherThread = Executors.newSingleThreadExecutor();
+
+        otherThread.submit(() -> {
+            connection.abort(abortExecutor);
+            return null;
+        }).get();
+
+        verify(connectionProvider.singleProvidedConnection()).abort(abortExecutor);
+        assertThat(connection.isClosed()).isTrue();
+        otherThread.shutdown();
     }
 
     @Test
@@ -0,0 +1,91 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.api.mocks.NoOpConnection;
+import com.atlassian.db.replica.spi.ConnectionProvider;
+import com.atlassian.db.replica.spi.ReplicaConsistency;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.atlassian.db.replica.api.Queries.SIMPLE_QUERY;
+import static com.atlassian.db.replica.api.mocks.CircularConsistency.permanentConsistency;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Virtual threads acquiring connections shouldn't pin their carriers. Pinned carriers would serve one query at
+ * a time each, so the queries would take many times the connection latency.
+ */
+public class VirtualThreadsTest {
+    private static final Duration CONNECTION_LATENCY = Duration.ofMillis(100);
+    private static final int QUERIES_PER_CARRIER = 20;
+
+    @Test
+    public void shouldNotPinCarriersWhileAcquiringConnections() throws Exception {
+        final ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+        final ReplicaConsistency consistency = permanentConsistency().build();
+        final int queries = QUERIES_PER_CARRIER * Runtime.getRuntime().availableProcessors();
+        final List<Future<?>> results = new ArrayList<>();
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            results.add(virtualThreads.submit(() -> {
+                try (Connection connection = DualConnection.builder(new SlowConnectionProvider(), consistency)
+                    .build()) {
+                    connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        final Duration duration = Duration.ofNanos(System.nanoTime() - start);
+        virtualThreads.shutdown();
+
+        assertThat(duration).isLessThan(CONNECTION_LATENCY.multipliedBy(QUERIES_PER_CARRIER / 2));
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() throws Exception {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            assumeTrue(false, "Virtual threads need JDK 21");
+            throw e;
+        }
+    }
+
+    private static class SlowConnectionProvider implements ConnectionProvider {
+
+        @Override
+        public boolean isReplicaAvailable() {
+            return true;
+        }
+
+        @Override
+        public Connection getMainConnection() {
+            return connect();
+        }
+
+        @Override
+        public Connection getReplicaConnection() {
+            return connect();
+        }
+
+        private Connection connect() {
+            try {
+                Thread.sleep(CONNECTION_LATENCY.toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+            return new NoOpConnection();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.atlassian.db.replica.api;
+
+import com.atlassian.db.replica.api.mocks.CircularConsistency;
+import com.atlassian.db.replica.api.mocks.ConnectionProviderMock;
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.threeten.extra.MutableClock;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+
+import static com.atlassian.db.replica.api.Queries.SIMPLE_QUERY;
+import static com.atlassian.db.replica.api.mocks.ConnectionProviderMock.ConnectionType.MAIN;
+import static com.atlassian.db.replica.api.mocks.ConnectionProviderMock.ConnectionType.REPLICA;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class WarmConnectionsTest {
+    private MutableClock clock;
+    private WarmConnections warmConnections;
+    private ConnectionProviderMock connectionProvider;
+
+    @BeforeEach
+    public void before() {
+        clock = MutableClock.epochUTC();
+        warmConnections = WarmConnections.builder()
+            .idleTimeout(Duration.ofSeconds(10))
+            .measureTime(clock)
+            .build();
+        connectionProvider = new ConnectionProviderMock();
+    }
+
+    @Test
+    public void shouldSwitchWithoutAcquiringConnections() throws SQLException {
+        final Connection connection = flappingConnection();
+
+        for (int i = 0; i < 4; i++) {
+            connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+        }
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(REPLICA, MAIN);
+        assertThat(warmConnections.getParkCount()).isEqualTo(4);
+        assertThat(warmConnections.getReuseCount()).isEqualTo(3);
+        assertThat(warmConnections.getReplayCount()).isEqualTo(0);
+        connectionProvider.getProvidedConnections().forEach(this::assertOpen);
+    }
+
+    @Test
+    public void shouldCloseConnectionIdleForTooLong() throws SQLException {
+        final Connection connection = flappingConnection();
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        clock.add(Duration.ofSeconds(11));
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(REPLICA, MAIN, REPLICA);
+        assertThat(connectionProvider.getProvidedConnections().get(0).isClosed()).isTrue();
+        assertThat(warmConnections.getIdleCloseCount()).isEqualTo(1);
+        assertThat(warmConnections.getReuseCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldReplayParametersChangedWhileIdle() throws SQLException {
+        final Connection connection = flappingConnection();
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        connection.setSchema("other_schema");
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        final Connection replica = connectionProvider.getProvidedConnections().get(0);
+        verify(replica).setSchema("other_schema");
+        assertThat(warmConnections.getReplayCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotKeepConnectionsOutsideOfAutoCommitMode() throws SQLException {
+        final Connection connection = flappingConnection();
+        connection.setAutoCommit(false);
+
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        assertThat(connectionProvider.getProvidedConnectionTypes()).containsExactly(REPLICA, MAIN, REPLICA);
+        assertThat(warmConnections.getParkCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void shouldCloseIdleConnectionsOnClose() throws SQLException {
+        final Connection connection = flappingConnection();
+        connection.prepareStatement(SIMPLE_QUERY).executeQuery();
+
+        connection.close();
+
+        for (Connection provided : connectionProvider.getProvidedConnections()) {
+            assertThat(provided.isClosed()).isTrue();
+            verify(provided, times(1)).close();
+        }
+    }
+
+    private Connection flappingConnection() throws SQLException {
+        return DualConnection
+            .builder(connectionProvider, new CircularConsistency.Builder(ImmutableList.of(false, true)).build())
+            .warmConnections(warmConnections)
+            .build();
+    }
+
+    private void assertOpen(Connection connection) {
+        try {
+            assertThat(connection.isClosed()).isFalse();
+        } catch (SQLException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
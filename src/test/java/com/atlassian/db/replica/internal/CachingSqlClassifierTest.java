@@ -0,0 +1,63 @@
+package com.atlassian.db.replica.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class CachingSqlClassifierTest {
+    private final List<String> classified = new ArrayList<>();
+    private final SqlClassifier delegate = sql -> {
+        classified.add(sql);
+        return sql.startsWith("update") ? SqlRoute.WRITE : SqlRoute.READ;
+    };
+
+    @Test
+    public void shouldClassifyOnlyOnce() {
+        final CachingSqlClassifier classifier = new CachingSqlClassifier(delegate, 2);
+
+        assertThat(classifier.classify("update foo set bar = 1")).isEqualTo(SqlRoute.WRITE);
+        assertThat(classifier.classify("update foo set bar = 1")).isEqualTo(SqlRoute.WRITE);
+        assertThat(classifier.classify("select * from foo")).isEqualTo(SqlRoute.READ);
+
+        assertThat(classified).containsExactly("update foo set bar = 1", "select * from foo");
+        assertThat(classifier.getHitCount()).isEqualTo(1);
+        assertThat(classifier.getMissCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void shouldStayWithinCapacity() {
+        final CachingSqlClassifier classifier = new CachingSqlClassifier(delegate, 2);
+
+        for (int i = 0; i < 10; i++) {
+            classifier.classify("select " + i);
+        }
+
+        assertThat(classifier.size()).isEqualTo(2);
+        assertThat(classifier.getEvictionCount()).isEqualTo(8);
+    }
+
+    @Test
+    public void shouldGiveRecentlyUsedSqlSecondChance() {
+        final CachingSqlClassifier classifier = new CachingSqlClassifier(delegate, 2);
+        classifier.classify("select 1");
+        classifier.classify("select 2");
+        classifier.classify("select 1");
+
+        classifier.classify("select 3");
+        classified.clear();
+        classifier.classify("select 1");
+        classifier.classify("select 2");
+
+        assertThat(classified).containsExactly("select 2");
+    }
+
+    @Test
+    public void shouldRejectEmptyCache() {
+        assertThatThrownBy(() -> new CachingSqlClassifier(delegate, 0))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,119 @@
+package com.atlassian.db.replica.internal;
+
+import com.atlassian.db.replica.internal.logs.NoopLazyLogger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Optional;
+
+import static java.sql.Connection.TRANSACTION_READ_COMMITTED;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+public class ConnectionParametersTest {
+    private final ConnectionParameters parameters = new ConnectionParameters(new NoopLazyLogger());
+    private Connection connection;
+    private Statement statement;
+
+    @BeforeEach
+    public void before() throws SQLException {
+        connection = mock(Connection.class);
+        statement = mock(Statement.class);
+        when(connection.createStatement()).thenReturn(statement);
+        when(connection.getAutoCommit()).thenReturn(true);
+    }
+
+    @Test
+    public void shouldSkipModesMatchingNewConnection() throws SQLException {
+        parameters.setAutoCommit(Optional::empty, true);
+        parameters.setReadOnly(Optional::empty, false);
+
+        parameters.initialize(connection);
+
+        verify(connection, never()).setAutoCommit(anyBoolean());
+        verify(connection, never()).setReadOnly(anyBoolean());
+    }
+
+    @Test
+    public void shouldReplayAllParametersOnNewConnection() throws SQLException {
+        parameters.setAutoCommit(Optional::empty, false);
+        parameters.setTransactionIsolation(Optional::empty, TRANSACTION_READ_COMMITTED);
+        parameters.setSchema(Optional::empty, "public");
+
+        parameters.initialize(connection);
+
+        verify(connection).setAutoCommit(false);
+        verify(connection).setTransactionIsolation(TRANSACTION_READ_COMMITTED);
+        verify(connection).setSchema("public");
+    }
+
+    @Test
+    public void shouldReplayOnlyChangedParameters() throws SQLException {
+        parameters.setTransactionIsolation(Optional::empty, TRANSACTION_READ_COMMITTED);
+        parameters.setSchema(Optional::empty, "public");
+        parameters.addRuntimeParameterConfiguration("SET work_mem = '8MB'");
+        final ConnectionSettings applied = parameters.getSettings();
+
+        parameters.setSchema(Optional::empty, "other");
+        parameters.addRuntimeParameterConfiguration("SET statement_timeout = 1000");
+        parameters.initialize(connection, applied);
+
+        verify(connection).setSchema("other");
+        verify(connection, never()).setTransactionIsolation(TRANSACTION_READ_COMMITTED);
+        verify(statement).execute("SET statement_timeout = 1000");
+        verify(statement, never()).execute("SET work_mem = '8MB'");
+    }
+
+    @Test
+    public void shouldNotTouchConnectionWithSameParameters() throws SQLException {
+        parameters.setSchema(Optional::empty, "public");
+        parameters.addRuntimeParameterConfiguration("SET work_mem = '8MB'");
+
+        parameters.initialize(connection, parameters.getSettings());
+
+        verifyNoInteractions(connection);
+    }
+
+    @Test
+    public void shouldBatchRuntimeParameters() throws SQLException {
+        parameters.addRuntimeParameterConfiguration("SET work_mem = '8MB'");
+        parameters.addRuntimeParameterConfiguration("SET statement_timeout = 1000");
+
+        parameters.initialize(connection);
+
+        verify(statement).addBatch("SET work_mem = '8MB'");
+        verify(statement).addBatch("SET statement_timeout = 1000");
+        verify(statement).executeBatch();
+        verify(statement, never()).execute(anyString());
+    }
+
+    @Test
+    public void shouldShareIdenticalParameters() throws SQLException {
+        final ConnectionParameters otherParameters = new ConnectionParameters(new NoopLazyLogger());
+
+        parameters.setSchema(Optional::empty, "public");
+        otherParameters.setSchema(Optional::empty, "public");
+
+        assertThat(otherParameters.getSettings()).isSameAs(parameters.getSettings());
+    }
+
+    @Test
+    public void shouldNotShareSessionSpecificParameters() throws SQLException {
+        final ConnectionParameters otherParameters = new ConnectionParameters(new NoopLazyLogger());
+
+        parameters.addRuntimeParameterConfiguration("SET work_mem = '8MB'");
+        otherParameters.addRuntimeParameterConfiguration("SET work_mem = '8MB'");
+
+        assertThat(otherParameters.getSettings()).isEqualTo(parameters.getSettings());
+        assertThat(otherParameters.getSettings()).isNotSameAs(parameters.getSettings());
+    }
+}
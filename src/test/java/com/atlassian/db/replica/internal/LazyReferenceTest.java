@@ -1,13 +1,18 @@
 package com.atlassian.db.replica.internal;
 
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
 
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 
 public class LazyReferenceTest {
@@ -39,6 +44,65 @@ public class LazyReferenceTest {
         executor.shutdown();
     }
 
+    @Test
+    public void shouldCreateThreadConfinedValueOnce() {
+        final CountingReference countingReference = new CountingReference(true);
+
+        countingReference.get();
+        countingReference.get();
+
+        assertThat(countingReference.getCounter()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldHandThreadConfinedValueOverToOtherThread() throws Exception {
+        final CountingReference countingReference = new CountingReference(true);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        countingReference.get();
+
+        assertThat(executor.submit(countingReference::get).get()).isEqualTo(1);
+        assertThat(countingReference.get()).isEqualTo(1);
+        executor.shutdown();
+    }
+
+    @Test
+    @Timeout(10)
+    public void shouldAssertThreadConfinement() throws Exception {
+        assumeTrue(LazyReferenceTest.class.desiredAssertionStatus(), "Thread confinement is asserted with -ea");
+        final CountDownLatch creating = new CountDownLatch(1);
+        final CountDownLatch created = new CountDownLatch(1);
+        final LazyReference<Integer> reference = new LazyReference<Integer>(true) {
+            @Override
+            protected Integer create() throws InterruptedException {
+                creating.countDown();
+                created.await(5, SECONDS);
+                return 1;
+            }
+        };
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final Future<Integer> firstGet = executor.submit(reference::get);
+            creating.await();
+
+            assertThatThrownBy(reference::get).isInstanceOf(AssertionError.class);
+            created.countDown();
+            assertThat(firstGet.get()).isEqualTo(1);
+        } finally {
+            created.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldPeekThreadConfinedValueFromOtherThread() throws Exception {
+        final CountingReference countingReference = new CountingReference(true);
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        countingReference.get();
+
+        assertThat(executor.submit(countingReference::peek).get()).isEqualTo(1);
+        executor.shutdown();
+    }
+
     private void fetchReference(CountingReference countingReference, CountDownLatch start, CountDownLatch end) {
         start.countDown();
         try {
@@ -58,6 +122,10 @@ public class LazyReferenceTest {
             super();
         }
 
+        private CountingReference(boolean threadConfined) {
+            super(threadConfined);
+        }
+
         @Override
         protected Integer create() {
             return counter.incrementAndGet();
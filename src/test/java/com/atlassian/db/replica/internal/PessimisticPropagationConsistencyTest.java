@@ -2,6 +2,7 @@ package com.atlassian.db.replica.internal;
 
 import com.atlassian.db.replica.api.PessimisticPropagationConsistency;
 import com.atlassian.db.replica.internal.util.ConnectionSupplier;
+import com.atlassian.db.replica.spi.Cache;
 import com.atlassian.db.replica.spi.ReplicaConsistency;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -9,6 +10,8 @@ import org.threeten.extra.MutableClock;
 
 import java.sql.Connection;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -81,4 +84,51 @@ public class PessimisticPropagationConsistencyTest {
         assertThat(isConsistent).isFalse();
         assertThat(isConsistentLater).isTrue();
     }
+
+    @Test
+    public void shouldTolerateStalenessLongerThanPropagation() {
+        ReplicaConsistency consistency = consistencyBuilder
+            .assumeMaxPropagation(Duration.ofMillis(200))
+            .build();
+
+        consistency.write(main);
+        clock.add(Duration.ofMillis(50));
+
+        assertThat(consistency.isConsistent(new ConnectionSupplier(replica), Duration.ofMillis(200))).isTrue();
+        assertThat(consistency.isConsistent(new ConnectionSupplier(replica), Duration.ofMillis(100))).isFalse();
+    }
+
+    @Test
+    public void shouldWaitForWritesTheCacheFailedToKeep() {
+        ReplicaConsistency consistency = consistencyBuilder
+            .assumeMaxPropagation(Duration.ofMillis(200))
+            .cacheLastWrite(new BrokenCache())
+            .build();
+
+        consistency.write(main);
+        clock.add(Duration.ofMillis(50));
+        boolean consistent = consistency.isConsistent(new ConnectionSupplier(replica));
+        clock.add(Duration.ofMillis(250));
+        boolean consistentLater = consistency.isConsistent(new ConnectionSupplier(replica));
+
+        assertThat(consistent).isFalse();
+        assertThat(consistentLater).isTrue();
+    }
+
+    private static class BrokenCache implements Cache<Instant> {
+
+        @Override
+        public Optional<Instant> get() {
+            return Optional.empty();
+        }
+
+        @Override
+        public void put(Instant value) {
+            throw new RuntimeException("The cache is broken");
+        }
+
+        @Override
+        public void reset() {
+        }
+    }
 }
@@ -0,0 +1,52 @@
+package com.atlassian.db.replica.internal;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RoutingHintTest {
+
+    @Test
+    public void shouldParseReplicaHint() {
+        final RoutingHint hint = RoutingHint.parse("/*+ db-replica:replica */ SELECT audited_read(1)");
+
+        assertThat(hint).isEqualTo(RoutingHint.REPLICA);
+        assertThat(hint.isReplica()).isTrue();
+    }
+
+    @Test
+    public void shouldParseMainHint() {
+        final RoutingHint hint = RoutingHint.parse("  /*+db-replica:main*/ SELECT * FROM foo");
+
+        assertThat(hint).isEqualTo(RoutingHint.MAIN);
+        assertThat(hint.isMain()).isTrue();
+    }
+
+    @Test
+    public void shouldParseMaxStaleness() {
+        assertThat(RoutingHint.parse("/*+ db-replica:max-staleness=500ms */ SELECT 1").getMaxStaleness())
+            .isEqualTo(Duration.ofMillis(500));
+        assertThat(RoutingHint.parse("/*+ db-replica:max-staleness=2s */ SELECT 1").getMaxStaleness())
+            .isEqualTo(Duration.ofSeconds(2));
+        assertThat(RoutingHint.parse("/*+ db-replica:max-staleness=2s */ SELECT 1").isReplica()).isFalse();
+    }
+
+    @Test
+    public void shouldIgnoreSqlWithoutHint() {
+        assertThat(RoutingHint.parse("SELECT * FROM foo")).isNull();
+        assertThat(RoutingHint.parse("/* db-replica:main */ SELECT * FROM foo")).isNull();
+        assertThat(RoutingHint.parse("SELECT /*+ db-replica:main */ * FROM foo")).isNull();
+        assertThat(RoutingHint.parse("")).isNull();
+    }
+
+    @Test
+    public void shouldIgnoreUnknownHints() {
+        assertThat(RoutingHint.parse("/*+ db-replica:somewhere */ SELECT 1")).isNull();
+        assertThat(RoutingHint.parse("/*+ db-replica:max-staleness=soon */ SELECT 1")).isNull();
+        assertThat(RoutingHint.parse("/*+ db-replica:max-staleness=5m */ SELECT 1")).isNull();
+        assertThat(RoutingHint.parse("/*+ IndexScan(foo) */ SELECT 1")).isNull();
+        assertThat(RoutingHint.parse("/*+ db-replica:main")).isNull();
+    }
+}
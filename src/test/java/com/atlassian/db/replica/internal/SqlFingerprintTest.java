@@ -0,0 +1,57 @@
+package com.atlassian.db.replica.internal;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SqlFingerprintTest {
+
+    @Test
+    public void shouldIgnoreLiteralsAndParameters() {
+        final long fingerprint = SqlFingerprint.of("SELECT * FROM foo WHERE id = ? AND name = ?");
+
+        assertThat(SqlFingerprint.of("SELECT * FROM foo WHERE id = 42 AND name = 'bar'")).isEqualTo(fingerprint);
+        assertThat(SqlFingerprint.of("SELECT * FROM foo WHERE id = 4.2e-1 AND name = E'b\\'ar'")).isEqualTo(fingerprint);
+        assertThat(SqlFingerprint.of("SELECT * FROM foo WHERE id = $1 AND name = $$bar$$")).isEqualTo(fingerprint);
+        assertThat(SqlFingerprint.of("SELECT * FROM foo WHERE id = ? AND name = 'it''s'")).isEqualTo(fingerprint);
+    }
+
+    @Test
+    public void shouldIgnoreInListLength() {
+        final long fingerprint = SqlFingerprint.of("SELECT * FROM foo WHERE id IN (?)");
+
+        assertThat(SqlFingerprint.of("SELECT * FROM foo WHERE id IN (?, ?, ?)")).isEqualTo(fingerprint);
+        assertThat(SqlFingerprint.of("SELECT * FROM foo WHERE id in (1,2,-3)")).isEqualTo(fingerprint);
+        assertThat(SqlFingerprint.of("SELECT * FROM foo WHERE id IN ( ?::uuid , ?::uuid )")).isEqualTo(fingerprint);
+        assertThat(SqlFingerprint.of("SELECT * FROM foo WHERE id IN (SELECT id FROM bar)")).isNotEqualTo(fingerprint);
+    }
+
+    @Test
+    public void shouldIgnoreWhitespaceCommentsAndCase() {
+        final long fingerprint = SqlFingerprint.of("SELECT id FROM foo WHERE bar=?");
+
+        assertThat(SqlFingerprint.of("  select ID\n  from Foo -- comment\n where bar = ?")).isEqualTo(fingerprint);
+        assertThat(SqlFingerprint.of("/*+ db-replica:main */ SELECT id FROM foo WHERE bar = ?")).isEqualTo(fingerprint);
+    }
+
+    @Test
+    public void shouldDistinguishShapes() {
+        final long fingerprint = SqlFingerprint.of("SELECT id FROM foo WHERE bar = ?");
+
+        assertThat(SqlFingerprint.of("SELECT id FROM foos WHERE bar = ?")).isNotEqualTo(fingerprint);
+        assertThat(SqlFingerprint.of("SELECT id FROM foo WHERE baz = ?")).isNotEqualTo(fingerprint);
+        assertThat(SqlFingerprint.of("SELECT id FROM foo WHERE bar > ?")).isNotEqualTo(fingerprint);
+        assertThat(SqlFingerprint.of("SELECT idfrom foo WHERE bar = ?")).isNotEqualTo(fingerprint);
+        assertThat(SqlFingerprint.of("SELECT \"ID\" FROM foo WHERE bar = ?"))
+            .isNotEqualTo(SqlFingerprint.of("SELECT \"id\" FROM foo WHERE bar = ?"));
+    }
+
+    @Test
+    public void shouldRememberFingerprint() {
+        final String sql = "SELECT id FROM foo WHERE bar = ?";
+        final SqlFingerprint fingerprint = new SqlFingerprint(sql);
+
+        assertThat(fingerprint.getAsLong()).isEqualTo(SqlFingerprint.of(sql));
+        assertThat(fingerprint.getAsLong()).isEqualTo(SqlFingerprint.of(sql));
+    }
+}
@@ -0,0 +1,130 @@
+package com.atlassian.db.replica.internal;
+
+import com.google.common.collect.ImmutableSet;
+import org.junit.jupiter.api.Test;
+
+import static com.atlassian.db.replica.api.Queries.LARGE_SQL_QUERY;
+import static com.atlassian.db.replica.api.Queries.SELECT_FOR_KEY_SHARE;
+import static com.atlassian.db.replica.api.Queries.SELECT_FOR_NO_KEY_UPDATE;
+import static com.atlassian.db.replica.api.Queries.SELECT_FOR_SHARE;
+import static com.atlassian.db.replica.api.Queries.SELECT_FOR_UPDATE;
+import static com.atlassian.db.replica.api.Queries.SELECT_FOR_UPDATE_SKIP_LOCKED;
+import static com.atlassian.db.replica.api.Queries.SIMPLE_QUERY;
+import static com.atlassian.db.replica.internal.SqlRoute.COMMAND;
+import static com.atlassian.db.replica.internal.SqlRoute.LOCK;
+import static com.atlassian.db.replica.internal.SqlRoute.READ;
+import static com.atlassian.db.replica.internal.SqlRoute.SET;
+import static com.atlassian.db.replica.internal.SqlRoute.WRITE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SuppressWarnings({"SqlDialectInspection", "SqlNoDataSourceInspection"})
+public class TokenizingSqlClassifierTest {
+    private final SqlClassifier classifier = new TokenizingSqlClassifier(new SqlFunction(ImmutableSet.of("my_function")));
+
+    @Test
+    public void shouldClassifyReads() {
+        assertThat(classifier.classify(SIMPLE_QUERY)).isEqualTo(READ);
+        assertThat(classifier.classify(LARGE_SQL_QUERY)).isEqualTo(READ);
+        assertThat(classifier.classify("")).isEqualTo(READ);
+        assertThat(classifier.classify("select count(*) from foo")).isEqualTo(READ);
+        assertThat(classifier.classify("SELECT my_function(1)")).isEqualTo(READ);
+        assertThat(classifier.classify("SELECT My_Function(1)")).isEqualTo(READ);
+        assertThat(classifier.classify("SELECT Lower(name) FROM users")).isEqualTo(READ);
+        assertThat(classifier.classify("select \"ISSUE\".\"id\" from \"jiraissue\" \"ISSUE\" where \"ISSUE\".\"updated\" > ? order by \"ISSUE\".\"update\"")).isEqualTo(READ);
+    }
+
+    @Test
+    public void shouldClassifyQueriesWithoutSelect() {
+        assertThat(classifier.classify("VALUES (1), (2)")).isEqualTo(READ);
+        assertThat(classifier.classify("table foo")).isEqualTo(READ);
+        assertThat(classifier.classify("SHOW statement_timeout")).isEqualTo(READ);
+    }
+
+    @Test
+    public void shouldClassifyCommands() {
+        assertThat(classifier.classify("BEGIN")).isEqualTo(COMMAND);
+        assertThat(classifier.classify("vacuum foo")).isEqualTo(COMMAND);
+        assertThat(classifier.classify("EXPLAIN ANALYZE DELETE FROM foo")).isEqualTo(COMMAND);
+        assertThat(classifier.classify("DO $$ BEGIN PERFORM 1; END $$")).isEqualTo(COMMAND);
+    }
+
+    @Test
+    public void shouldClassifyWrites() {
+        assertThat(classifier.classify("insert into foo values (1)")).isEqualTo(WRITE);
+        assertThat(classifier.classify("UPDATE foo SET bar = 1")).isEqualTo(WRITE);
+        assertThat(classifier.classify("Delete from foo")).isEqualTo(WRITE);
+        assertThat(classifier.classify("  \n-- remove stale rows\n/* batch */ DELETE FROM foo")).isEqualTo(WRITE);
+    }
+
+    @Test
+    public void shouldClassifyFunctionCallsAsWrites() {
+        assertThat(classifier.classify("SELECT nextval('public.\"seq\"')")).isEqualTo(WRITE);
+        assertThat(classifier.classify("select\n  doSomething(1234)")).isEqualTo(WRITE);
+        assertThat(classifier.classify("SELECT public.do_something()")).isEqualTo(WRITE);
+        assertThat(classifier.classify("/* hint */ SELECT do_something()")).isEqualTo(WRITE);
+    }
+
+    @Test
+    public void shouldClassifyLocks() {
+        assertThat(classifier.classify(SELECT_FOR_UPDATE)).isEqualTo(LOCK);
+        assertThat(classifier.classify(SELECT_FOR_NO_KEY_UPDATE)).isEqualTo(LOCK);
+        assertThat(classifier.classify(SELECT_FOR_SHARE)).isEqualTo(LOCK);
+        assertThat(classifier.classify(SELECT_FOR_KEY_SHARE)).isEqualTo(LOCK);
+        assertThat(classifier.classify(SELECT_FOR_UPDATE_SKIP_LOCKED)).isEqualTo(LOCK);
+        assertThat(classifier.classify("select id from foo for update of foo nowait;")).isEqualTo(LOCK);
+        assertThat(classifier.classify("(select id from foo for update)")).isEqualTo(LOCK);
+        assertThat(classifier.classify("select id from foo for update -- lock the row\n")).isEqualTo(LOCK);
+        assertThat(classifier.classify("select id from foo for update /* lock the row */")).isEqualTo(LOCK);
+        assertThat(classifier.classify("select id from foo for share of foo, public.\"bar\" skip locked limit ? offset 10")).isEqualTo(LOCK);
+        assertThat(classifier.classify("select id from foo for update -- lock\n of foo")).isEqualTo(LOCK);
+        assertThat(classifier.classify("lock table foo")).isEqualTo(LOCK);
+    }
+
+    @Test
+    public void shouldIgnoreLockingKeywordsInLiteralsAndComments() {
+        assertThat(classifier.classify("select id from foo where bar = 'for update'")).isEqualTo(READ);
+        assertThat(classifier.classify("select id from foo -- for update\n")).isEqualTo(READ);
+        assertThat(classifier.classify("select id from foo where bar = 'a--b' for update")).isEqualTo(LOCK);
+        assertThat(classifier.classify("select id from foo -- for update of foo, bar\n")).isEqualTo(READ);
+        assertThat(classifier.classify("select \"for\" update from foo")).isEqualTo(READ);
+    }
+
+    @Test
+    public void shouldClassifyJdbcCallEscapes() {
+        assertThat(classifier.classify("{call do_write(?)}")).isEqualTo(WRITE);
+        assertThat(classifier.classify(" { CALL do_write(?) }")).isEqualTo(WRITE);
+        assertThat(classifier.classify("{? = call f(?)}")).isEqualTo(COMMAND);
+        assertThat(classifier.classify("{fn now()}")).isEqualTo(COMMAND);
+    }
+
+    @Test
+    public void shouldClassifyLocksInSubqueries() {
+        assertThat(classifier.classify("select * from (select * from t for update) x")).isEqualTo(LOCK);
+        assertThat(classifier.classify("SELECT * FROM foo WHERE id IN (SELECT id FROM bar FOR SHARE SKIP LOCKED)"))
+            .isEqualTo(LOCK);
+        assertThat(classifier.classify("select * from (select 'for update' from t) x")).isEqualTo(READ);
+        assertThat(classifier.classify("select format, \"for\" from t where a = 'for share'")).isEqualTo(READ);
+    }
+
+    @Test
+    public void shouldClassifyParenthesisedSelects() {
+        assertThat(classifier.classify("(select id from foo) union (select id from bar)")).isEqualTo(READ);
+        assertThat(classifier.classify("((SELECT nextval('seq')))")).isEqualTo(WRITE);
+    }
+
+    @Test
+    public void shouldClassifyCommonTableExpressions() {
+        assertThat(classifier.classify("WITH recent AS (SELECT id FROM foo) SELECT * FROM recent")).isEqualTo(READ);
+        assertThat(classifier.classify("with recent as (select id from foo) update bar set x = 1 where id in (select id from recent)")).isEqualTo(WRITE);
+        assertThat(classifier.classify("WITH moved AS (DELETE FROM foo RETURNING *) SELECT * FROM moved")).isEqualTo(WRITE);
+        assertThat(classifier.classify("WITH a AS MATERIALIZED (SELECT 1), b AS (INSERT INTO bar VALUES (1)) SELECT 1")).isEqualTo(WRITE);
+        assertThat(classifier.classify("WITH locked AS (SELECT id FROM foo FOR NO KEY UPDATE SKIP LOCKED) SELECT * FROM locked")).isEqualTo(LOCK);
+        assertThat(classifier.classify("WITH a AS (SELECT '(delete' AS x, $$ ) update $$ AS y) SELECT * FROM a")).isEqualTo(READ);
+    }
+
+    @Test
+    public void shouldClassifyRuntimeParameters() {
+        assertThat(classifier.classify("set statement_timeout to 30000")).isEqualTo(SET);
+        assertThat(classifier.classify("SET statement_timeout to 30000")).isEqualTo(SET);
+    }
+}
@@ -1,6 +1,7 @@
 package com.atlassian.db.replica.it;
 
 import com.atlassian.db.replica.api.DualConnection;
+import com.atlassian.db.replica.api.PostgresReadOnlyFunctionDiscovery;
 import com.atlassian.db.replica.api.mocks.CircularConsistency;
 import com.atlassian.db.replica.internal.LsnReplicaConsistency;
 import com.atlassian.db.replica.it.consistency.WaitingReplicaConsistency;
@@ -16,6 +17,7 @@ import java.sql.SQLFeatureNotSupportedException;
 import java.sql.Savepoint;
 import java.sql.Statement;
 import java.time.Duration;
+import java.time.Instant;
 import java.util.Collections;
 import java.util.Properties;
 import java.util.concurrent.Executors;
@@ -94,6 +96,33 @@ public class DualConnectionIT {
         }
     }
 
+    @Test
+    public void shouldDiscoverStableAndImmutableFunctions() throws Exception {
+        try (PostgresConnectionProvider connectionProvider = new PostgresConnectionProvider()) {
+            try (
+                Connection main = connectionProvider.getMainConnection();
+                Statement statement = main.createStatement()
+            ) {
+                statement.execute("CREATE FUNCTION stable_answer() RETURNS int AS 'SELECT 42' LANGUAGE SQL STABLE;");
+                statement.execute("CREATE FUNCTION volatile_answer() RETURNS int AS 'SELECT 42' LANGUAGE SQL VOLATILE;");
+            }
+
+            try (PostgresReadOnlyFunctionDiscovery discovery = PostgresReadOnlyFunctionDiscovery
+                .builder(connectionProvider)
+                .refreshInterval(Duration.ofMillis(100))
+                .build()) {
+                final Instant deadline = Instant.now().plusSeconds(10);
+                while (!discovery.getReadOnlyFunctions().contains("stable_answer") && Instant.now().isBefore(deadline)) {
+                    Thread.sleep(10);
+                }
+
+                assertThat(discovery.getReadOnlyFunctions())
+                    .contains("stable_answer", "lower", "now")
+                    .doesNotContain("volatile_answer", "nextval", "random");
+            }
+        }
+    }
+
     @Test
     public void shluldNotFailWhenChangingTransactionIsolationLevel() throws SQLException {
         try (PostgresConnectionProvider connectionProvider = new PostgresConnectionProvider()) {
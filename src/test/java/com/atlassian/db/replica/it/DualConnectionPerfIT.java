@@ -5,6 +5,7 @@ import com.atlassian.db.replica.api.mocks.NoOpConnectionProvider;
 import org.junit.jupiter.api.Test;
 
 import java.sql.Connection;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.time.Duration;
 import java.time.Instant;
@@ -32,6 +33,34 @@ public class DualConnectionPerfIT {
             .isGreaterThan(2_200);
     }
 
+    @Test
+    public void shouldHaveAcceptableThruputOfReusedPreparedStatement() throws SQLException {
+        final Connection connection = DualConnection
+            .builder(
+                new NoOpConnectionProvider(),
+                permanentConsistency().build()
+            ).build();
+        final PreparedStatement statement = connection.prepareStatement(LARGE_SQL_QUERY);
+        final int times = 100000000;
+
+        final Duration duration = runBenchmark(statement, times);
+
+        float thruputPerMillis = (float) times / duration.toMillis();
+        assertThat(thruputPerMillis)
+            .as("thruput per ms")
+            .isGreaterThan(8_000);
+    }
+
+    private Duration runBenchmark(PreparedStatement statement, int times) throws SQLException {
+        final Instant start = Instant.now();
+        int hashCode = 0;
+        for (int i = 0; i < times; i++) {
+            hashCode += statement.executeQuery().hashCode();
+        }
+        System.out.println("I really need that number. JIT gods don't kill my code paths. " + hashCode);
+        return Duration.between(start, Instant.now());
+    }
+
     private Duration runBenchmark(Connection connection, int times) throws SQLException {
         final Instant start = Instant.now();
         int hashCode = 0;